@@ -0,0 +1,143 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Calculates the MD5 and SHA-256 of a file from the same data that is read for its TLSH hash, so the file does not have
+ * to be read again by the hash lookup module. Like the digest engines, it is reset and reused for every file that a
+ * thread hashes.
+ */
+public class CryptographicDigests {
+
+    private static final Logger logger = Logger.getLogger(CryptographicDigests.class.getName());
+
+    private final MessageDigest md5;
+    private final MessageDigest sha256;
+
+    // Hashes of the last file, set by finish()
+    private String md5Hash = null;
+    private String sha256Hash = null;
+
+    /**
+     * Create the digests. Every Java platform is required to support MD5 and SHA-256.
+     */
+    CryptographicDigests() {
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+            this.sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 and SHA-256 are not available", ex);
+        }
+    }
+
+    /**
+     * Checks if Autopsy is missing the MD5 or the SHA-256 of a file.
+     *
+     * @param file The Autopsy file.
+     * @return true if either hash has not been calculated yet.
+     */
+    static boolean isMissingHashes(AbstractFile file) {
+        return isEmpty(file.getMd5Hash()) || isEmpty(file.getSha256Hash());
+    }
+
+    private static boolean isEmpty(String hash) {
+        return hash == null || hash.isEmpty();
+    }
+
+    /**
+     * Clear the data from the previous file.
+     */
+    void reset() {
+        this.md5.reset();
+        this.sha256.reset();
+    }
+
+    /**
+     * Input the next part of the file.
+     *
+     * @param buf Buffer holding the data.
+     * @param offset Offset of the data in the buffer.
+     * @param length Number of bytes of data.
+     */
+    void update(byte[] buf, int offset, int length) {
+        this.md5.update(buf, offset, length);
+        this.sha256.update(buf, offset, length);
+    }
+
+    /**
+     * Finish the hashes of the file and store the ones Autopsy is missing on the file. Hashes that are already set on
+     * the file are left as they are. The digests are reset afterwards.
+     *
+     * @param file The Autopsy file whose whole content was input.
+     */
+    void storeOn(AbstractFile file) {
+        this.finish();
+
+        boolean changed = false;
+        if (isEmpty(file.getMd5Hash())) {
+            file.setMd5Hash(this.md5Hash);
+            changed = true;
+        }
+        if (isEmpty(file.getSha256Hash())) {
+            file.setSha256Hash(this.sha256Hash);
+            changed = true;
+        }
+
+        if (changed) {
+            try {
+                file.save();
+            } catch (TskCoreException ex) {
+                logger.log(Level.WARNING, "Failed to save the MD5 and SHA-256 of file: " + file.getName(), ex);
+            }
+        }
+    }
+
+    /**
+     * Finish the hashes of the data that was input. The digests are reset afterwards.
+     */
+    void finish() {
+        this.md5Hash = toHex(this.md5.digest());
+        this.sha256Hash = toHex(this.sha256.digest());
+    }
+
+    String getMd5Hash() {
+        return this.md5Hash;
+    }
+
+    String getSha256Hash() {
+        return this.sha256Hash;
+    }
+
+    /**
+     * Convert a hash to the lower case hex string that Autopsy stores.
+     *
+     * @param hash The hash bytes.
+     * @return The hex string.
+     */
+    static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import com.trendmicro.tlsh.Tlsh;
+import com.trendmicro.tlsh.TlshCreator;
+
+/**
+ * TlshDigestEngine that uses the official TLSH library (tlsh-4.5.0.jar) to calculate the hash.
+ */
+public class LibraryTlshDigestEngine implements TlshDigestEngine {
+
+    private final TlshCreator tlshCreator = new TlshCreator();
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        this.tlshCreator.update(data, offset, length);
+    }
+
+    @Override
+    public void reset() {
+        this.tlshCreator.reset();
+    }
+
+    @Override
+    public Tlsh getHash() {
+        return this.tlshCreator.getHash();
+    }
+}
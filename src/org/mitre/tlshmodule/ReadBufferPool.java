@@ -0,0 +1,95 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of read buffers that is shared by all of the ingest threads in a job. Files are read into a borrowed
+ * buffer and the buffer is given back once the file has been hashed, so the ingest threads reuse the same few buffers
+ * instead of allocating a new one for every file.
+ */
+public class ReadBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> idleBuffers;
+
+    // Statistics so the amount of reuse can be checked at the end of the ingest
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create an empty pool. Buffers are only allocated when they are borrowed and none are idle.
+     *
+     * @param poolSize Maximum number of idle buffers that are kept for reuse.
+     * @param bufferSize Size in bytes of every buffer handed out by the pool.
+     */
+    ReadBufferPool(int poolSize, int bufferSize) {
+        if (poolSize <= 0 || bufferSize <= 0) {
+            throw new IllegalArgumentException("Pool size and buffer size must be greater than 0");
+        }
+
+        this.bufferSize = bufferSize;
+        this.idleBuffers = new ArrayBlockingQueue<>(poolSize);
+    }
+
+    /**
+     * Borrow a buffer from the pool. If no buffer is idle a new one is allocated, it can still be given back to the
+     * pool afterwards.
+     *
+     * @return A buffer that is getBufferSize() bytes long.
+     */
+    byte[] borrow() {
+        byte[] buf = this.idleBuffers.poll();
+        if (buf != null) {
+            this.hits.incrementAndGet();
+            return buf;
+        }
+
+        this.misses.incrementAndGet();
+        return new byte[this.bufferSize];
+    }
+
+    /**
+     * Give a buffer back to the pool so it can be reused. Buffers that were not created by this pool, or that do not
+     * fit because the pool is full, are left for the garbage collector.
+     *
+     * @param buf The buffer that was borrowed.
+     */
+    void giveBack(byte[] buf) {
+        if (buf == null || buf.length != this.bufferSize) {
+            return;
+        }
+
+        this.idleBuffers.offer(buf);
+    }
+
+    int getBufferSize() {
+        return this.bufferSize;
+    }
+
+    int getIdleCount() {
+        return this.idleBuffers.size();
+    }
+
+    long getHitCount() {
+        return this.hits.get();
+    }
+
+    long getMissCount() {
+        return this.misses.get();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+
+/**
+ * Reads the advanced options of the module, the ones that are not shown on the ingest job settings panel, from the
+ * "TLSHIngestModuleAdvanced" module settings file in the ModuleConfig folder of the Autopsy user config directory. Every
+ * line is the name of an option of TlshModuleIngestJobSettings and its value, for example "useBandIndex=true" or
+ * "allowedExtensions=exe,dll". Options that are not in the file keep their default.
+ */
+public class TlshAdvancedSettings {
+
+    private static final Logger logger = Logger.getLogger(TlshAdvancedSettings.class.getName());
+
+    static final String MODULE_NAME = TlshIngestModuleFactory.getModuleName() + "Advanced";
+
+    private TlshAdvancedSettings() {
+    }
+
+    /**
+     * Read the advanced options from the settings file into the settings of a job. The file is created empty if it
+     * does not exist.
+     *
+     * @param settings Settings of the job.
+     */
+    static void load(TlshModuleIngestJobSettings settings) {
+        if (!ModuleSettings.configExists(MODULE_NAME)) {
+            ModuleSettings.makeConfigFile(MODULE_NAME);
+        }
+
+        Map<String, String> properties = ModuleSettings.getConfigSettings(MODULE_NAME);
+        if (properties != null) {
+            apply(properties, settings);
+        }
+    }
+
+    /**
+     * Set the options of a job from their names and values. Unknown names and values that can not be parsed are
+     * logged and ignored.
+     *
+     * @param properties Values keyed by the name of the option.
+     * @param settings Settings of the job.
+     */
+    static void apply(Map<String, String> properties, TlshModuleIngestJobSettings settings) {
+        for (Map.Entry<String, String> property : properties.entrySet()) {
+            String key = property.getKey().trim();
+            String value = property.getValue() == null ? "" : property.getValue();
+            try {
+                if (!applyOne(key, value, settings)) {
+                    logger.log(Level.WARNING, "Unknown TLSH module option {0} in {1}", new Object[]{key, MODULE_NAME});
+                }
+            } catch (IllegalArgumentException ex) {
+                logger.log(Level.WARNING, "Invalid value \"{0}\" of the TLSH module option {1} in {2}",
+                        new Object[]{value, key, MODULE_NAME});
+            }
+        }
+    }
+
+    /**
+     * Set one option.
+     *
+     * @return False if there is no option with the name.
+     * @throws IllegalArgumentException If the value can not be parsed.
+     */
+    private static boolean applyOne(String key, String value, TlshModuleIngestJobSettings settings) {
+        switch (key) {
+                case "readChunkSize":
+                    settings.setReadChunkSize(Integer.parseInt(value.trim()));
+                    break;
+                case "bufferPoolSize":
+                    settings.setBufferPoolSize(Integer.parseInt(value.trim()));
+                    break;
+                case "useInternalTlshCreator":
+                    settings.setUseInternalTlshCreator(parseBoolean(value));
+                    break;
+                case "minFileSize":
+                    settings.setMinFileSize(Long.parseLong(value.trim()));
+                    break;
+                case "maxFileSize":
+                    settings.setMaxFileSize(Long.parseLong(value.trim()));
+                    break;
+                case "allowedExtensions":
+                    settings.setAllowedExtensions(parseList(value));
+                    break;
+                case "deniedExtensions":
+                    settings.setDeniedExtensions(parseList(value));
+                    break;
+                case "skipKnownFiles":
+                    settings.setSkipKnownFiles(parseBoolean(value));
+                    break;
+                case "sampleLargeFiles":
+                    settings.setSampleLargeFiles(parseBoolean(value));
+                    break;
+                case "sampleSizeThreshold":
+                    settings.setSampleSizeThreshold(Long.parseLong(value.trim()));
+                    break;
+                case "sampleByteBudget":
+                    settings.setSampleByteBudget(Long.parseLong(value.trim()));
+                    break;
+                case "sampleBlockSize":
+                    settings.setSampleBlockSize(Integer.parseInt(value.trim()));
+                    break;
+                case "useDigestCache":
+                    settings.setUseDigestCache(parseBoolean(value));
+                    break;
+                case "digestCacheMaxEntries":
+                    settings.setDigestCacheMaxEntries(Integer.parseInt(value.trim()));
+                    break;
+                case "usePartialDigestCacheKey":
+                    settings.setUsePartialDigestCacheKey(parseBoolean(value));
+                    break;
+                case "useDigestStore":
+                    settings.setUseDigestStore(parseBoolean(value));
+                    break;
+                case "digestStoreMaxEntries":
+                    settings.setDigestStoreMaxEntries(Integer.parseInt(value.trim()));
+                    break;
+                case "useMetricTreeIndex":
+                    settings.setUseMetricTreeIndex(parseBoolean(value));
+                    break;
+                case "usePackedBodyKernel":
+                    settings.setUsePackedBodyKernel(parseBoolean(value));
+                    break;
+                case "skipRecordedHits":
+                    settings.setSkipRecordedHits(parseBoolean(value));
+                    break;
+                case "aggregateHits":
+                    settings.setAggregateHits(parseBoolean(value));
+                    break;
+                case "aggregatedClosestHits":
+                    settings.setAggregatedClosestHits(Integer.parseInt(value.trim()));
+                    break;
+                case "useBatchedPublisher":
+                    settings.setUseBatchedPublisher(parseBoolean(value));
+                    break;
+                case "publishQueueSize":
+                    settings.setPublishQueueSize(Integer.parseInt(value.trim()));
+                    break;
+                case "publishBatchSize":
+                    settings.setPublishBatchSize(Integer.parseInt(value.trim()));
+                    break;
+                case "publishFlushIntervalMillis":
+                    settings.setPublishFlushIntervalMillis(Integer.parseInt(value.trim()));
+                    break;
+                case "preloadKnownHashes":
+                    settings.setPreloadKnownHashes(parseBoolean(value));
+                    break;
+                case "hashSetThresholds":
+                    settings.setHashSetThresholds(parseList(value));
+                    break;
+                case "useEntryThresholds":
+                    settings.setUseEntryThresholds(parseBoolean(value));
+                    break;
+                case "useScoreTiers":
+                    settings.setUseScoreTiers(parseBoolean(value));
+                    break;
+                case "notableTierPercent":
+                    settings.setNotableTierPercent(Integer.parseInt(value.trim()));
+                    break;
+                case "useParallelScan":
+                    settings.setUseParallelScan(parseBoolean(value));
+                    break;
+                case "parallelScanMinEntries":
+                    settings.setParallelScanMinEntries(Integer.parseInt(value.trim()));
+                    break;
+                case "useExactMatchFastPath":
+                    settings.setUseExactMatchFastPath(parseBoolean(value));
+                    break;
+                case "exactMatchSkipsScan":
+                    settings.setExactMatchSkipsScan(parseBoolean(value));
+                    break;
+                case "useTopKMatches":
+                    settings.setUseTopKMatches(parseBoolean(value));
+                    break;
+                case "topKMatches":
+                    settings.setTopKMatches(Integer.parseInt(value.trim()));
+                    break;
+                case "topKPerHashSet":
+                    settings.setTopKPerHashSet(parseBoolean(value));
+                    break;
+                case "useBatchComparison":
+                    settings.setUseBatchComparison(parseBoolean(value));
+                    break;
+                case "comparisonBatchSize":
+                    settings.setComparisonBatchSize(Integer.parseInt(value.trim()));
+                    break;
+                case "useBandIndex":
+                    settings.setUseBandIndex(parseBoolean(value));
+                    break;
+                case "bandCount":
+                    settings.setBandCount(Integer.parseInt(value.trim()));
+                    break;
+                case "computeCryptographicHashes":
+                    settings.setComputeCryptographicHashes(parseBoolean(value));
+                    break;
+                case "useIngestPipeline":
+                    settings.setUseIngestPipeline(parseBoolean(value));
+                    break;
+                case "pipelineReadThreads":
+                    settings.setPipelineReadThreads(Integer.parseInt(value.trim()));
+                    break;
+                case "pipelineHashThreads":
+                    settings.setPipelineHashThreads(Integer.parseInt(value.trim()));
+                    break;
+                case "pipelineCompareThreads":
+                    settings.setPipelineCompareThreads(Integer.parseInt(value.trim()));
+                    break;
+                case "pipelinePublishThreads":
+                    settings.setPipelinePublishThreads(Integer.parseInt(value.trim()));
+                    break;
+                case "pipelineQueueSize":
+                    settings.setPipelineQueueSize(Integer.parseInt(value.trim()));
+                    break;
+                case "pipelineChunkQueueSize":
+                    settings.setPipelineChunkQueueSize(Integer.parseInt(value.trim()));
+                    break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean parseBoolean(String value) {
+        String trimmed = value.trim();
+        if (trimmed.equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (trimmed.equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+
+    /**
+     * Split a comma separated list, dropping empty items.
+     */
+    private static String[] parseList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items.toArray(new String[0]);
+    }
+}
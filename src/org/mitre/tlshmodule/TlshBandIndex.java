@@ -0,0 +1,127 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Arrays;
+
+/**
+ * Locality sensitive hashing over the bodies of the hashes in a TlshReferenceIndex. The 32 body bytes are split into
+ * bands, and for every band the entries are sorted by the value of their band. A query only has its full distance
+ * calculated against the entries that have the exact same value as the query in at least one band.
+ *
+ * Unlike the vantage point tree this is approximate: a hash within the threshold can be missed if every band differs,
+ * which gets more likely as the threshold grows and less likely as the number of bands grows. More bands means shorter
+ * bands, more matching entries per band and so more candidates to check. TlshBandIndexBenchmark reports the recall and
+ * the speed for different band counts so the count can be chosen for the thresholds that are used.
+ */
+public class TlshBandIndex {
+
+    // Each band is packed into an int, so it can be at most 4 bytes
+    static final int MIN_BAND_COUNT = TlshReferenceIndex.BODY_LENGTH / 4;
+    static final int MAX_BAND_COUNT = TlshReferenceIndex.BODY_LENGTH;
+
+    private final byte[] bodies;
+
+    // Offset of every band in the body, with the end of the body as the last element
+    private final int[] bandStarts;
+
+    // Entries of every band, sorted by the value of the band
+    private final int[][] sortedEntries;
+
+    /**
+     * Build the band index.
+     *
+     * @param bodies Bodies of the entries, TlshReferenceIndex.BODY_LENGTH bytes each.
+     * @param size Number of entries.
+     * @param bandCount Number of bands, it is clamped between MIN_BAND_COUNT and MAX_BAND_COUNT.
+     */
+    TlshBandIndex(byte[] bodies, int size, int bandCount) {
+        this.bodies = bodies;
+
+        int bands = Math.max(MIN_BAND_COUNT, Math.min(MAX_BAND_COUNT, bandCount));
+        this.bandStarts = new int[bands + 1];
+        for (int band = 0; band <= bands; band++) {
+            this.bandStarts[band] = band * TlshReferenceIndex.BODY_LENGTH / bands;
+        }
+
+        // Sort the entries by the value of the band in the high bits, with the entry in the low bits
+        long[] keys = new long[size];
+        this.sortedEntries = new int[bands][];
+        for (int band = 0; band < bands; band++) {
+            for (int entry = 0; entry < size; entry++) {
+                keys[entry] = (bandValue(this.bodies, entry * TlshReferenceIndex.BODY_LENGTH, band) << 32)
+                        | entry;
+            }
+            Arrays.sort(keys);
+
+            int[] entries = new int[size];
+            for (int i = 0; i < size; i++) {
+                entries[i] = (int) keys[i];
+            }
+            this.sortedEntries[band] = entries;
+        }
+    }
+
+    int getBandCount() {
+        return this.sortedEntries.length;
+    }
+
+    /**
+     * Find every entry that shares at least one band with the query. An entry can be added more than once.
+     *
+     * @param query Decoded hash of the file.
+     * @param candidates List the entries are added to.
+     */
+    void search(byte[] query, TlshCandidateList candidates) {
+        for (int band = 0; band < this.sortedEntries.length; band++) {
+            long value = bandValue(query, TlshReferenceIndex.BODY, band);
+            int[] entries = this.sortedEntries[band];
+
+            // Find the first entry with the value, then add entries until the value changes
+            int low = 0;
+            int high = entries.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (entryBandValue(entries[mid], band) < value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            for (int i = low; i < entries.length && entryBandValue(entries[i], band) == value; i++) {
+                candidates.add(entries[i]);
+            }
+        }
+    }
+
+    private long entryBandValue(int entry, int band) {
+        return bandValue(this.bodies, entry * TlshReferenceIndex.BODY_LENGTH, band);
+    }
+
+    /**
+     * Get the value of a band as an unsigned number.
+     *
+     * @param body Array holding the body.
+     * @param bodyStart Offset of the body in the array.
+     * @param band The band.
+     * @return The bytes of the band packed into a number.
+     */
+    private long bandValue(byte[] body, int bodyStart, int band) {
+        long value = 0;
+        for (int i = this.bandStarts[band]; i < this.bandStarts[band + 1]; i++) {
+            value = (value << 8) | (body[bodyStart + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.Blackboard;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.Score;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Adds the analysis results of every ingest thread of a job to the blackboard in batches, from a single writer thread.
+ * Adding and posting each artifact on its own is a database transaction and an event for every artifact, which makes
+ * jobs with many hits slow and floods the UI with events. The writer adds a whole batch in one transaction and posts
+ * it with one call, once the batch is full, once the oldest artifact has waited for the flush interval, or when a
+ * module flushes it as it shuts down. The queue is bounded, so the ingest threads wait when the writer falls behind.
+ */
+public class TlshBlackboardPublisher {
+
+    private static final Logger logger = Logger.getLogger(TlshBlackboardPublisher.class.getName());
+
+    /**
+     * An analysis result waiting to be added to the blackboard.
+     */
+    static class PendingResult {
+
+        final AbstractFile file;
+        final BlackboardArtifact.Type type;
+        final Score score;
+        final String conclusion;
+        final String configuration;
+        final String justification;
+        final List<BlackboardAttribute> attributes;
+
+        PendingResult(AbstractFile file, BlackboardArtifact.Type type, Score score, String conclusion,
+                String configuration, String justification, List<BlackboardAttribute> attributes) {
+            this.file = file;
+            this.type = type;
+            this.score = score;
+            this.conclusion = conclusion;
+            this.configuration = configuration;
+            this.justification = justification;
+            this.attributes = attributes;
+        }
+    }
+
+    private final SleuthkitCase caseDb;
+    private final Blackboard blackboard;
+    private final ArrayBlockingQueue<PendingResult> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Thread writer;
+
+    // Number of results submitted, and written or given up on, so flush() knows when the writer has caught up
+    private long submitted = 0;
+    private long done = 0;
+    private final Object progressLock = new Object();
+
+    private volatile boolean flushRequested = false;
+    private volatile boolean closed = false;
+
+    // Statistics of the job, only changed by the writer thread
+    private volatile long batches = 0;
+    private volatile long written = 0;
+    private volatile long failed = 0;
+
+    /**
+     * Create the publisher and start its writer thread.
+     *
+     * @param caseDb Database of the case.
+     * @param queueSize Number of results that can wait to be written before the ingest threads wait.
+     * @param batchSize Number of results written in one transaction.
+     * @param flushIntervalMillis Longest time a result waits for its batch to fill up.
+     */
+    TlshBlackboardPublisher(SleuthkitCase caseDb, int queueSize, int batchSize, long flushIntervalMillis) {
+        this.caseDb = caseDb;
+        this.blackboard = caseDb.getBlackboard();
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "TLSH blackboard writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue an analysis result to be added to a file. Waits while the queue is full.
+     *
+     * @param result The result.
+     * @return false if the result was not queued because the thread was interrupted or the publisher is closed.
+     */
+    boolean submit(PendingResult result) {
+        if (this.closed) {
+            logger.log(Level.WARNING, "TLSH result for file {0} submitted after the publisher was closed",
+                    result.file.getName());
+            return false;
+        }
+
+        synchronized (this.progressLock) {
+            this.submitted++;
+        }
+        try {
+            this.queue.put(result);
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            synchronized (this.progressLock) {
+                this.submitted--;
+                this.progressLock.notifyAll();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Write the queued results without waiting for their batches to fill up, and wait until every result submitted
+     * before the call has been written.
+     */
+    void flush() {
+        synchronized (this.progressLock) {
+            long target = this.submitted;
+            this.flushRequested = true;
+            while (this.done < target && this.writer.isAlive()) {
+                try {
+                    this.progressLock.wait(this.flushIntervalMillis);
+                } catch (InterruptedException ex) {
+                    logger.log(Level.WARNING, "Interrupted while waiting for {0} TLSH results to be written",
+                            target - this.done);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the results left in the queue and stop the writer thread. This should only be called once every module of
+     * the job has shut down.
+     */
+    void close() {
+        this.closed = true;
+        try {
+            this.writer.join();
+        } catch (InterruptedException ex) {
+            logger.log(Level.WARNING, "Interrupted while waiting for the TLSH blackboard writer to finish");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Get a summary of the results written, for the job statistics.
+     */
+    String getStatistics() {
+        return this.written + " results written in " + this.batches + " batches, " + this.failed + " failed";
+    }
+
+    /**
+     * Writer thread: collect the next batch and write it, until the publisher is closed and the queue is empty.
+     */
+    private void writeLoop() {
+        List<PendingResult> batch = new ArrayList<>(this.batchSize);
+        while (true) {
+            try {
+                PendingResult first = this.queue.poll(this.flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (this.closed && this.queue.isEmpty()) {
+                        return;
+                    }
+                    continue;
+                }
+
+                // Wait for the batch to fill up, at most for the flush interval after its first result
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.flushIntervalMillis);
+                while (batch.size() < this.batchSize) {
+                    this.queue.drainTo(batch, this.batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= this.batchSize || this.flushRequested || this.closed || remaining <= 0) {
+                        break;
+                    }
+                    PendingResult next = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                logger.log(Level.WARNING, "TLSH blackboard writer interrupted, {0} results were not written",
+                        batch.size() + this.queue.size());
+                return;
+            }
+
+            try {
+                this.write(batch);
+            } catch (RuntimeException ex) {
+                logger.log(Level.SEVERE, "Unexpected error while writing TLSH results", ex);
+                this.failed += batch.size();
+            }
+
+            synchronized (this.progressLock) {
+                this.done += batch.size();
+                if (this.queue.isEmpty()) {
+                    this.flushRequested = false;
+                }
+                this.progressLock.notifyAll();
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Add a batch of results in one transaction, then post them together. One result that can not be added rolls back
+     * the whole transaction, so the batch is then added again one result at a time and only the results that fail on
+     * their own are lost.
+     */
+    private void write(List<PendingResult> batch) {
+        List<BlackboardArtifact> artifacts = this.add(batch);
+        if (artifacts == null) {
+            artifacts = new ArrayList<>(batch.size());
+            if (batch.size() > 1) {
+                logger.log(Level.WARNING, "Adding the {0} TLSH results of the batch one at a time", batch.size());
+                for (PendingResult result : batch) {
+                    List<BlackboardArtifact> added = this.add(Collections.singletonList(result));
+                    if (added != null) {
+                        artifacts.addAll(added);
+                    }
+                }
+            }
+            this.failed += batch.size() - artifacts.size();
+            if (artifacts.isEmpty()) {
+                return;
+            }
+        }
+
+        this.batches++;
+        this.written += artifacts.size();
+        try {
+            this.blackboard.postArtifacts(artifacts, TlshIngestModuleFactory.getModuleName());
+        } catch (Blackboard.BlackboardException ex) {
+            logger.log(Level.SEVERE, "Unable to index a batch of " + artifacts.size() + " TLSH results", ex);
+        }
+    }
+
+    /**
+     * Add results in one transaction.
+     *
+     * @return The artifacts added, or null if the transaction was rolled back.
+     */
+    private List<BlackboardArtifact> add(List<PendingResult> results) {
+        List<BlackboardArtifact> artifacts = new ArrayList<>(results.size());
+        SleuthkitCase.CaseDbTransaction transaction = null;
+        try {
+            transaction = this.caseDb.beginTransaction();
+            for (PendingResult result : results) {
+                artifacts.add(this.blackboard.newAnalysisResult(result.type, result.file.getId(),
+                        result.file.getDataSourceObjectId(), result.score, result.conclusion, result.configuration,
+                        result.justification, result.attributes, transaction).getAnalysisResult());
+            }
+            transaction.commit();
+            return artifacts;
+        } catch (Blackboard.BlackboardException | TskCoreException ex) {
+            if (results.size() == 1) {
+                logger.log(Level.SEVERE, "Failed to add a TLSH result to file " + results.get(0).file.getName(), ex);
+            } else {
+                logger.log(Level.SEVERE, "Failed to add a batch of " + results.size() + " TLSH results", ex);
+            }
+            if (transaction != null) {
+                try {
+                    transaction.rollback();
+                } catch (TskCoreException rollbackEx) {
+                    logger.log(Level.SEVERE, "Failed to roll back the TLSH results", rollbackEx);
+                }
+            }
+            return null;
+        }
+    }
+}
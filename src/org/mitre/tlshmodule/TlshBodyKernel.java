@@ -0,0 +1,89 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+/**
+ * Calculates the body distance of TLSH hashes with the bodies packed into longs, 32 bucket codes per long, so the
+ * four 2 bit codes of a byte are not compared one at a time. For two codes a and b, with x = a ^ b:
+ * - x = 1 means only the low bit differs, a distance of 1.
+ * - x = 2 means only the high bit differs, a distance of 2.
+ * - x = 3 means a and b are 0 and 3 (distance 3, which counts as 6) when the bits of a are equal, otherwise 1 and 2.
+ * So the distance of a long is the number of low bits that differ, plus twice the number of high bits that differ,
+ * minus twice the number of codes where both differ, plus five times the number of codes that are 0 and 3. Each of
+ * those is one Long.bitCount(), which the JIT turns into a single POPCNT instruction on current processors.
+ */
+public class TlshBodyKernel {
+
+    // Number of longs a packed body takes
+    static final int WORDS = TlshReferenceIndex.BODY_LENGTH / 8;
+
+    // The low bit of every bucket code
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    /**
+     * Pack bodies into longs.
+     *
+     * @param bodies Array holding the bodies, TlshReferenceIndex.BODY_LENGTH bytes each.
+     * @param offset Offset of the first body in the array.
+     * @param count Number of bodies.
+     * @return The packed bodies, WORDS longs each.
+     */
+    static long[] pack(byte[] bodies, int offset, int count) {
+        long[] packed = new long[count * WORDS];
+        for (int word = 0; word < packed.length; word++) {
+            long value = 0;
+            int start = offset + word * 8;
+            for (int i = 7; i >= 0; i--) {
+                value = (value << 8) | (bodies[start + i] & 0xFFL);
+            }
+            packed[word] = value;
+        }
+        return packed;
+    }
+
+    /**
+     * Calculate the distance between two packed words of bucket codes.
+     */
+    static int wordDistance(long a, long b) {
+        long x = a ^ b;
+        long lowDiff = x & LOW_BITS;
+        long highDiff = (x >>> 1) & LOW_BITS;
+        long bothDiff = lowDiff & highDiff;
+        // The codes of a whose two bits are equal, so 0 or 3
+        long extremes = ~(a ^ (a >>> 1)) & LOW_BITS;
+        return Long.bitCount(lowDiff) + 2 * Long.bitCount(highDiff) - 2 * Long.bitCount(bothDiff)
+                + 5 * Long.bitCount(bothDiff & extremes);
+    }
+
+    /**
+     * Calculate the body distance between a query and a run of packed bodies.
+     *
+     * @param query The packed body of the query.
+     * @param packed The packed bodies.
+     * @param first First body to compare.
+     * @param count Number of bodies to compare.
+     * @param distances Receives the distance of every body, starting at index 0.
+     */
+    static void bodyDistances(long[] query, long[] packed, int first, int count, int[] distances) {
+        long q0 = query[0];
+        long q1 = query[1];
+        long q2 = query[2];
+        long q3 = query[3];
+        int word = first * WORDS;
+        for (int i = 0; i < count; i++, word += WORDS) {
+            distances[i] = wordDistance(q0, packed[word]) + wordDistance(q1, packed[word + 1])
+                    + wordDistance(q2, packed[word + 2]) + wordDistance(q3, packed[word + 3]);
+        }
+    }
+}
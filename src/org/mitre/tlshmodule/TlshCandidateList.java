@@ -0,0 +1,66 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of index entries, used to collect the candidate hashes of a query without boxing them. It is cleared
+ * and reused for every file that a thread compares.
+ */
+public class TlshCandidateList {
+
+    private int[] entries = new int[64];
+    private int size = 0;
+
+    void add(int entry) {
+        if (this.size == this.entries.length) {
+            this.entries = Arrays.copyOf(this.entries, this.size * 2);
+        }
+        this.entries[this.size++] = entry;
+    }
+
+    void clear() {
+        this.size = 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    int get(int i) {
+        return this.entries[i];
+    }
+
+    /**
+     * Sort the entries so they are in the order they were added to the index.
+     */
+    void sort() {
+        Arrays.sort(this.entries, 0, this.size);
+    }
+
+    /**
+     * Sort the entries and remove the ones that were added more than once.
+     */
+    void sortUnique() {
+        sort();
+        int unique = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (unique == 0 || this.entries[unique - 1] != this.entries[i]) {
+                this.entries[unique++] = this.entries[i];
+            }
+        }
+        this.size = unique;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+/**
+ * A TLSH comparison that met the threshold distance and needs to be posted to the blackboard. Comparisons are done
+ * before anything is posted, so the posting can be done separately from the comparing.
+ */
+public class TlshComparisonHit {
+
+    public final int distance;
+    public final ParseTlshObj compObj;
+
+    // True if the compared hash comes from a hash set instead of the hash list of the ingest
+    public final boolean fromHashSet;
+
+    /**
+     * Initialize a comparison hit.
+     *
+     * @param distance TLSH hash distance calculated by the TLSH algorithm.
+     * @param compObj The hash that the file was compared with.
+     * @param fromHashSet True if the hash comes from a hash set.
+     */
+    TlshComparisonHit(int distance, ParseTlshObj compObj, boolean fromHashSet) {
+        this.distance = distance;
+        this.compObj = compObj;
+        this.fromHashSet = fromHashSet;
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.AnalysisResult;
+import org.sleuthkit.datamodel.Blackboard;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.CaseDbAccessManager;
+import org.sleuthkit.datamodel.Score;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * The artifact and attribute types the TLSH hashes of the files are stored with. They are registered in the case the
+ * first time the module runs, so the hashes can be looked up by type instead of going through the interesting file
+ * hits and checking the source of every attribute, and are no longer mixed with the comparison hits. Hashes that
+ * earlier versions of the module posted as interesting file hits are copied to the new type when a data source is
+ * ingested again.
+ */
+public class TlshDigestArtifacts {
+
+    private static final Logger logger = Logger.getLogger(TlshDigestArtifacts.class.getName());
+
+    static final String ARTIFACT_TYPE_NAME = "MITRE_TLSH_DIGEST";
+    static final String HASH_ATTRIBUTE_TYPE_NAME = "MITRE_TLSH_HASH";
+
+    // Display name of the artifact type, and set name of the interesting file hits that held the hashes before
+    static final String DISPLAY_NAME = "TLSH (Trend Micro Locality Sensitive Hash)";
+
+    // Number of old hashes copied in every transaction
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+
+    private final Blackboard blackboard;
+    private final BlackboardArtifact.Type artifactType;
+    private final BlackboardAttribute.Type hashAttributeType;
+
+    private TlshDigestArtifacts(Blackboard blackboard, BlackboardArtifact.Type artifactType,
+            BlackboardAttribute.Type hashAttributeType) {
+        this.blackboard = blackboard;
+        this.artifactType = artifactType;
+        this.hashAttributeType = hashAttributeType;
+    }
+
+    /**
+     * Get the types of a case, registering them if the case does not have them yet.
+     *
+     * @param caseDb Database of the case.
+     * @return The types.
+     * @throws Blackboard.BlackboardException If the types could not be registered.
+     */
+    static TlshDigestArtifacts getOrAdd(SleuthkitCase caseDb) throws Blackboard.BlackboardException {
+        Blackboard blackboard = caseDb.getBlackboard();
+        BlackboardArtifact.Type artifactType = blackboard.getOrAddArtifactType(ARTIFACT_TYPE_NAME, DISPLAY_NAME,
+                BlackboardArtifact.Category.ANALYSIS_RESULT);
+        BlackboardAttribute.Type hashAttributeType = blackboard.getOrAddAttributeType(HASH_ATTRIBUTE_TYPE_NAME,
+                BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, "TLSH Hash");
+        return new TlshDigestArtifacts(blackboard, artifactType, hashAttributeType);
+    }
+
+    BlackboardArtifact.Type getArtifactType() {
+        return this.artifactType;
+    }
+
+    BlackboardAttribute.Type getHashAttributeType() {
+        return this.hashAttributeType;
+    }
+
+    /**
+     * Get the attributes of the artifact holding a hash.
+     *
+     * @param hashStr The TLSH hash of the file.
+     */
+    List<BlackboardAttribute> attributesOf(String hashStr) {
+        return Collections.singletonList(
+                new BlackboardAttribute(this.hashAttributeType, TlshIngestModuleFactory.getModuleName(), hashStr));
+    }
+
+    /**
+     * Get the hash that was posted for a file, made in a given way. A sampled hash has the description of its sampling
+     * policy as the configuration of its artifact, and a hash of the whole file has none.
+     *
+     * @param file The file.
+     * @param variant Variant of the hash from TlshDigestStore.variantOf(), 0 for a hash of the whole file.
+     * @return The hash, or null if the file does not have one made that way.
+     * @throws TskCoreException If the artifacts of the file could not be read.
+     */
+    String digestOf(AbstractFile file, int variant) throws TskCoreException {
+        for (AnalysisResult result : file.getAnalysisResults(this.artifactType)) {
+            if (TlshDigestStore.variantOf(result.getConfiguration()) != variant) {
+                continue;
+            }
+            BlackboardAttribute attribute = result.getAttribute(this.hashAttributeType);
+            if (attribute != null) {
+                return attribute.getValueString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Load the hashes of the files of a data source, or of the whole case, with a single query. Every hash is kept with
+     * the variant of the configuration it was posted with, so sampled hashes are not taken for hashes of the whole
+     * file.
+     *
+     * @param caseDb Database of the case.
+     * @param dataSourceObjId Object id of the data source, or null for every data source of the case.
+     * @param hashes Map the hashes are added to, by the object id of their file.
+     * @throws TskCoreException If the query failed.
+     */
+    void loadDigests(SleuthkitCase caseDb, Long dataSourceObjId, final TlshKnownHashMap hashes)
+            throws TskCoreException {
+        String query = "arts.obj_id AS obj_id, attrs.value_text AS value_text,"
+                + " results.configuration AS configuration"
+                + " FROM blackboard_artifacts AS arts"
+                + " JOIN blackboard_attributes AS attrs ON arts.artifact_id = attrs.artifact_id"
+                + " LEFT JOIN tsk_analysis_results AS results ON arts.artifact_obj_id = results.artifact_obj_id"
+                + " WHERE arts.artifact_type_id = " + this.artifactType.getTypeID()
+                + " AND attrs.attribute_type_id = " + this.hashAttributeType.getTypeID();
+        if (dataSourceObjId != null) {
+            query += " AND arts.data_source_obj_id = " + dataSourceObjId;
+        }
+
+        final SQLException[] failure = {null};
+        caseDb.getCaseDbAccessManager().select(query, new CaseDbAccessManager.CaseDbAccessQueryCallback() {
+            @Override
+            public void process(ResultSet resultSet) {
+                try {
+                    while (resultSet.next()) {
+                        hashes.putIfAbsent(resultSet.getLong("obj_id"),
+                                TlshDigestStore.variantOf(resultSet.getString("configuration")),
+                                resultSet.getString("value_text"));
+                    }
+                } catch (SQLException ex) {
+                    failure[0] = ex;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw new TskCoreException("Failed to read the TLSH hashes", failure[0]);
+        }
+    }
+
+    /**
+     * Copy the hashes that earlier versions of the module posted as interesting file hits of a data source to the
+     * artifact type, for the files that do not have one yet. The old artifacts are kept. Running it again only copies
+     * the hashes that were not copied before.
+     *
+     * @param caseDb Database of the case.
+     * @param dataSourceObjId Object id of the data source.
+     * @return The number of hashes copied.
+     * @throws TskCoreException If the old hashes could not be read or the new artifacts could not be added.
+     */
+    int migrateLegacyDigests(SleuthkitCase caseDb, long dataSourceObjId) throws TskCoreException {
+        // The interesting file hits in the old set that hold the hash of their file, with the configuration the
+        // sampled hashes were recorded with, for the files that do not have an artifact of the new type
+        String query = "arts.obj_id AS obj_id, hash.value_text AS value_text,"
+                + " results.configuration AS configuration, results.justification AS justification"
+                + " FROM blackboard_artifacts AS arts"
+                + " JOIN blackboard_attributes AS setname ON arts.artifact_id = setname.artifact_id"
+                + " JOIN blackboard_attributes AS hash ON arts.artifact_id = hash.artifact_id"
+                + " LEFT JOIN tsk_analysis_results AS results ON arts.artifact_obj_id = results.artifact_obj_id"
+                + " WHERE arts.artifact_type_id = "
+                + BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT.getTypeID()
+                + " AND arts.data_source_obj_id = " + dataSourceObjId
+                + " AND setname.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_SET_NAME.getTypeID()
+                + " AND setname.value_text = '" + DISPLAY_NAME + "'"
+                + " AND hash.attribute_type_id = " + BlackboardAttribute.ATTRIBUTE_TYPE.TSK_VALUE.getTypeID()
+                + " AND NOT EXISTS (SELECT 1 FROM blackboard_artifacts AS digests"
+                + " WHERE digests.obj_id = arts.obj_id AND digests.artifact_type_id = " + this.artifactType.getTypeID()
+                + ")";
+
+        // Read them all first, the case database can not be written to while the query is open
+        final TlshKnownHashMap legacy = new TlshKnownHashMap(1024);
+        final List<Long> fileIds = new ArrayList<>();
+        final List<String> configurations = new ArrayList<>();
+        final List<String> justifications = new ArrayList<>();
+        final SQLException[] failure = {null};
+        caseDb.getCaseDbAccessManager().select(query, new CaseDbAccessManager.CaseDbAccessQueryCallback() {
+            @Override
+            public void process(ResultSet resultSet) {
+                try {
+                    while (resultSet.next()) {
+                        long fileId = resultSet.getLong("obj_id");
+                        // A file hashed by several older ingests only gets one artifact
+                        if (legacy.get(fileId) != null) {
+                            continue;
+                        }
+                        legacy.putIfAbsent(fileId, resultSet.getString("value_text"));
+                        fileIds.add(fileId);
+                        configurations.add(resultSet.getString("configuration"));
+                        justifications.add(resultSet.getString("justification"));
+                    }
+                } catch (SQLException ex) {
+                    failure[0] = ex;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw new TskCoreException("Failed to read the TLSH hashes posted as interesting file hits", failure[0]);
+        }
+
+        for (int first = 0; first < fileIds.size(); first += MIGRATION_BATCH_SIZE) {
+            int last = Math.min(first + MIGRATION_BATCH_SIZE, fileIds.size());
+            List<BlackboardArtifact> artifacts = new ArrayList<>(last - first);
+            SleuthkitCase.CaseDbTransaction transaction = caseDb.beginTransaction();
+            try {
+                for (int i = first; i < last; i++) {
+                    long fileId = fileIds.get(i);
+                    artifacts.add(this.blackboard.newAnalysisResult(this.artifactType, fileId, dataSourceObjId,
+                            Score.SCORE_NONE, null, configurations.get(i), justifications.get(i),
+                            this.attributesOf(legacy.get(fileId)), transaction).getAnalysisResult());
+                }
+                transaction.commit();
+            } catch (Blackboard.BlackboardException | TskCoreException ex) {
+                transaction.rollback();
+                throw new TskCoreException("Failed to copy the TLSH hashes posted as interesting file hits", ex);
+            }
+
+            try {
+                this.blackboard.postArtifacts(artifacts, TlshIngestModuleFactory.getModuleName());
+            } catch (Blackboard.BlackboardException ex) {
+                logger.log(Level.WARNING, "Unable to index the copied TLSH hash artifacts", ex);
+            }
+        }
+        return fileIds.size();
+    }
+}
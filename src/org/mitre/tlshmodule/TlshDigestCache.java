@@ -0,0 +1,135 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A job-wide cache of calculated TLSH hashes keyed by the content of the file. Cases often hold many copies of the same
+ * file (libraries in every user profile, volume shadow copies, ...), and every copy has the same TLSH hash, so once one
+ * copy has been hashed the others can skip reading and hashing entirely. The cache is shared by every ingest thread of
+ * the job and is safe to use from all of them.
+ */
+public class TlshDigestCache {
+
+    private final int maxEntries;
+    private final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<>();
+
+    // Statistics so the amount of duplication can be checked at the end of the ingest
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong unkeyed = new AtomicLong();
+
+    /**
+     * Create an empty cache.
+     *
+     * @param maxEntries Maximum number of hashes kept, once it is full new hashes are no longer added.
+     */
+    TlshDigestCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Max entries must be greater than 0");
+        }
+
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Create the cache key from the content hashes that Autopsy stores for a file. SHA-256 is preferred over MD5 when
+     * both are present.
+     *
+     * @param sha256 SHA-256 of the file or null if it has not been calculated.
+     * @param md5 MD5 of the file or null if it has not been calculated.
+     * @return The key or null if the file has neither hash.
+     */
+    static String contentKey(String sha256, String md5) {
+        if (sha256 != null && !sha256.isEmpty()) {
+            return "sha256:" + sha256.toLowerCase(Locale.ROOT);
+        }
+        if (md5 != null && !md5.isEmpty()) {
+            return "md5:" + md5.toLowerCase(Locale.ROOT);
+        }
+        return null;
+    }
+
+    /**
+     * Create the cache key for a file that has no content hash from its size and a hash of part of its content.
+     *
+     * @param size Size of the file in bytes.
+     * @param partialDigest Hash of the parts of the file that were read.
+     * @return The key.
+     */
+    static String partialKey(long size, byte[] partialDigest) {
+        StringBuilder key = new StringBuilder(16 + partialDigest.length * 2);
+        key.append("partial:").append(size).append(':');
+        for (byte b : partialDigest) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Look up the TLSH hash of a file and count it as a hit or a miss.
+     *
+     * @param key Key of the file or null if it could not be keyed.
+     * @return The TLSH hash string or null if the content has not been hashed yet.
+     */
+    String get(String key) {
+        if (key == null) {
+            this.unkeyed.incrementAndGet();
+            return null;
+        }
+
+        String hash = this.hashes.get(key);
+        if (hash != null) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+        }
+        return hash;
+    }
+
+    /**
+     * Add the TLSH hash of a file to the cache. If the cache is full the hash is not added. The size check is not
+     * exact between threads, which only means the cache can go a few entries over the limit.
+     *
+     * @param key Key of the file or null if it could not be keyed.
+     * @param hash The TLSH hash string.
+     */
+    void put(String key, String hash) {
+        if (key == null || hash == null || this.hashes.size() >= this.maxEntries) {
+            return;
+        }
+
+        this.hashes.putIfAbsent(key, hash);
+    }
+
+    int size() {
+        return this.hashes.size();
+    }
+
+    long getHitCount() {
+        return this.hits.get();
+    }
+
+    long getMissCount() {
+        return this.misses.get();
+    }
+
+    long getUnkeyedCount() {
+        return this.unkeyed.get();
+    }
+}
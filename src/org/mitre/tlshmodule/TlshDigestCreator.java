@@ -0,0 +1,319 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import com.trendmicro.tlsh.Tlsh;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The module's own implementation of the TLSH creator. It produces the exact same hashes as the default
+ * com.trendmicro.tlsh.TlshCreator (128 buckets, 1 byte checksum, version "T1") but keeps the sliding window in local
+ * variables instead of a ring buffer, works directly on primitive arrays, accepts ByteBuffer input, and only allocates
+ * memory when it is created. One instance can be reset and reused for every file an ingest thread processes.
+ *
+ * This class is not thread safe, every ingest thread needs its own instance.
+ */
+public class TlshDigestCreator implements TlshDigestEngine {
+
+    // Minimum amount of data for a hash, the same as TlshCreator.getHash() without forcing
+    static final int MIN_DATA_LENGTH = 256;
+
+    private static final int BUCKET_COUNT = 128;
+    private static final int CODE_SIZE = BUCKET_COUNT / 4;
+    private static final int ENCODED_LENGTH = 2 + 2 + 2 + 2 + CODE_SIZE * 2;
+
+    private static final char[] HEX_CHARS = "0123456789ABCDEF".toCharArray();
+
+    // Pearson hash permutation table used by the TLSH sliding window
+    private static final int[] PEARSON_TABLE = {
+        1, 87, 49, 12, 176, 178, 102, 166, 121, 193, 6, 84, 249, 230, 44, 163,
+        14, 197, 213, 181, 161, 85, 218, 80, 64, 239, 24, 226, 236, 142, 38, 200,
+        110, 177, 104, 103, 141, 253, 255, 50, 77, 101, 81, 18, 45, 96, 31, 222,
+        25, 107, 190, 70, 86, 237, 240, 34, 72, 242, 20, 214, 244, 227, 149, 235,
+        97, 234, 57, 22, 60, 250, 82, 175, 208, 5, 127, 199, 111, 62, 135, 248,
+        174, 169, 211, 58, 66, 154, 106, 195, 245, 171, 17, 187, 182, 179, 0, 243,
+        132, 56, 148, 75, 128, 133, 158, 100, 130, 126, 91, 13, 153, 246, 216, 219,
+        119, 68, 223, 78, 83, 88, 201, 99, 122, 11, 92, 32, 136, 114, 52, 10,
+        138, 30, 48, 183, 156, 35, 61, 26, 143, 74, 251, 94, 129, 162, 63, 152,
+        170, 7, 115, 167, 241, 206, 3, 150, 55, 59, 151, 220, 90, 53, 23, 131,
+        125, 173, 15, 238, 79, 95, 89, 16, 105, 137, 225, 224, 217, 160, 37, 123,
+        118, 73, 2, 157, 46, 116, 9, 145, 134, 228, 207, 212, 202, 215, 69, 229,
+        27, 188, 67, 124, 168, 252, 42, 4, 29, 108, 21, 247, 19, 205, 39, 203,
+        233, 40, 186, 147, 198, 192, 155, 33, 164, 191, 98, 204, 165, 180, 117, 76,
+        140, 36, 210, 172, 41, 54, 159, 8, 185, 232, 113, 196, 231, 47, 146, 120,
+        51, 65, 28, 144, 254, 221, 93, 189, 194, 139, 112, 43, 71, 109, 184, 209
+    };
+
+    // Upper bound of the data length for each TLSH length (L) value
+    private static final long[] LENGTH_TOP_VALUES = {
+        1L, 2L, 3L, 5L, 7L, 11L, 17L, 25L,
+        38L, 57L, 86L, 129L, 194L, 291L, 437L, 656L,
+        854L, 1110L, 1443L, 1876L, 2439L, 3171L, 3475L, 3823L,
+        4205L, 4626L, 5088L, 5597L, 6157L, 6772L, 7450L, 8195L,
+        9014L, 9916L, 10907L, 11998L, 13198L, 14518L, 15970L, 17567L,
+        19323L, 21256L, 23382L, 25720L, 28292L, 31121L, 34233L, 37656L,
+        41422L, 45564L, 50121L, 55133L, 60646L, 66711L, 73382L, 80721L,
+        88793L, 97672L, 107439L, 118183L, 130002L, 143002L, 157302L, 173032L,
+        190335L, 209369L, 230306L, 253337L, 278670L, 306538L, 337191L, 370911L,
+        408002L, 448802L, 493682L, 543050L, 597356L, 657091L, 722800L, 795081L,
+        874589L, 962048L, 1058252L, 1164078L, 1280486L, 1408534L, 1549388L, 1704327L,
+        1874759L, 2062236L, 2268459L, 2495305L, 2744836L, 3019320L, 3321252L, 3653374L,
+        4018711L, 4420582L, 4862641L, 5348905L, 5883796L, 6472176L, 7119394L, 7831333L,
+        8614467L, 9475909L, 10423501L, 11465851L, 12612437L, 13873681L, 15261050L, 16787154L,
+        18465870L, 20312458L, 22343706L, 24578077L, 27035886L, 29739474L, 32713425L, 35984770L,
+        39583245L, 43541573L, 47895730L, 52685306L, 57953837L, 63749221L, 70124148L, 77136564L,
+        84850228L, 93335252L, 102668779L, 112935659L, 124229227L, 136652151L, 150317384L, 165349128L,
+        181884040L, 200072456L, 220079703L, 242087671L, 266296456L, 292926096L, 322218735L, 354440623L,
+        389884688L, 428873168L, 471760495L, 518936559L, 570830240L, 627913311L, 690704607L, 759775136L,
+        835752671L, 919327967L, 1011260767L, 1112386880L, 1223623232L, 1345985727L, 1480584256L, 1628642751L,
+        1791507135L, 1970657856L, 2167723648L, 2384496256L, 2622945920L, 2885240448L, 3173764736L, 3491141248L,
+        3840255616L, 4224281216L
+    };
+
+    // Largest amount of data TLSH can calculate a length value for
+    static final long MAX_DATA_LENGTH = LENGTH_TOP_VALUES[LENGTH_TOP_VALUES.length - 1];
+
+    // Starting values of the Pearson hashes, one for the checksum and one for each of the six byte triplets
+    private static final int SALT_CHECKSUM = PEARSON_TABLE[0];
+    private static final int SALT_2 = PEARSON_TABLE[2];
+    private static final int SALT_3 = PEARSON_TABLE[3];
+    private static final int SALT_5 = PEARSON_TABLE[5];
+    private static final int SALT_7 = PEARSON_TABLE[7];
+    private static final int SALT_11 = PEARSON_TABLE[11];
+    private static final int SALT_13 = PEARSON_TABLE[13];
+
+    // Every triplet hash is a value from 0-255, only the first BUCKET_COUNT buckets are used in the final hash
+    private final long[] buckets = new long[256];
+
+    // The four bytes before the next byte, window1 being the most recent one
+    private int window1 = 0;
+    private int window2 = 0;
+    private int window3 = 0;
+    private int window4 = 0;
+
+    private int checksum = 0;
+    private long dataLength = 0;
+
+    // Scratch space so that creating the hash string does not allocate anything besides the string itself
+    private final long[] sortedBuckets = new long[BUCKET_COUNT];
+    private final char[] encoded = new char[ENCODED_LENGTH];
+    private byte[] directBufferScratch = null;
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("Invalid offset or length for the data array");
+        }
+
+        final int[] table = PEARSON_TABLE;
+        final long[] bucketArr = this.buckets;
+
+        int w1 = this.window1;
+        int w2 = this.window2;
+        int w3 = this.window3;
+        int w4 = this.window4;
+        int sum = this.checksum;
+
+        int idx = offset;
+        int end = offset + length;
+
+        // The first four bytes of the data only fill the window
+        long seen = this.dataLength;
+        while (idx < end && seen < 4) {
+            w4 = w3;
+            w3 = w2;
+            w2 = w1;
+            w1 = data[idx] & 0xFF;
+            idx++;
+            seen++;
+        }
+
+        // Every following byte forms six triplets with the window, plus the checksum pair
+        for (; idx < end; idx++) {
+            int w0 = data[idx] & 0xFF;
+
+            sum = table[table[table[SALT_CHECKSUM ^ w0] ^ w1] ^ sum];
+
+            bucketArr[table[table[table[SALT_2 ^ w0] ^ w1] ^ w2]]++;
+            bucketArr[table[table[table[SALT_3 ^ w0] ^ w1] ^ w3]]++;
+            bucketArr[table[table[table[SALT_5 ^ w0] ^ w2] ^ w3]]++;
+            bucketArr[table[table[table[SALT_7 ^ w0] ^ w2] ^ w4]]++;
+            bucketArr[table[table[table[SALT_11 ^ w0] ^ w1] ^ w4]]++;
+            bucketArr[table[table[table[SALT_13 ^ w0] ^ w3] ^ w4]]++;
+
+            w4 = w3;
+            w3 = w2;
+            w2 = w1;
+            w1 = w0;
+        }
+
+        this.window1 = w1;
+        this.window2 = w2;
+        this.window3 = w3;
+        this.window4 = w4;
+        this.checksum = sum;
+        this.dataLength += length;
+
+        if (this.dataLength > MAX_DATA_LENGTH) {
+            throw new IllegalStateException("Too much data has been hashed");
+        }
+    }
+
+    /**
+     * Add the remaining bytes of a buffer to the hash. The position of the buffer is moved to its limit.
+     *
+     * @param data Buffer holding the data, it can be a heap or direct buffer.
+     * @throws IllegalStateException If more data has been added than TLSH supports.
+     */
+    void update(ByteBuffer data) {
+        if (data.hasArray()) {
+            update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+
+        // Direct buffers have to be copied out a piece at a time
+        if (this.directBufferScratch == null) {
+            this.directBufferScratch = new byte[8192];
+        }
+        while (data.hasRemaining()) {
+            int length = Math.min(this.directBufferScratch.length, data.remaining());
+            data.get(this.directBufferScratch, 0, length);
+            update(this.directBufferScratch, 0, length);
+        }
+    }
+
+    @Override
+    public void reset() {
+        Arrays.fill(this.buckets, 0);
+        this.window1 = 0;
+        this.window2 = 0;
+        this.window3 = 0;
+        this.window4 = 0;
+        this.checksum = 0;
+        this.dataLength = 0;
+    }
+
+    /**
+     * Checks if enough data with enough variance has been added to create a hash.
+     *
+     * @return true if getEncoded() will succeed.
+     */
+    boolean isValid() {
+        if (this.dataLength < MIN_DATA_LENGTH || this.dataLength > MAX_DATA_LENGTH) {
+            return false;
+        }
+
+        int nonZero = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (this.buckets[i] > 0) {
+                nonZero++;
+            }
+        }
+
+        return nonZero > BUCKET_COUNT / 2;
+    }
+
+    /**
+     * Get the hash string of all the data added since the last reset. This is the same string that
+     * TlshCreator.getHash().getEncoded() returns for the same data.
+     *
+     * @return The encoded TLSH hash.
+     * @throws IllegalStateException If there is not enough data or too little variance in it to create a hash.
+     */
+    String getEncoded() {
+        if (!isValid()) {
+            throw new IllegalStateException("TLSH not valid; either not enough data or data has too little variance");
+        }
+
+        // Quartile points of the bucket counts
+        System.arraycopy(this.buckets, 0, this.sortedBuckets, 0, BUCKET_COUNT);
+        Arrays.sort(this.sortedBuckets);
+        long q1 = this.sortedBuckets[BUCKET_COUNT / 4 - 1];
+        long q2 = this.sortedBuckets[BUCKET_COUNT / 2 - 1];
+        long q3 = this.sortedBuckets[BUCKET_COUNT * 3 / 4 - 1];
+
+        if (q3 == 0) {
+            throw new IllegalStateException("TLSH not valid; too little variance in the data");
+        }
+
+        // The floating point math matches the TLSH library so the ratios round the same way
+        int q1Ratio = ((int) ((float) q1 * 100.0f / (float) q3)) & 0xF;
+        int q2Ratio = ((int) ((float) q2 * 100.0f / (float) q3)) & 0xF;
+
+        char[] out = this.encoded;
+        out[0] = 'T';
+        out[1] = '1';
+        putHexSwapped(out, 2, this.checksum);
+        putHexSwapped(out, 4, lengthValue(this.dataLength));
+        putHex(out, 6, (q1Ratio << 4) | q2Ratio);
+
+        // The body is written starting with the last group of four buckets
+        int pos = 8;
+        for (int code = CODE_SIZE - 1; code >= 0; code--) {
+            int value = 0;
+            for (int j = 0; j < 4; j++) {
+                long count = this.buckets[code * 4 + j];
+                if (q3 < count) {
+                    value += 3 << (j * 2);
+                } else if (q2 < count) {
+                    value += 2 << (j * 2);
+                } else if (q1 < count) {
+                    value += 1 << (j * 2);
+                }
+            }
+            putHex(out, pos, value);
+            pos += 2;
+        }
+
+        return new String(out);
+    }
+
+    @Override
+    public Tlsh getHash() {
+        return Tlsh.fromTlshStr(getEncoded());
+    }
+
+    /**
+     * Get the TLSH length value for the amount of data, which is the index of the first top value that is not less
+     * than the length.
+     *
+     * @param length Amount of data that was hashed.
+     * @return The TLSH length value.
+     */
+    static int lengthValue(long length) {
+        int low = 0;
+        int high = LENGTH_TOP_VALUES.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (length <= LENGTH_TOP_VALUES[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static void putHex(char[] out, int pos, int value) {
+        out[pos] = HEX_CHARS[(value >> 4) & 0xF];
+        out[pos + 1] = HEX_CHARS[value & 0xF];
+    }
+
+    private static void putHexSwapped(char[] out, int pos, int value) {
+        out[pos] = HEX_CHARS[value & 0xF];
+        out[pos + 1] = HEX_CHARS[(value >> 4) & 0xF];
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import com.trendmicro.tlsh.Tlsh;
+
+/**
+ * Common interface of the classes that can calculate a TLSH hash from a stream of data. This allows the ingest module
+ * to switch between the official TLSH library and the module's own TlshDigestCreator with a setting.
+ */
+public interface TlshDigestEngine {
+
+    /**
+     * Add more data to the hash.
+     *
+     * @param data Array holding the data.
+     * @param offset Index of the first byte to add.
+     * @param length Number of bytes to add.
+     * @throws IllegalStateException If more data has been added than TLSH supports.
+     */
+    void update(byte[] data, int offset, int length);
+
+    /**
+     * Clear all of the data added so far so the engine can be used for another file.
+     */
+    void reset();
+
+    /**
+     * Get the hash of all the data added since the last reset.
+     *
+     * @return The TLSH hash object.
+     * @throws IllegalStateException If there is not enough data or too little variance in it to create a hash.
+     */
+    Tlsh getHash();
+}
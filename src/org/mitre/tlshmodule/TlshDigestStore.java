@@ -0,0 +1,805 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+
+/**
+ * A TLSH hash store on disk that outlives the case, so files that were hashed in an earlier case or an earlier run are
+ * not read and hashed again. Hashes are keyed by the SHA-256, the size of the file and a variant. The store is a single
+ * file of fixed-size records: a region of records sorted by their binary key, followed by the records that were
+ * appended since the file was last compacted. The file is memory-mapped when it is opened and looked up in place, by a
+ * binary search of the sorted records and a small hash table of the appended records, so opening the store does not
+ * read every record. The records added since it was opened are kept in memory. When there are too many appended
+ * records, or more records than allowed, they are merged into the sorted records the next time the store is opened.
+ *
+ * The store is shared by every ingest job of the process and is locked so that a second Autopsy process can not write
+ * to it at the same time.
+ */
+public class TlshDigestStore {
+
+    private static final Logger logger = Logger.getLogger(TlshDigestStore.class.getName());
+
+    // Changes to the file layout must change the magic so old stores are discarded instead of misread
+    private static final byte[] MAGIC = "TLSHDS02".getBytes(StandardCharsets.US_ASCII);
+
+    // Header layout: magic, number of sorted records, number of the last session that opened the store and padding
+    private static final int SORTED_RECORDS_OFFSET = 8;
+    private static final int LAST_SESSION_OFFSET = 16;
+    static final int HEADER_SIZE = 32;
+
+    // Record layout: the key (SHA-256, file size and variant), the session that wrote it, hash length and hash string
+    private static final int SHA256_LENGTH = 32;
+    private static final int SIZE_OFFSET = 32;
+    private static final int VARIANT_OFFSET = 40;
+    private static final int KEY_LENGTH = 44;
+    private static final int SESSION_OFFSET = 44;
+    private static final int HASH_LENGTH_OFFSET = 48;
+    private static final int HASH_OFFSET = 49;
+    private static final int MAX_HASH_LENGTH = 72;
+    static final int RECORD_SIZE = 128;
+
+    // Keeps the whole file in a single mapping
+    static final int MAX_ENTRIES_LIMIT = 10000000;
+
+    // The appended records are merged into the sorted records once they are more than this fraction of them
+    private static final int APPENDED_FRACTION = 8;
+
+    // Stores that are open in this process, keyed by their file
+    private static final Map<Path, TlshDigestStore> openStores = new HashMap<>();
+
+    // Files whose mapping could not be released, they can not be replaced until the process exits
+    private static final Set<Path> pinnedFiles = new HashSet<>();
+
+    private final Path path;
+    private final int maxEntries;
+    private int references = 0;
+
+    private FileChannel channel;
+    private FileLock lock;
+    private int session = 0;
+
+    // Records that existed when the store was opened. The mapping is released by close(), so lookups hold the read
+    // lock while they use it.
+    private final ReadWriteLock mappingLock = new ReentrantReadWriteLock();
+    private MappedByteBuffer mapped;
+    private int sortedRecords = 0;
+
+    // Open addressing table of the mapped records that are not sorted, holding the record number plus one
+    private int[] appendedTable = new int[0];
+
+    // Records that were appended since the store was opened, keyed by their binary key
+    private final Map<ByteBuffer, String> appended = new ConcurrentHashMap<>();
+    private final Object appendLock = new Object();
+    private long fileRecords = 0;
+    private boolean writeFailed = false;
+
+    // Statistics that are logged when the store is closed
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Open a store. This should only be called by acquire().
+     *
+     * @param path File of the store, it is created if it does not exist.
+     * @param maxEntries Maximum number of hashes kept in the store.
+     * @throws IOException If the store could not be opened or is locked by another process.
+     */
+    private TlshDigestStore(Path path, int maxEntries) throws IOException {
+        this.path = path;
+        this.maxEntries = Math.max(1, Math.min(maxEntries, MAX_ENTRIES_LIMIT));
+
+        openChannel();
+        try {
+            long appendedRecords = this.fileRecords - this.sortedRecords;
+            if ((appendedRecords > this.sortedRecords / APPENDED_FRACTION || this.fileRecords > this.maxEntries)
+                    && !pinnedFiles.contains(this.path)) {
+                compact();
+            }
+
+            // Records appended in this session are marked with its number so the oldest can be dropped first
+            this.session++;
+            writeHeader(this.channel, this.sortedRecords, this.session);
+
+            this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, this.fileRecords * RECORD_SIZE);
+            buildAppendedTable();
+        } catch (IOException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Get the store for a file, opening it if no ingest job is using it yet. Every call must be matched with a call to
+     * release().
+     *
+     * @param path File of the store.
+     * @param maxEntries Maximum number of hashes kept in the store, only used when the store is opened.
+     * @return The store.
+     * @throws IOException If the store could not be opened or is locked by another process.
+     */
+    static synchronized TlshDigestStore acquire(Path path, int maxEntries) throws IOException {
+        Path key = path.toAbsolutePath();
+        TlshDigestStore store = openStores.get(key);
+        if (store == null) {
+            store = new TlshDigestStore(key, maxEntries);
+            openStores.put(key, store);
+        }
+
+        store.references++;
+        return store;
+    }
+
+    /**
+     * Release the store of an ingest job. Once the last job releases it the store is closed.
+     *
+     * @param store The store that was returned by acquire().
+     */
+    static synchronized void release(TlshDigestStore store) {
+        store.references--;
+        if (store.references > 0) {
+            return;
+        }
+
+        openStores.remove(store.path);
+        store.logStatistics();
+        store.close();
+    }
+
+    /**
+     * Get the variant of a hash so hashes made in different ways are not confused. Hashes of the whole file have
+     * variant 0.
+     *
+     * @param description Description of how the hash was made, or null or empty if it is a hash of the whole file.
+     * @return The variant.
+     */
+    static int variantOf(String description) {
+        if (description == null || description.isEmpty()) {
+            return 0;
+        }
+        int variant = description.hashCode();
+        return variant == 0 ? 1 : variant;
+    }
+
+    /**
+     * Look up the stored TLSH hash of a file.
+     *
+     * @param sha256 SHA-256 of the file as a hex string, or null if it is not known.
+     * @param size Size of the file in bytes.
+     * @param variant Variant of the hash from variantOf().
+     * @return The hash string or null if the file is not in the store.
+     */
+    String lookup(String sha256, long size, int variant) {
+        byte[] key = key(sha256, size, variant);
+        if (key == null) {
+            return null;
+        }
+
+        String hash = this.appended.get(ByteBuffer.wrap(key));
+        if (hash == null) {
+            this.mappingLock.readLock().lock();
+            try {
+                if (this.mapped != null) {
+                    int record = findAppended(key);
+                    if (record < 0) {
+                        record = findSorted(key);
+                    }
+                    if (record >= 0) {
+                        hash = readHash(record);
+                    }
+                }
+            } finally {
+                this.mappingLock.readLock().unlock();
+            }
+        }
+
+        if (hash != null) {
+            this.hits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+        }
+        return hash;
+    }
+
+    /**
+     * Add the TLSH hash of a file at the end of the store. Nothing is added once the store holds the maximum number of
+     * records, the next compaction makes room again.
+     *
+     * @param sha256 SHA-256 of the file as a hex string, or null if it is not known.
+     * @param size Size of the file in bytes.
+     * @param variant Variant of the hash from variantOf().
+     * @param hash The TLSH hash string.
+     */
+    void append(String sha256, long size, int variant, String hash) {
+        byte[] key = key(sha256, size, variant);
+        if (key == null || hash == null || hash.length() > MAX_HASH_LENGTH) {
+            return;
+        }
+
+        ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+        if (hash.equals(this.appended.get(wrappedKey))) {
+            return;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.put(key);
+        record.putInt(SESSION_OFFSET, this.session);
+        record.put(HASH_LENGTH_OFFSET, (byte) hash.length());
+        record.position(HASH_OFFSET);
+        record.put(hash.getBytes(StandardCharsets.US_ASCII));
+        record.rewind();
+
+        // Only the writes to the file are serialized, lookups do not wait for them
+        synchronized (this.appendLock) {
+            if (this.writeFailed || this.channel == null
+                    || this.fileRecords >= this.maxEntries + this.maxEntries / 2L) {
+                return;
+            }
+
+            try {
+                long position = HEADER_SIZE + this.fileRecords * RECORD_SIZE;
+                while (record.hasRemaining()) {
+                    position += this.channel.write(record, position);
+                }
+            } catch (IOException ex) {
+                // Stop writing so a failing disk is not retried for every file
+                logger.log(Level.WARNING, "Failed to write to the TLSH digest store " + this.path, ex);
+                this.writeFailed = true;
+                return;
+            }
+
+            this.fileRecords++;
+            this.appended.put(wrappedKey, hash);
+        }
+    }
+
+    /**
+     * Get the number of hashes that can be looked up in the store.
+     */
+    int size() {
+        this.mappingLock.readLock().lock();
+        try {
+            if (this.mapped == null) {
+                return this.appended.size();
+            }
+
+            int size = this.sortedRecords;
+            for (int entry : this.appendedTable) {
+                if (entry != 0 && findSorted(recordKey(entry - 1)) < 0) {
+                    size++;
+                }
+            }
+            for (ByteBuffer key : this.appended.keySet()) {
+                if (findAppended(key.array()) < 0 && findSorted(key.array()) < 0) {
+                    size++;
+                }
+            }
+            return size;
+        } finally {
+            this.mappingLock.readLock().unlock();
+        }
+    }
+
+    long getHitCount() {
+        return this.hits.get();
+    }
+
+    long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * Create the binary key of a record.
+     *
+     * @return The key or null if the SHA-256 is not valid.
+     */
+    private static byte[] key(String sha256, long size, int variant) {
+        byte[] sha256Bytes = parseSha256(sha256);
+        if (sha256Bytes == null) {
+            return null;
+        }
+
+        ByteBuffer key = ByteBuffer.allocate(KEY_LENGTH);
+        key.put(sha256Bytes);
+        key.putLong(size);
+        key.putInt(variant);
+        return key.array();
+    }
+
+    /**
+     * Convert a SHA-256 hex string to its bytes.
+     *
+     * @return The bytes or null if the string is not a SHA-256.
+     */
+    private static byte[] parseSha256(String sha256) {
+        if (sha256 == null || sha256.length() != SHA256_LENGTH * 2) {
+            return null;
+        }
+
+        byte[] bytes = new byte[SHA256_LENGTH];
+        for (int i = 0; i < SHA256_LENGTH; i++) {
+            int high = Character.digit(sha256.charAt(i * 2), 16);
+            int low = Character.digit(sha256.charAt(i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+            bytes[i] = (byte) ((high << 4) | low);
+        }
+        return bytes;
+    }
+
+    /**
+     * Compare two keys as unsigned bytes, which is the order of the sorted records.
+     */
+    private static int compareKeys(ByteBuffer a, int aStart, ByteBuffer b, int bStart) {
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            int diff = (a.get(aStart + i) & 0xFF) - (b.get(bStart + i) & 0xFF);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the slot of a key in the table of appended records. The SHA-256 is already uniformly distributed, so its
+     * first bytes are enough when they are mixed with the size and the variant.
+     */
+    private static int slotOf(ByteBuffer buf, int start, int mask) {
+        long size = buf.getLong(start + SIZE_OFFSET);
+        int hash = buf.getInt(start) ^ (int) (size ^ (size >>> 32)) * 31 ^ buf.getInt(start + VARIANT_OFFSET);
+        hash ^= hash >>> 16;
+        return hash & mask;
+    }
+
+    /**
+     * Copy the key of a mapped record.
+     */
+    private byte[] recordKey(int record) {
+        byte[] key = new byte[KEY_LENGTH];
+        for (int i = 0; i < KEY_LENGTH; i++) {
+            key[i] = this.mapped.get(record * RECORD_SIZE + i);
+        }
+        return key;
+    }
+
+    /**
+     * Find a key among the sorted records with a binary search of the mapping.
+     *
+     * @return The record number or -1 if the key is not found.
+     */
+    private int findSorted(byte[] key) {
+        ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+        int low = 0;
+        int high = this.sortedRecords - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = compareKeys(this.mapped, middle * RECORD_SIZE, wrappedKey, 0);
+            if (diff < 0) {
+                low = middle + 1;
+            } else if (diff > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find a key among the mapped records that are not sorted.
+     *
+     * @return The record number or -1 if the key is not found.
+     */
+    private int findAppended(byte[] key) {
+        if (this.appendedTable.length == 0) {
+            return -1;
+        }
+
+        ByteBuffer wrappedKey = ByteBuffer.wrap(key);
+        int mask = this.appendedTable.length - 1;
+        for (int slot = slotOf(wrappedKey, 0, mask); this.appendedTable[slot] != 0; slot = (slot + 1) & mask) {
+            int record = this.appendedTable[slot] - 1;
+            if (compareKeys(this.mapped, record * RECORD_SIZE, wrappedKey, 0) == 0) {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Build the table of the mapped records that are not sorted. It is kept at most half full.
+     */
+    private void buildAppendedTable() {
+        int count = (int) (this.fileRecords - this.sortedRecords);
+        if (count == 0) {
+            this.appendedTable = new int[0];
+            return;
+        }
+
+        int capacity = 2;
+        while (capacity < count * 2L) {
+            capacity <<= 1;
+        }
+        int[] table = new int[capacity];
+        int mask = capacity - 1;
+        for (int record = this.sortedRecords; record < this.fileRecords; record++) {
+            int start = record * RECORD_SIZE;
+            int slot = slotOf(this.mapped, start, mask);
+            // Later records replace earlier records with the same key
+            while (table[slot] != 0 && compareKeys(this.mapped, (table[slot] - 1) * RECORD_SIZE, this.mapped, start) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = record + 1;
+        }
+        this.appendedTable = table;
+    }
+
+    /**
+     * Read the hash string of a mapped record.
+     */
+    private String readHash(int record) {
+        int start = record * RECORD_SIZE;
+        int length = this.mapped.get(start + HASH_LENGTH_OFFSET);
+        if (length <= 0 || length > MAX_HASH_LENGTH) {
+            return null;
+        }
+
+        byte[] hash = new byte[length];
+        for (int i = 0; i < length; i++) {
+            hash[i] = this.mapped.get(start + HASH_OFFSET + i);
+        }
+        return new String(hash, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Open and lock the file and read its header, or write a new header if the file is new or not a store. A record
+     * that was only partly written, for example because Autopsy was killed while appending it, is ignored and
+     * overwritten by the next append.
+     */
+    private void openChannel() throws IOException {
+        Files.createDirectories(this.path.getParent());
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        this.lock = this.channel.tryLock();
+        if (this.lock == null) {
+            this.channel.close();
+            this.channel = null;
+            throw new IOException("The TLSH digest store is in use by another process: " + this.path);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        int bytesRead = 0;
+        while (header.hasRemaining() && bytesRead >= 0) {
+            bytesRead = this.channel.read(header, header.position());
+        }
+
+        this.fileRecords = Math.max(0, (this.channel.size() - HEADER_SIZE) / RECORD_SIZE);
+        this.sortedRecords = (int) Math.min(header.getLong(SORTED_RECORDS_OFFSET), Integer.MAX_VALUE);
+        this.session = header.getInt(LAST_SESSION_OFFSET);
+
+        byte[] magic = Arrays.copyOf(header.array(), MAGIC.length);
+        if (header.hasRemaining() || !Arrays.equals(magic, MAGIC) || this.sortedRecords < 0
+                || this.sortedRecords > this.fileRecords || this.fileRecords > MAX_ENTRIES_LIMIT + MAX_ENTRIES_LIMIT / 2) {
+            if (this.channel.size() > 0) {
+                logger.log(Level.WARNING, "Discarding the unknown TLSH digest store {0}", this.path);
+            }
+            this.channel.truncate(0);
+            this.fileRecords = 0;
+            this.sortedRecords = 0;
+            this.session = 0;
+            writeHeader(this.channel, 0, 0);
+        }
+    }
+
+    private static void writeHeader(FileChannel channel, long sortedRecords, int session) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putLong(SORTED_RECORDS_OFFSET, sortedRecords);
+        header.putInt(LAST_SESSION_OFFSET, session);
+        header.rewind();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += channel.write(header, position);
+        }
+    }
+
+    /**
+     * Called for every record that is kept by a compaction, in the order of their keys.
+     */
+    private interface RecordVisitor {
+
+        void visit(ByteBuffer records, int start) throws IOException;
+    }
+
+    /**
+     * Merge the sorted records with the appended records, keeping the latest record of every key, and rewrite the file
+     * with at most maxEntries records. When there are too many records, the records of the oldest sessions are
+     * dropped first. The file is mapped while the records are merged and released before it is replaced, since a
+     * mapped file can not be replaced on Windows.
+     */
+    private void compact() throws IOException {
+        final MappedByteBuffer records = this.channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                this.fileRecords * RECORD_SIZE);
+        Path temp = this.path.resolveSibling(this.path.getFileName() + ".compact");
+        long kept;
+        try {
+            long[] order = sortAppended(records);
+
+            // Count the live records of every session to find out how many have to be dropped
+            final Map<Integer, Long> sessionRecords = new TreeMap<>();
+            merge(records, order, new RecordVisitor() {
+                @Override
+                public void visit(ByteBuffer records, int start) {
+                    int recordSession = records.getInt(start + SESSION_OFFSET);
+                    Long count = sessionRecords.get(recordSession);
+                    sessionRecords.put(recordSession, count == null ? 1 : count + 1);
+                }
+            });
+
+            long excess = -this.maxEntries;
+            for (long count : sessionRecords.values()) {
+                excess += count;
+            }
+            int cutoffSession = Integer.MIN_VALUE;
+            long cutoffDropped = 0;
+            for (Map.Entry<Integer, Long> entry : sessionRecords.entrySet()) {
+                if (excess <= 0) {
+                    break;
+                }
+                cutoffSession = entry.getKey();
+                cutoffDropped = Math.min(excess, entry.getValue());
+                excess -= cutoffDropped;
+            }
+
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                RecordWriter writer = new RecordWriter(out, cutoffSession, cutoffDropped);
+                merge(records, order, writer);
+                writer.flush();
+                writeHeader(out, writer.written, this.session);
+                out.force(true);
+                kept = writer.written;
+            }
+        } finally {
+            if (!unmap(records)) {
+                pinnedFiles.add(this.path);
+            }
+        }
+
+        if (pinnedFiles.contains(this.path)) {
+            logger.log(Level.WARNING, "Could not release the mapping of the TLSH digest store {0}, it is not compacted",
+                    this.path);
+            Files.deleteIfExists(temp);
+            return;
+        }
+
+        logger.log(Level.INFO, "Compacted the TLSH digest store {0} from {1} to {2} records",
+                new Object[]{this.path, this.fileRecords, kept});
+
+        // The file must be closed before it can be replaced on Windows
+        close();
+        Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING);
+        openChannel();
+    }
+
+    /**
+     * Sort the appended records by key. Each entry holds the first four bytes of the key above the record number, so
+     * the entries are sorted as primitives and only runs with the same first bytes have to be compared by their whole
+     * key. Records with the same key stay in the order they were written.
+     */
+    private long[] sortAppended(ByteBuffer records) {
+        int count = (int) (this.fileRecords - this.sortedRecords);
+        long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            int record = this.sortedRecords + i;
+            // Flipping the sign bit makes the signed order of the entries the unsigned order of the bytes
+            order[i] = ((long) (records.getInt(record * RECORD_SIZE) ^ Integer.MIN_VALUE) << 32) | record;
+        }
+        Arrays.sort(order);
+
+        int runStart = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i == count || (order[i] >>> 32) != (order[runStart] >>> 32)) {
+                for (int j = runStart + 1; j < i; j++) {
+                    long entry = order[j];
+                    int k = j - 1;
+                    while (k >= runStart && compareKeys(records, (int) order[k] * RECORD_SIZE, records,
+                            (int) entry * RECORD_SIZE) > 0) {
+                        order[k + 1] = order[k];
+                        k--;
+                    }
+                    order[k + 1] = entry;
+                }
+                runStart = i;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Visit the latest record of every key in the order of the keys. An appended record replaces a sorted record with
+     * the same key, and the last of several appended records with the same key replaces the others.
+     */
+    private void merge(ByteBuffer records, long[] order, RecordVisitor visitor) throws IOException {
+        int sorted = 0;
+        int next = 0;
+        while (sorted < this.sortedRecords || next < order.length) {
+            if (next == order.length) {
+                visitor.visit(records, sorted++ * RECORD_SIZE);
+                continue;
+            }
+
+            while (next + 1 < order.length && compareKeys(records, (int) order[next] * RECORD_SIZE, records,
+                    (int) order[next + 1] * RECORD_SIZE) == 0) {
+                next++;
+            }
+            int appendedStart = (int) order[next] * RECORD_SIZE;
+
+            int diff = sorted < this.sortedRecords
+                    ? compareKeys(records, sorted * RECORD_SIZE, records, appendedStart) : 1;
+            if (diff < 0) {
+                visitor.visit(records, sorted++ * RECORD_SIZE);
+            } else {
+                visitor.visit(records, appendedStart);
+                next++;
+                if (diff == 0) {
+                    sorted++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the records that are kept by a compaction after the header of the new file.
+     */
+    private static class RecordWriter implements RecordVisitor {
+
+        private final FileChannel out;
+        private final int cutoffSession;
+        private long cutoffDropped;
+        private final ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 8192);
+        private long position = HEADER_SIZE;
+        long written = 0;
+
+        RecordWriter(FileChannel out, int cutoffSession, long cutoffDropped) {
+            this.out = out;
+            this.cutoffSession = cutoffSession;
+            this.cutoffDropped = cutoffDropped;
+        }
+
+        @Override
+        public void visit(ByteBuffer records, int start) throws IOException {
+            int recordSession = records.getInt(start + SESSION_OFFSET);
+            if (recordSession < this.cutoffSession) {
+                return;
+            }
+            if (recordSession == this.cutoffSession && this.cutoffDropped > 0) {
+                this.cutoffDropped--;
+                return;
+            }
+
+            if (!this.buffer.hasRemaining()) {
+                flush();
+            }
+            for (int i = 0; i < RECORD_SIZE; i++) {
+                this.buffer.put(records.get(start + i));
+            }
+            this.written++;
+        }
+
+        void flush() throws IOException {
+            this.buffer.flip();
+            while (this.buffer.hasRemaining()) {
+                this.position += this.out.write(this.buffer, this.position);
+            }
+            this.buffer.clear();
+        }
+    }
+
+    /**
+     * Release a mapping now instead of when it is garbage collected. Java 9 and later do this through
+     * Unsafe.invokeCleaner(), Java 8 through the cleaner of the buffer.
+     *
+     * @return False if the mapping could not be released.
+     */
+    private static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+            return true;
+        } catch (NoSuchMethodException ex) {
+            try {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return true;
+            } catch (ReflectiveOperationException | RuntimeException ex2) {
+                logger.log(Level.WARNING, "Failed to release a TLSH digest store mapping", ex2);
+                return false;
+            }
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            logger.log(Level.WARNING, "Failed to release a TLSH digest store mapping", ex);
+            return false;
+        }
+    }
+
+    private void logStatistics() {
+        logger.log(Level.INFO, "TLSH digest store {0}: {1} hits, {2} misses, {3} hashes added, {4} hashes stored",
+                new Object[]{this.path, this.hits.get(), this.misses.get(), this.appended.size(), size()});
+    }
+
+    /**
+     * Release the mapping, then flush and unlock the file.
+     */
+    private void close() {
+        this.mappingLock.writeLock().lock();
+        try {
+            if (this.mapped != null && !unmap(this.mapped)) {
+                pinnedFiles.add(this.path);
+            }
+            this.mapped = null;
+            this.appendedTable = new int[0];
+        } finally {
+            this.mappingLock.writeLock().unlock();
+        }
+
+        synchronized (this.appendLock) {
+            if (this.channel == null) {
+                return;
+            }
+
+            try {
+                this.channel.force(false);
+                if (this.lock != null) {
+                    this.lock.release();
+                }
+                this.channel.close();
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "Failed to close the TLSH digest store " + this.path, ex);
+            }
+            this.channel = null;
+            this.lock = null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the hashes of the reference index that are exactly the same as a file's hash, which is distance 0, without
+ * comparing the file with all of them. The checksum, Q ratios and body of every entry, and the length value when the
+ * length is compared, are hashed into a 32 bit key and the entries are sorted by it. A lookup returns the entries with
+ * the same key, which TlshReferenceIndex then checks really are at distance 0, since different hashes can have the
+ * same key.
+ */
+public class TlshExactIndex {
+
+    private static final int FNV_OFFSET_BASIS = 0x811C9DC5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    private final boolean compareLength;
+
+    // Key in the high bits and entry in the low bits, sorted
+    private final long[] sortedKeys;
+
+    // Number of files looked up and the number that had at least one exact match
+    private final AtomicLong lookupCount = new AtomicLong();
+    private final AtomicLong matchedCount = new AtomicLong();
+
+    /**
+     * Build the exact index.
+     *
+     * @param checksums Checksum of every entry.
+     * @param lvalues Length value of every entry.
+     * @param qRatios Q ratios of every entry.
+     * @param bodies Bodies of the entries, TlshReferenceIndex.BODY_LENGTH bytes each.
+     * @param size Number of entries.
+     * @param compareLength True if the length is part of the distance, so hashes of different lengths are not exact.
+     */
+    TlshExactIndex(byte[] checksums, byte[] lvalues, byte[] qRatios, byte[] bodies, int size, boolean compareLength) {
+        this.compareLength = compareLength;
+        this.sortedKeys = new long[size];
+        for (int entry = 0; entry < size; entry++) {
+            int key = key(checksums[entry], lvalues[entry], qRatios[entry], bodies,
+                    entry * TlshReferenceIndex.BODY_LENGTH);
+            this.sortedKeys[entry] = ((long) key << 32) | entry;
+        }
+        Arrays.sort(this.sortedKeys);
+    }
+
+    boolean getCompareLength() {
+        return this.compareLength;
+    }
+
+    /**
+     * Find the entries that have the same key as a hash.
+     *
+     * @param query Decoded hash of the file.
+     * @param candidates List the entries are added to, in the order they were added to the index.
+     */
+    void search(byte[] query, TlshCandidateList candidates) {
+        long key = (long) key(query[TlshReferenceIndex.CHECKSUM], query[TlshReferenceIndex.LVALUE],
+                query[TlshReferenceIndex.Q_RATIOS], query, TlshReferenceIndex.BODY) << 32;
+
+        // The first element with the key, if there is one, is the first one that is not below it
+        int index = Arrays.binarySearch(this.sortedKeys, key);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        for (; index < this.sortedKeys.length && (this.sortedKeys[index] & 0xFFFFFFFF00000000L) == key; index++) {
+            candidates.add((int) this.sortedKeys[index]);
+        }
+    }
+
+    /**
+     * Count a file that was looked up.
+     *
+     * @param matched True if it had at least one exact match.
+     */
+    void countLookup(boolean matched) {
+        this.lookupCount.incrementAndGet();
+        if (matched) {
+            this.matchedCount.incrementAndGet();
+        }
+    }
+
+    long getLookupCount() {
+        return this.lookupCount.get();
+    }
+
+    long getMatchedCount() {
+        return this.matchedCount.get();
+    }
+
+    /**
+     * Hash the parts of a hash that have to be the same for a distance of 0 with FNV-1a.
+     */
+    private int key(byte checksum, byte lvalue, byte qRatios, byte[] body, int bodyStart) {
+        int hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ (checksum & 0xFF)) * FNV_PRIME;
+        if (this.compareLength) {
+            hash = (hash ^ (lvalue & 0xFF)) * FNV_PRIME;
+        }
+        hash = (hash ^ (qRatios & 0xFF)) * FNV_PRIME;
+        for (int i = 0; i < TlshReferenceIndex.BODY_LENGTH; i++) {
+            hash = (hash ^ (body[bodyStart + i] & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.modules.filetypeid.FileTypeDetector;
+import org.sleuthkit.datamodel.AbstractFile;
+import org.sleuthkit.datamodel.TskData;
+
+/**
+ * Decides if a file is worth reading and hashing before any of its content is touched. The checks run in order from
+ * cheapest to most expensive and stop at the first one that rejects the file, so MIME type detection only runs for files
+ * that could actually produce a TLSH hash.
+ *
+ * Every ingest thread needs its own filter because the FileTypeDetector is not shared, but the rejection counts are
+ * shared by the whole job.
+ */
+public class TlshFileFilter {
+
+    private static final Logger logger = Logger.getLogger(TlshFileFilter.class.getName());
+
+    /**
+     * The checks of the filter, in the order they are run.
+     */
+    enum Stage {
+        FILE_TYPE("file type"),
+        FILE_SIZE("file size"),
+        EXTENSION("extension"),
+        KNOWN_STATUS("known status"),
+        MIME_TYPE("MIME type");
+
+        private final String displayName;
+
+        Stage(String displayName) {
+            this.displayName = displayName;
+        }
+
+        String getDisplayName() {
+            return this.displayName;
+        }
+    }
+
+    private final long minFileSize;
+    private final long maxFileSize;
+    private final Set<String> allowedExtensions;
+    private final Set<String> deniedExtensions;
+    private final boolean skipKnownFiles;
+    private final String compareMimeType;
+
+    // Number of files rejected by each stage, indexed by Stage.ordinal()
+    private final AtomicLongArray rejections;
+
+    private FileTypeDetector fileTypeDetector = null;
+    private boolean fileTypeDetectorFailed = false;
+
+    /**
+     * Create a filter from the ingest job settings.
+     *
+     * @param settings Settings of the ingest job.
+     * @param rejections Counters shared by the job, one for every Stage.
+     */
+    TlshFileFilter(TlshModuleIngestJobSettings settings, AtomicLongArray rejections) {
+        this.minFileSize = settings.getMinFileSize();
+        this.maxFileSize = settings.getMaxFileSize();
+        this.allowedExtensions = normalizeExtensions(settings.getAllowedExtensions());
+        this.deniedExtensions = normalizeExtensions(settings.getDeniedExtensions());
+        this.skipKnownFiles = settings.getSkipKnownFiles();
+        this.compareMimeType = settings.getCompareMimeType();
+        this.rejections = rejections;
+    }
+
+    /**
+     * Run all of the checks on the file and count the rejection if one fails.
+     *
+     * @param file File passed in by Autopsy.
+     * @return true if the file should be hashed.
+     */
+    boolean accept(AbstractFile file) {
+        Stage rejectedBy = findRejection(file);
+        if (rejectedBy == null) {
+            return true;
+        }
+
+        this.rejections.incrementAndGet(rejectedBy.ordinal());
+        return false;
+    }
+
+    /**
+     * Find the first check that the file does not pass.
+     *
+     * @param file File passed in by Autopsy.
+     * @return The stage that rejected the file or null if it passed them all.
+     */
+    private Stage findRejection(AbstractFile file) {
+        // Skip anything other than actual file system files.
+        if ((file.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS)
+                || (file.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS)
+                || (file.isFile() == false)) {
+            return Stage.FILE_TYPE;
+        }
+
+        if (!acceptsSize(file.getSize())) {
+            return Stage.FILE_SIZE;
+        }
+
+        if (!acceptsExtension(file.getNameExtension())) {
+            return Stage.EXTENSION;
+        }
+
+        if (this.skipKnownFiles && file.getKnown() == TskData.FileKnown.KNOWN) {
+            return Stage.KNOWN_STATUS;
+        }
+
+        if (!MimeTypeComparison.MatchingMimeTypes(getMimeType(file), this.compareMimeType)) {
+            return Stage.MIME_TYPE;
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks if a file of this size can be hashed and is within the configured limits.
+     *
+     * @param size Size of the file in bytes.
+     * @return true if the size is accepted.
+     */
+    boolean acceptsSize(long size) {
+        if (size < this.minFileSize) {
+            return false;
+        }
+        return this.maxFileSize <= 0 || size <= this.maxFileSize;
+    }
+
+    /**
+     * Checks the extension against the allow and deny lists. An empty allow list allows every extension.
+     *
+     * @param extension File extension with or without the leading dot, can be null.
+     * @return true if the extension is accepted.
+     */
+    boolean acceptsExtension(String extension) {
+        if (this.allowedExtensions.isEmpty() && this.deniedExtensions.isEmpty()) {
+            return true;
+        }
+
+        String normalized = normalizeExtension(extension);
+        if (this.deniedExtensions.contains(normalized)) {
+            return false;
+        }
+        return this.allowedExtensions.isEmpty() || this.allowedExtensions.contains(normalized);
+    }
+
+    /**
+     * Get the MIME type of the file. If Autopsy has not detected it yet, detect it here.
+     *
+     * @param file File passed in by Autopsy.
+     * @return The MIME type or null if it could not be detected.
+     */
+    private String getMimeType(AbstractFile file) {
+        String mimeFileType = file.getMIMEType();
+        if (mimeFileType != null || "*/*".equals(this.compareMimeType)) {
+            // Either it is already known or every type matches, so there is no need to detect it
+            return mimeFileType;
+        }
+
+        if (this.fileTypeDetector == null && !this.fileTypeDetectorFailed) {
+            try {
+                this.fileTypeDetector = new FileTypeDetector();
+            } catch (FileTypeDetector.FileTypeDetectorInitException ex) {
+                logger.log(Level.WARNING, "Could not open file detector, MIME file types might be null:", ex);
+                this.fileTypeDetectorFailed = true;
+            }
+        }
+
+        if (this.fileTypeDetector == null) {
+            return null;
+        }
+        return this.fileTypeDetector.getMIMEType(file);
+    }
+
+    /**
+     * Convert a list of extensions to the form used for comparisons.
+     */
+    private static Set<String> normalizeExtensions(String[] extensions) {
+        Set<String> normalized = new HashSet<>();
+        for (String extension : extensions) {
+            String value = normalizeExtension(extension);
+            if (!value.isEmpty()) {
+                normalized.add(value);
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Lower case the extension and remove the leading dot.
+     */
+    private static String normalizeExtension(String extension) {
+        if (extension == null) {
+            return "";
+        }
+
+        String value = extension.trim().toLowerCase(Locale.ROOT);
+        if (value.startsWith(".")) {
+            value = value.substring(1);
+        }
+        return value;
+    }
+}
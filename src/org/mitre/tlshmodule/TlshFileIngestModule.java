@@ -14,25 +14,22 @@
 package org.mitre.tlshmodule;
 
 import com.trendmicro.tlsh.Tlsh;
-import com.trendmicro.tlsh.TlshCreator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 
 import org.sleuthkit.autopsy.casemodule.Case;
 import org.sleuthkit.autopsy.casemodule.NoCurrentCaseException;
 import org.sleuthkit.autopsy.coreutils.Logger;
-import org.sleuthkit.autopsy.coreutils.ModuleSettings;
 import org.sleuthkit.autopsy.ingest.FileIngestModuleAdapter;
 import org.sleuthkit.autopsy.ingest.IngestJobContext;
 import org.sleuthkit.autopsy.ingest.IngestModule;
-import org.sleuthkit.autopsy.modules.filetypeid.FileTypeDetector;
 import org.sleuthkit.datamodel.AbstractFile;
-import org.sleuthkit.datamodel.TskData;
 import org.sleuthkit.datamodel.Blackboard;
 import org.sleuthkit.datamodel.BlackboardArtifact;
 import org.sleuthkit.datamodel.BlackboardAttribute;
@@ -52,7 +49,6 @@ public class TlshFileIngestModule extends FileIngestModuleAdapter {
     private String ingestUUID = new String();
 
     private static final Logger logger = Logger.getLogger(TlshFileIngestModule.class.getName());
-    private final String ModuleArtifactName = "TLSH (Trend Micro Locality Sensitive Hash)";
 
     private IngestJobContext context = null;
 
@@ -60,16 +56,76 @@ public class TlshFileIngestModule extends FileIngestModuleAdapter {
     private Blackboard blackboard = null;
 
     // Variables for the settings panel GUI
-    private boolean runTlshComparison = false;
-    private String[] tlshHashStrings = new String[0];
-    private final ArrayList<ParseTlshObj> tlshHashes = new ArrayList<>();
     private int thresholdDistance = 10;
     private boolean compareLength = false;
 
-    private List<String> enabledHashSets = new ArrayList<>();
-    private final Map<String, ArrayList<ParseTlshObj>> hashSetMap = new HashMap<>();
+    // Maximum number of hits kept for every file, in total or for every hash set, 0 to keep all of them
+    private int topKMatches = 0;
+    private boolean topKPerHashSet = false;
 
-    private String compareMimeType;
+    // Number of closest hits listed when the hits of a file are posted as one artifact per category, 0 to post every
+    // hit
+    private int aggregatedClosestHits = 0;
+
+    // True to skip comparing files that have an exact match with the reference index
+    private boolean exactMatchSkipsScan = false;
+
+    // The hash list and the hash sets, decoded once for the whole job and shared with the other ingest threads
+    private TlshReferenceIndex referenceIndex = null;
+
+    // Objects shared with the other ingest threads of the same job. The settings are only kept to create them.
+    private final TlshModuleIngestJobSettings jobSettings;
+    private TlshIngestJobResources jobResources = null;
+    private ReadBufferPool bufferPool = null;
+
+    // Calculates the hashes, reset and reused for every file this thread processes
+    private TlshDigestEngine digestEngine = null;
+
+    // Calculates the MD5 and SHA-256 while the file is read for TLSH, null if it is disabled
+    private CryptographicDigests cryptographicDigests = null;
+
+    // Skips files that can not or should not be hashed before they are read
+    private TlshFileFilter fileFilter = null;
+
+    // Which blocks of very large files are hashed, null if sampling is disabled
+    private TlshSamplingPolicy samplingPolicy = null;
+
+    // Hashes of files with the same content that were already hashed in this job, null if the cache is disabled
+    private TlshDigestCache digestCache = null;
+
+    // Hashes kept on disk from earlier cases, null if the store is disabled
+    private TlshDigestStore digestStore = null;
+
+    // Decides the scores of the hits
+    private TlshMatchPolicy matchPolicy = null;
+
+    // Types the hashes of the files are posted with
+    private TlshDigestArtifacts digestArtifacts = null;
+
+    // Hashes already posted for the files of the data source, null to look them up in the artifacts of every file
+    private TlshKnownHashMap knownHashes = null;
+
+    // Hits recorded for the files of the data source, and true to skip the hits that were recorded by earlier ingests
+    private TlshHitStore hitStore = null;
+    private boolean skipRecordedHits = false;
+
+    // Writes the results of the job to the blackboard in batches, null to post every artifact as it is created
+    private TlshBlackboardPublisher publisher = null;
+
+    // Threads of the job that process the files after process() hands them over, null to process them here
+    private TlshIngestPipeline pipeline = null;
+
+    // Files of this thread waiting to be compared together, null if batch comparison is disabled
+    private List<TlshFileTask> comparisonBatch = null;
+    private List<byte[]> comparisonBatchQueries = null;
+    private int comparisonBatchSize = 0;
+
+    // Number of files handed to the pipeline that it has not finished yet
+    private int pendingTasks = 0;
+    private final Object pendingTasksLock = new Object();
+
+    // Number of bytes hashed from the head and the tail of a file to key it when it has no MD5 or SHA-256
+    private static final int PARTIAL_KEY_REGION_SIZE = 64 * 1024;
 
     /**
      * Class constructor which takes in settings that were configured via the Autopsy GUI.
@@ -82,15 +138,18 @@ public class TlshFileIngestModule extends FileIngestModuleAdapter {
 
         this.ingestUUID = settings.getIngestUUID();
 
-        this.runTlshComparison = settings.getRunTlshComparison();
-        this.tlshHashStrings = settings.getTlshHashes();
-
         this.thresholdDistance = settings.getTargetDistance();
         this.compareLength = settings.getCompareLength();
+        this.exactMatchSkipsScan = settings.getExactMatchSkipsScan();
+        if (settings.getAggregateHits()) {
+            this.aggregatedClosestHits = settings.getAggregatedClosestHits();
+        }
+        if (settings.getUseTopKMatches()) {
+            this.topKMatches = settings.getTopKMatches();
+            this.topKPerHashSet = settings.getTopKPerHashSet();
+        }
 
-        this.enabledHashSets = new ArrayList<>(Arrays.asList(settings.getEnabledHashSets()));
-
-        this.compareMimeType = settings.getCompareMimeType();
+        this.jobSettings = settings;
     }
 
     /**
@@ -106,36 +165,73 @@ public class TlshFileIngestModule extends FileIngestModuleAdapter {
             throw new IngestModuleException("Exception while getting open case.", ex);
         }
 
-        // Convert the hash list to ParseTlshObj class objects
-        for (String hashStr : this.tlshHashStrings) {
-            ParseTlshObj hashObj = new ParseTlshObj();
-            hashObj.ParseObjFromStr(hashStr);
-            this.tlshHashes.add(hashObj);
-        }
+        this.jobResources = TlshIngestJobResources.acquire(context.getJobId(), this.jobSettings);
+        this.bufferPool = this.jobResources.getBufferPool();
 
-        // Convert all the of the module settings that are ParseTlshObj
-        Map<String, String> moduleSettings = ModuleSettings.getConfigSettings(TlshIngestModuleFactory.getModuleName());
-        for (Map.Entry<String, String> entry : moduleSettings.entrySet()) {
-            if (this.enabledHashSets.contains(entry.getKey())) {
-
-                hashSetMap.put(entry.getKey(), new ArrayList<ParseTlshObj>());
-                String[] hashes = ParseTlshObj.ParseHashLinesWithComments(entry.getValue());
+        this.digestEngine = TlshIngestJobResources.newDigestEngine(this.jobSettings);
+        if (this.jobSettings.getComputeCryptographicHashes()) {
+            this.cryptographicDigests = new CryptographicDigests();
+        }
+        this.fileFilter = new TlshFileFilter(this.jobSettings, this.jobResources.getFilterRejections());
+        this.digestCache = this.jobResources.getDigestCache();
+        this.digestStore = this.jobResources.getDigestStore();
+        this.samplingPolicy = this.jobResources.getSamplingPolicy();
+        this.pipeline = this.jobResources.getPipeline();
+
+        this.referenceIndex = this.jobResources.getReferenceIndex();
+        this.matchPolicy = this.jobResources.getMatchPolicy();
+        try {
+            this.digestArtifacts = this.jobResources.getDigestArtifacts(currentCase.getSleuthkitCase(),
+                    context.getDataSource().getId());
+        } catch (Blackboard.BlackboardException ex) {
+            logger.log(Level.SEVERE, "Exception while adding the TLSH artifact types.", ex);
+            throw new IngestModuleException("Exception while adding the TLSH artifact types.", ex);
+        }
+        if (this.jobSettings.getPreloadKnownHashes()) {
+            this.knownHashes = this.jobResources.getKnownHashes(this.digestArtifacts, currentCase.getSleuthkitCase(),
+                    context.getDataSource().getId());
+        }
+        try {
+            this.hitStore = this.jobResources.getHitStore(currentCase.getSleuthkitCase(),
+                    context.getDataSource().getId(), this.jobSettings.getSkipRecordedHits());
+        } catch (Blackboard.BlackboardException ex) {
+            logger.log(Level.SEVERE, "Exception while adding the TLSH hit attribute type.", ex);
+            throw new IngestModuleException("Exception while adding the TLSH hit attribute type.", ex);
+        }
+        this.skipRecordedHits = this.jobSettings.getSkipRecordedHits() && this.hitStore.isLoaded();
+        this.publisher = this.jobResources.getPublisher(currentCase.getSleuthkitCase(), this.jobSettings);
+
+        // The pipeline compares files on its own threads, one at a time, and top-K mode searches each file on its own
+        if (this.jobSettings.getUseBatchComparison() && this.pipeline == null && this.topKMatches == 0) {
+            this.comparisonBatchSize = this.jobSettings.getComparisonBatchSize();
+            this.comparisonBatch = new ArrayList<>(this.comparisonBatchSize);
+            this.comparisonBatchQueries = new ArrayList<>(this.comparisonBatchSize);
+        }
+    }
 
-                for (String hashStr : hashes) {
-                    ParseTlshObj hashObj = new ParseTlshObj();
-                    hashObj.ParseObjFromStr(entry.getKey(), hashStr);
+    /**
+     * Required function by Autopsy once the ingest is finished. Compares and posts the files left in the batch, waits
+     * for the pipeline to finish the files this module handed to it and for the publisher to write their results, then
+     * releases the objects shared with the rest of the job.
+     */
+    @Override
+    public void shutDown() {
+        this.flushComparisonBatch();
+        this.waitForPendingTasks();
+        if (this.publisher != null) {
+            this.publisher.flush();
+        }
 
-                    ArrayList<ParseTlshObj> oldVal = hashSetMap.get(entry.getKey());
-                    oldVal.add(hashObj);
-                    hashSetMap.put(entry.getKey(), oldVal);
-                }
-            }
+        if (this.jobResources != null) {
+            TlshIngestJobResources.release(this.jobResources);
+            this.jobResources = null;
+            this.bufferPool = null;
         }
     }
 
     /**
      * Function called by Autopsy on each file it has saved for TLSH ingest module processing. This is where the main
-     * logic for the module takes place. Any filtering of specific files happens here.
+     * logic for the module takes place. Filtering of specific files happens first, through the TlshFileFilter.
      * 
      * @param file File passed in by Autopsy including the metadata that it has tagged it with.
      * @return The result of processing the file.
@@ -143,98 +239,344 @@ public class TlshFileIngestModule extends FileIngestModuleAdapter {
     @Override
     public IngestModule.ProcessResult process(AbstractFile file) {
 
-        // Skip anything other than actual file system files.
-        if ((file.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNALLOC_BLOCKS)
-                || (file.getType() == TskData.TSK_DB_FILES_TYPE_ENUM.UNUSED_BLOCKS)
-                || (file.isFile() == false)) {
+        // Skip files by type, size, extension, known status and finally MIME type before reading anything
+        if (!this.fileFilter.accept(file)) {
             return IngestModule.ProcessResult.OK;
         }
 
-        // Skip anything that is not the MIME file type that is being searched for
-        // Detect the MIME file type. If it is null, detect it, then continue
-        String mimeFileType = file.getMIMEType();
-        if (mimeFileType == null) {
-            try {
-                FileTypeDetector ftd = new FileTypeDetector();
-                mimeFileType = ftd.getMIMEType(file);
-            } catch (FileTypeDetector.FileTypeDetectorInitException ex) {
-                logger.log(Level.WARNING, "Could not open file detector, MIME file types might be null:", ex);
+        blackboard = currentCase.getSleuthkitCase().getBlackboard();
+
+        // Check if the file has already been ingested and has a TLSH hash attached that was made the same way, a hash
+        // made with another sampling policy, or without one, is calculated again
+        boolean sampled = this.samplingPolicy != null && this.samplingPolicy.appliesTo(file.getSize());
+        int storeVariant = TlshDigestStore.variantOf(sampled ? this.samplingPolicy.getDescription() : null);
+        String knownHash = this.knownTlshFile(file, storeVariant);
+
+        // Files with the same content as a file that was already hashed in this job reuse its hash
+        String cacheKey = null;
+        String hashStr = null;
+        if (knownHash == null && this.digestCache != null) {
+            cacheKey = this.digestCacheKey(file);
+            hashStr = this.digestCache.get(cacheKey);
+        }
+
+        TlshFileTask task = new TlshFileTask(this, file, sampled, cacheKey, storeVariant);
+
+        if (knownHash != null) {
+            // Hash has already been calculated and posted for this file - only run the comparisons
+            task.hash = Tlsh.fromTlshStr(knownHash);
+            task.hashStr = knownHash;
+            task.postHash = false;
+        } else if (hashStr != null) {
+            task.hash = Tlsh.fromTlshStr(hashStr);
+            task.hashStr = hashStr;
+        } else if (this.digestStore != null) {
+            // Files that were hashed in an earlier case are looked up on disk
+            Tlsh storedHash = this.storedTlshHash(file, storeVariant);
+            if (storedHash != null) {
+                task.hash = storedHash;
+                task.hashStr = storedHash.getEncoded();
+                if (this.digestCache != null) {
+                    this.digestCache.put(cacheKey, task.hashStr);
+                }
             }
         }
-        if (!MimeTypeComparison.MatchingMimeTypes(mimeFileType, compareMimeType)) {
+
+        // Hand the file over to the pipeline, which reads and hashes it if the hash is not known yet
+        if (this.pipeline != null) {
+            synchronized (this.pendingTasksLock) {
+                this.pendingTasks++;
+            }
+            if (task.hash == null) {
+                this.pipeline.submitRead(task);
+            } else {
+                this.pipeline.submitCompare(task);
+            }
             return IngestModule.ProcessResult.OK;
         }
 
-        blackboard = currentCase.getSleuthkitCase().getBlackboard();
+        if (task.hash == null) {
+            // Calculate the hash and check if it is null
+            Tlsh hash = calculateTlshHash(file, sampled);
+            if (hash == null) {
+                return IngestModule.ProcessResult.ERROR;
+            }
+            this.hashCalculated(task, hash);
+        }
 
-        // Check if the file has already been ingested and has a TLSH hash attached
-        String knownHash = this.knownTlshFile(file);
+        if (this.comparisonBatch != null) {
+            this.addToComparisonBatch(task);
+            return IngestModule.ProcessResult.OK;
+        }
 
-        // Hash has already been calculated on this file - skip it or run comparison
-        if (knownHash != null) {
-            ProcessResult retResult = IngestModule.ProcessResult.OK;
-            if (this.runTlshComparison) {
-                retResult = this.processWithComparison(file, Tlsh.fromTlshStr(knownHash));
+        this.compareTask(task);
+        this.publishTask(task);
+
+        return IngestModule.ProcessResult.OK;
+    }
+
+    /**
+     * Add a file to the batch of files waiting to be compared, and compare and post the batch once it is full.
+     *
+     * @param task The file with its hash.
+     */
+    private void addToComparisonBatch(TlshFileTask task) {
+        byte[] query = this.decodeQuery(task);
+        if (query == null) {
+            // Nothing to compare, only the hash is posted
+            this.publishTask(task);
+            return;
+        }
+
+        if (this.findExactMatches(task, query)) {
+            this.publishTask(task);
+            return;
+        }
+
+        this.comparisonBatch.add(task);
+        this.comparisonBatchQueries.add(query);
+        if (this.comparisonBatch.size() >= this.comparisonBatchSize) {
+            this.flushComparisonBatch();
+        }
+    }
+
+    /**
+     * Compare the files in the batch with the hash list and the hash sets together, then post their hashes and hits.
+     */
+    private void flushComparisonBatch() {
+        if (this.comparisonBatch == null || this.comparisonBatch.isEmpty()) {
+            return;
+        }
+
+        List<List<TlshComparisonHit>> hits = new ArrayList<>(this.comparisonBatch.size());
+        for (int i = 0; i < this.comparisonBatch.size(); i++) {
+            hits.add(new ArrayList<TlshComparisonHit>());
+        }
+        this.referenceIndex.findMatches(this.comparisonBatchQueries, this.thresholdDistance, this.compareLength, hits);
+
+        for (int i = 0; i < this.comparisonBatch.size(); i++) {
+            TlshFileTask task = this.comparisonBatch.get(i);
+            this.addScanHits(task, hits.get(i));
+            this.publishTask(task);
+        }
+        this.comparisonBatch.clear();
+        this.comparisonBatchQueries.clear();
+    }
+
+    /**
+     * Keep a hash that was just calculated in the task, the job cache and the digest store. Called by the pipeline from
+     * its hash threads.
+     *
+     * @param task The file that was hashed.
+     * @param hash The calculated TLSH object.
+     */
+    void hashCalculated(TlshFileTask task, Tlsh hash) {
+        task.hash = hash;
+        task.hashStr = hash.getEncoded();
+        if (this.digestCache != null) {
+            this.digestCache.put(task.cacheKey, task.hashStr);
+        }
+        if (this.digestStore != null) {
+            this.digestStore.append(task.file.getSha256Hash(), task.file.getSize(), task.storeVariant, task.hashStr);
+        }
+    }
+
+    /**
+     * Compare the hash of the file with the hash list and the hash sets and keep the hits in the task. Called by the
+     * pipeline from its compare threads.
+     *
+     * @param task The file with its hash.
+     */
+    void compareTask(TlshFileTask task) {
+        byte[] query = this.decodeQuery(task);
+        if (query == null) {
+            return;
+        }
+
+        if (this.findExactMatches(task, query)) {
+            return;
+        }
+
+        List<TlshComparisonHit> scanHits = new ArrayList<>();
+        if (this.topKMatches > 0) {
+            this.referenceIndex.findNearest(query, this.thresholdDistance, this.compareLength, this.topKMatches,
+                    this.topKPerHashSet, scanHits);
+        } else {
+            this.referenceIndex.findMatches(query, this.thresholdDistance, this.compareLength, scanHits);
+        }
+        this.addScanHits(task, scanHits);
+    }
+
+    /**
+     * Add the reference hashes that are exactly the same as the file's hash to its hits, if the exact match fast path
+     * is enabled. They are added before any other hit. With top-K matching only the first k of them are kept, in total
+     * or for every hash set, like findNearest() would.
+     *
+     * @param task The file with its hash.
+     * @param query Decoded hash of the file.
+     * @return true if the file has an exact match and does not have to be compared with the rest of the index.
+     */
+    private boolean findExactMatches(TlshFileTask task, byte[] query) {
+        if (this.referenceIndex.getExactIndex() == null) {
+            return false;
+        }
+        int found = this.referenceIndex.findExact(query, this.topKMatches, this.topKPerHashSet, task.hits);
+        return found > 0 && this.exactMatchSkipsScan;
+    }
+
+    /**
+     * Add the hits of comparing a file with the index to its hits. The hits at distance 0 were already added by the
+     * exact match fast path when it is enabled, so they are skipped.
+     *
+     * @param task The file.
+     * @param scanHits The hits of the comparison.
+     */
+    private void addScanHits(TlshFileTask task, List<TlshComparisonHit> scanHits) {
+        boolean exactAdded = this.referenceIndex.getExactIndex() != null;
+        for (TlshComparisonHit hit : scanHits) {
+            if (!exactAdded || hit.distance > 0) {
+                task.hits.add(hit);
             }
-            if (!hashSetMap.isEmpty()) {
-                retResult = this.processWithHashSets(file, Tlsh.fromTlshStr(knownHash));
+        }
+    }
+
+    /**
+     * Decode the hash of a file to compare it with the reference index.
+     *
+     * @param task The file with its hash.
+     * @return The decoded hash, or null if there is nothing to compare it with or it can not be decoded.
+     */
+    private byte[] decodeQuery(TlshFileTask task) {
+        if (this.referenceIndex.size() == 0) {
+            return null;
+        }
+
+        byte[] query = TlshReferenceIndex.decode(task.hashStr);
+        if (query == null) {
+            logger.log(Level.INFO, "Unable to compare the hash of file {0}, it is not in the default TLSH layout",
+                    task.file.getName());
+        }
+        return query;
+    }
+
+    /**
+     * Post the hash and the comparison hits of the file to the blackboard. Called by the pipeline from its publish
+     * threads.
+     *
+     * @param task The file with its hash and hits.
+     */
+    void publishTask(TlshFileTask task) {
+        if (task.postHash) {
+            postHashToBlackboard(task.hashStr, task.file, task.sampled);
+        }
+
+        // Hits of a sampled hash are marked with the sampling policy, since the hash is not that of the whole file
+        String sampling = task.sampled ? this.samplingPolicy.getDescription() : null;
+
+        // Summaries are built from every hit of the file, so their count and closest hits are complete
+        if (this.aggregatedClosestHits > 0) {
+            for (TlshHitSummary summary : TlshHitSummary.summarize(task.hits, this.aggregatedClosestHits)) {
+                postHitSummaryToBlackboard(summary, task.hashStr, sampling, task.file);
             }
-            return retResult;
+            return;
         }
 
-        // Calculate the hash and check if it is null
-        Tlsh hash = calculateTlshHash(file);
-        if (hash == null) {
-            return IngestModule.ProcessResult.ERROR;
+        for (TlshComparisonHit hit : this.newHits(task)) {
+            Score score = this.scoreOf(hit);
+            String hitKey = this.hitKeyOf(hit);
+            if (hit.fromHashSet) {
+                postHashSetComparisonToBlackboard(hit.distance, score, task.hashStr, sampling, hit.compObj, hitKey,
+                        task.file);
+            } else {
+                postComparisonToBlackboard(hit.distance, score, task.hashStr, sampling, hit.compObj, hitKey,
+                        task.file);
+            }
         }
+    }
 
-        // Create the artifact to post to the blackboard
-        postHashToBlackboard(hash.getEncoded(), file);
+    /**
+     * Get the hits of a file that have to be posted: all of them, or only those that were not recorded for the file by
+     * an earlier ingest or already posted in this one when recorded hits are skipped.
+     *
+     * @param task The file with its hits.
+     * @return The hits to post.
+     */
+    private List<TlshComparisonHit> newHits(TlshFileTask task) {
+        if (!this.skipRecordedHits) {
+            return task.hits;
+        }
 
-        ProcessResult retResult = IngestModule.ProcessResult.OK;
-        if (this.runTlshComparison) {
-            retResult = this.processWithComparison(file, hash);
+        List<TlshComparisonHit> hits = new ArrayList<>(task.hits.size());
+        for (TlshComparisonHit hit : task.hits) {
+            if (this.hitStore.addIfAbsent(task.file.getId(), this.hitKeyOf(hit))) {
+                hits.add(hit);
+            }
         }
-        if (!hashSetMap.isEmpty()) {
-            retResult = this.processWithHashSets(file, hash);
+        return hits;
+    }
+
+    /**
+     * Get the key a hit is recorded with: the threshold of its reference hash, the reference hash and its hash set.
+     */
+    private String hitKeyOf(TlshComparisonHit hit) {
+        return TlshHitStore.keyOf(this.matchPolicy.thresholdOf(hit.compObj, hit.fromHashSet), hit.compObj.hashStr,
+                hit.fromHashSet ? hit.compObj.listName : "");
+    }
+
+    /**
+     * Get the score of a hit from its distance and the threshold of its reference hash.
+     */
+    private Score scoreOf(TlshComparisonHit hit) {
+        return this.matchPolicy.scoreOf(hit.distance, this.matchPolicy.thresholdOf(hit.compObj, hit.fromHashSet));
+    }
+
+    /**
+     * Called by the pipeline once it is done with a file that this module handed to it, whether it succeeded or not.
+     *
+     * @param task The file.
+     */
+    void taskFinished(TlshFileTask task) {
+        synchronized (this.pendingTasksLock) {
+            this.pendingTasks--;
+            this.pendingTasksLock.notifyAll();
         }
+    }
 
-        return retResult;
+    /**
+     * Wait until the pipeline has finished every file that this module handed to it.
+     */
+    private void waitForPendingTasks() {
+        synchronized (this.pendingTasksLock) {
+            while (this.pendingTasks > 0) {
+                try {
+                    this.pendingTasksLock.wait();
+                } catch (InterruptedException ex) {
+                    logger.log(Level.WARNING, "Interrupted while waiting for {0} files to be processed",
+                            this.pendingTasks);
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
     }
 
     /**
-     * Gets the known TLSH hash value that has already been calculated and attached to the file. It does this by pulling
-     * from the blackboard values and checking if one is present for the same file.
+     * Gets the known TLSH hash value that has already been calculated and attached to the file. It does this by looking
+     * it up in the hashes preloaded for the data source, or in the TLSH artifact of the file when they were not.
      *
      * @param file The AbstractFile type from process that is being checked for a known hash.
+     * @param variant Variant of the hash the job makes for the file, from TlshDigestStore.variantOf().
      *
-     * @return tlshStrHash or null if it could not find one attached to the file
+     * @return tlshStrHash or null if it could not find one made that way attached to the file
      */
-    private String knownTlshFile(AbstractFile file) {
+    private String knownTlshFile(AbstractFile file, int variant) {
+        if (this.knownHashes != null) {
+            return this.knownHashes.get(file.getId(), variant);
+        }
+
         String knownHash = null;
         try {
-            ArrayList<BlackboardArtifact> arrArt
-                    = file.getArtifacts(BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT);
-
-            // Loop through the interesting file hits and see if they have already been calculated
-            for (BlackboardArtifact i : arrArt) {
-                String artFileName = i.getParent().getName();  // File name of the artifact
-
-                if (artFileName.equals(file.getName())) {
-                    BlackboardAttribute tmpAttr = i.getAttribute(BlackboardAttribute.Type.TSK_VALUE);
-                    if (tmpAttr == null) {
-                        break;
-                    }
-
-                    // Verifies that the data is from this module
-                    List<String> tmp = tmpAttr.getSources();
-                    if (tmp.contains("TLSHIngestModule")) {
-                        knownHash = tmpAttr.getValueString();
-                        break;
-                    }
-                }
-            }
-
+            knownHash = this.digestArtifacts.digestOf(file, variant);
         } catch (TskCoreException ex) {
             logger.log(Level.INFO, "Failed to get attributes from file: {0}", file.getName());
         }
@@ -243,117 +585,201 @@ public class TlshFileIngestModule extends FileIngestModuleAdapter {
     }
 
     /**
-     * Uses the official TLSH library to calculate the hash of the file and return the TLSH object.
+     * Calculates the TLSH hash of the file with either the official TLSH library or the module's own
+     * TlshDigestCreator, depending on the settings, and returns the TLSH object. The file is streamed into the engine
+     * through a buffer borrowed from the job's buffer pool, so the memory used does not depend on the size of the file
+     * and no buffer is allocated per file. Sampled files only have the blocks picked by the sampling policy read.
+     * If it is enabled, the MD5 and SHA-256 of files that are read completely are calculated from the same data and
+     * stored on the file when Autopsy does not have them yet.
      * 
      * @param file The Autopsy file object passed in by the process function.
+     * @param sampled True to hash the blocks of the sampling policy instead of the whole file.
      * @return Calculated TLSH object or null if it failed.
      */
-    private Tlsh calculateTlshHash(AbstractFile file) {
-        // Read file into the TlshCreator
-        TlshCreator tlshCreator = new TlshCreator();
-
-        try { // Used to catch the exceptions from .read()
-            // Read the file and input them in the TlshCreator
-            byte[] buf = new byte[(int) file.getSize()];
-            int bytesRead = file.read(buf, 0, buf.length);
+    private Tlsh calculateTlshHash(AbstractFile file, boolean sampled) {
+        // Clear the data from the previous file
+        this.digestEngine.reset();
+        CryptographicDigests cryptographic = null;
+        if (this.cryptographicDigests != null && !sampled && CryptographicDigests.isMissingHashes(file)) {
+            cryptographic = this.cryptographicDigests;
+            cryptographic.reset();
+        }
 
-            if (bytesRead != file.getSize()) {
-                logger.log(Level.WARNING, "Could not read all of the file for creating TLSH hash: {0}", file.getName());
+        long fileSize = file.getSize();
+        long expected = 0;
+        long bytesRead = 0;
+
+        byte[] buf = this.bufferPool.borrow();
+        try { // Used to catch the exceptions from .read() and .update()
+            if (sampled) {
+                int blockSize = this.samplingPolicy.getBlockSize();
+                for (int block = 0; block < this.samplingPolicy.getBlockCount(); block++) {
+                    long blockOffset = this.samplingPolicy.getBlockOffset(fileSize, block);
+                    expected += blockSize;
+                    bytesRead += readIntoDigest(file, buf, blockOffset, blockSize, null);
+                }
+            } else {
+                expected = fileSize;
+                bytesRead = readIntoDigest(file, buf, 0, fileSize, cryptographic);
             }
-
-            tlshCreator.update(buf, 0, bytesRead);
         } catch (TskCoreException ex) {
             logger.log(Level.WARNING, "Exception while reading the file.", ex);
             return null;
+        } catch (IllegalStateException ex) {
+            // TLSH has a maximum amount of data it can hash
+            logger.log(Level.WARNING, "File is too large to generate a TLSH hash: " + file.getName(), ex);
+            return null;
+        } finally {
+            this.bufferPool.giveBack(buf);
         }
 
-        // Get the hash from the TlshCreator
+        if (bytesRead != expected) {
+            logger.log(Level.WARNING, "Could not read all of the file for creating TLSH hash: {0}", file.getName());
+        }
+
+        // Get the hash from the digest engine
         Tlsh hash;
         try { // Attempts to catch the exception from .getHash()
-            hash = tlshCreator.getHash();
+            hash = this.digestEngine.getHash();
         } catch (IllegalStateException ex) {
             logger.log(Level.WARNING, "Exception while generating the hash for the file.", ex);
             return null;
         }
 
+        // The cryptographic hashes are only right if the whole file was read
+        if (cryptographic != null && bytesRead == expected) {
+            cryptographic.storeOn(file);
+        }
+
         return hash;
     }
 
     /**
-     * Post the hash string that was calculated for the file to the Autopsy blackboard. This is what needs to be called
-     * in order to display the hash to the user. 
-     * 
-     * @param hashStr The TLSH hash string.
-     * @param file The Autopsy file that the hash will be attached to.
+     * Gets the hash of the file from the digest store. Only files with a SHA-256 can be found in the store.
+     *
+     * @param file The Autopsy file being hashed.
+     * @param variant Variant of the hash, see TlshDigestStore.variantOf().
+     * @return The TLSH object or null if the file is not in the store.
      */
-    private void postHashToBlackboard(String hashStr, AbstractFile file) {
-        BlackboardArtifact artifact = null;
-        try {
-            artifact = file.newAnalysisResult(
-                    BlackboardArtifact.Type.TSK_INTERESTING_FILE_HIT,
-                    Score.SCORE_NONE,
-                    null, null, "Calculated the TLSH for this file.",
-                    Arrays.asList(
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    this.ModuleArtifactName),
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_VALUE,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    hashStr)
-                    ))
-                    .getAnalysisResult();
-        } catch (TskCoreException ex) {
-            logger.log(Level.INFO, "Failed to add hash attribute to file: {0}", file.getName());
+    private Tlsh storedTlshHash(AbstractFile file, int variant) {
+        String storedHash = this.digestStore.lookup(file.getSha256Hash(), file.getSize(), variant);
+        if (storedHash == null) {
+            return null;
         }
 
         try {
-            blackboard.postArtifact(artifact, TlshIngestModuleFactory.getModuleName());
-        } catch (Blackboard.BlackboardException ex) {
-            logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex);
+            return Tlsh.fromTlshStr(storedHash);
+        } catch (IllegalArgumentException ex) {
+            logger.log(Level.INFO, "Ignoring an invalid hash from the TLSH digest store for file: {0}", file.getName());
+            return null;
         }
     }
 
     /**
-     * Process the current file and it's hash against the hash list that was configured by the user before running the
-     * ingest module.
-     * 
-     * @param file The Autopsy file so that results can be posted to the blackboard.
-     * @param genHash The file's TLSH hash object.
-     * @return IngestModule.ProcessResult.OK
+     * Gets the key of the file in the digest cache. The MD5 or SHA-256 stored by Autopsy is used when there is one.
+     * Otherwise, if it is enabled, the size and a SHA-256 of the head and the tail of the file are used. That only
+     * reads a small part of the file, but two different files with the same size, head and tail would share a hash.
+     *
+     * @param file The Autopsy file being hashed.
+     * @return The key or null if the file can not be keyed.
      */
-    private IngestModule.ProcessResult processWithComparison(AbstractFile file, Tlsh genHash) {
-        // Compare with all the hashes in the hash list
-        for (ParseTlshObj compHash : this.tlshHashes) {
-            Tlsh tlshObj;
-            try {
-                tlshObj = Tlsh.fromTlshStr(compHash.hashStr);
-            } catch (IllegalArgumentException ex) {
-                logger.log(Level.INFO, "Invalid inputted hash " + compHash.hashStr + ":", ex);
-                continue;
+    private String digestCacheKey(AbstractFile file) {
+        String key = TlshDigestCache.contentKey(file.getSha256Hash(), file.getMd5Hash());
+        if (key != null || !this.jobSettings.getUsePartialDigestCacheKey()) {
+            return key;
+        }
+
+        long fileSize = file.getSize();
+        byte[] buf = this.bufferPool.borrow();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            int regionSize = (int) Math.min(Math.min(PARTIAL_KEY_REGION_SIZE, buf.length), fileSize);
+            long[] regionOffsets = {0, fileSize - regionSize};
+            for (long regionOffset : regionOffsets) {
+                int bytesRead = file.read(buf, regionOffset, regionSize);
+                if (bytesRead != regionSize) {
+                    return null;
+                }
+                digest.update(buf, 0, bytesRead);
             }
+            return TlshDigestCache.partialKey(fileSize, digest.digest());
+        } catch (TskCoreException | NoSuchAlgorithmException ex) {
+            logger.log(Level.INFO, "Could not create the digest cache key of file: {0}", file.getName());
+            return null;
+        } finally {
+            this.bufferPool.giveBack(buf);
+        }
+    }
 
-            int distance = tlshObj.totalDiff(genHash, this.compareLength);
+    /**
+     * Read a region of the file one buffer at a time and input it in the digest engine.
+     *
+     * @param file The Autopsy file being hashed.
+     * @param buf Buffer to read into.
+     * @param offset Offset of the region in the file.
+     * @param length Length of the region.
+     * @param cryptographic Digests that are also input the region, or null.
+     * @return Number of bytes that were read, less than the length if the file ended early.
+     * @throws TskCoreException If the file could not be read.
+     */
+    private long readIntoDigest(AbstractFile file, byte[] buf, long offset, long length,
+            CryptographicDigests cryptographic) throws TskCoreException {
+        long done = 0;
+        while (done < length) {
+            int bytesRead = file.read(buf, offset + done, Math.min(buf.length, length - done));
+            if (bytesRead <= 0) {
+                break;
+            }
 
-            if (distance <= this.thresholdDistance) {
-                postComparisonToBlackboard(distance, genHash.getEncoded(), compHash, file);
+            this.digestEngine.update(buf, 0, bytesRead);
+            if (cryptographic != null) {
+                cryptographic.update(buf, 0, bytesRead);
             }
+            done += bytesRead;
         }
 
-        return IngestModule.ProcessResult.OK;
+        return done;
+    }
+
+    /**
+     * Post the hash string that was calculated for the file to the Autopsy blackboard. This is what needs to be called
+     * in order to display the hash to the user. 
+     * 
+     * @param hashStr The TLSH hash string.
+     * @param file The Autopsy file that the hash will be attached to.
+     * @param sampled True if the hash was made from the blocks of the sampling policy, which is then recorded as the
+     *                configuration of the artifact.
+     */
+    private void postHashToBlackboard(String hashStr, AbstractFile file, boolean sampled) {
+        String configuration = null;
+        String justification = "Calculated the TLSH for this file.";
+        if (sampled) {
+            configuration = this.samplingPolicy.getDescription();
+            justification = "Calculated a sampled TLSH for this file. Only compare it with hashes sampled the same way.";
+        }
+
+        boolean posted = postAnalysisResult(file, this.digestArtifacts.getArtifactType(), Score.SCORE_NONE, null,
+                configuration, justification, this.digestArtifacts.attributesOf(hashStr));
+
+        // Keep the preloaded hashes in step with the blackboard for the rest of the job
+        if (posted && this.knownHashes != null) {
+            this.knownHashes.putIfAbsent(file.getId(), TlshDigestStore.variantOf(configuration), hashStr);
+        }
     }
 
     /**
      * Post the hash comparison to the blackboard for the user to view.
      * 
      * @param distance TLSH hash distance calculated by the TLSH algorithm.
+     * @param score Score of the hit, from its tier.
      * @param currentHash The hash of the current file.
+     * @param sampling Description of the sampling policy if the hash was sampled, otherwise null.
      * @param compObj Reference to the class containing all the compared to TLSH object information.
+     * @param hitKey The key the hit is recorded with.
      * @param file The Autopsy file used to tag all the information to.
      */
-    private void postComparisonToBlackboard(int distance, String currentHash, ParseTlshObj compObj, AbstractFile file) {
-        BlackboardArtifact artifact = null;
-        BlackboardArtifact total_artifact = null;
-
+    private void postComparisonToBlackboard(int distance, Score score, String currentHash, String sampling,
+            ParseTlshObj compObj, String hitKey, AbstractFile file) {
         String configStr;
         if (compObj.comment.equals("")) {
             configStr = "Compared with: " + compObj.hashStr;
@@ -361,147 +787,151 @@ public class TlshFileIngestModule extends FileIngestModuleAdapter {
             configStr = "Compared with - " + compObj.comment + ": " + compObj.hashStr;
         }
 
-        try {
-            artifact = file.newAnalysisResult(
-                    BlackboardArtifact.Type.TSK_INTERESTING_FILE_HIT,
-                    Score.SCORE_NOTABLE,
-                    "Distance is: " + distance,
-                    configStr,
-                    "TLSH comparison threshold met.",
-                    Arrays.asList(
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    "TLSH Comparison Hits - " + this.ingestUUID),
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_VALUE,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    currentHash)
-                    ))
-                    .getAnalysisResult();
+        postComparisonHit("Distance is: " + distance, score, currentHash, sampling, configStr,
+                Collections.singletonList(hitKey), file, true);
+    }
 
-            total_artifact = file.newAnalysisResult(
-                    BlackboardArtifact.Type.TSK_INTERESTING_FILE_HIT,
-                    Score.SCORE_NOTABLE,
-                    "Distance is: " + distance,
-                    configStr,
-                    "TLSH comparison threshold met.",
-                    Arrays.asList(
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    "TLSH Comparison Hits"),
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_VALUE,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    currentHash)
-                    ))
-                    .getAnalysisResult();
-        } catch (TskCoreException ex) {
-            logger.log(Level.INFO, "Failed to add hash attribute to file: {0}", file.getName());
+    /**
+     * Post the hash comparison to the blackboard for the user to view. This also tags the hash set that the match
+     * was discovered in.
+     * 
+     * @param distance TLSH hash distance calculated by the TLSH algorithm.
+     * @param score Score of the hit, from its tier.
+     * @param currentHash The hash of the current file.
+     * @param sampling Description of the sampling policy if the hash was sampled, otherwise null.
+     * @param compObj Reference to the class containing all the compared to TLSH object information.
+     * @param hitKey The key the hit is recorded with.
+     * @param file The Autopsy file used to tag all the information to.
+     */
+    private void postHashSetComparisonToBlackboard(int distance, Score score, String currentHash, String sampling,
+            ParseTlshObj compObj, String hitKey, AbstractFile file) {
+        String configStr;
+        if (compObj.comment.equals("")) {
+            configStr = "For hashset " + compObj.listName + ": " + compObj.hashStr;
+        } else {
+            configStr = "For hashset " + compObj.listName + " - " + compObj.comment + ": " + compObj.hashStr;
         }
 
-        try {
-            blackboard.postArtifact(artifact, TlshIngestModuleFactory.getModuleName());
-            blackboard.postArtifact(total_artifact, TlshIngestModuleFactory.getModuleName());
-        } catch (Blackboard.BlackboardException ex) {
-            logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex);
-        }
+        postComparisonHit("Distance is: " + distance, score, currentHash, sampling, configStr,
+                Collections.singletonList(hitKey), file, true);
     }
 
     /**
-     * Process the current file and it's hash against the hash set groups that were configured by the user before
-     * running the ingest module.
-     * 
-     * @param file The Autopsy file so that results can be posted to the blackboard.
-     * @param genHash The file's TLSH hash object.
-     * @return IngestModule.ProcessResult.OK
+     * Post the hits of a file in the hash list or in one hash set as a single comparison hit, with the best distance,
+     * the number of hits and the closest reference hashes.
+     *
+     * @param summary The hits of the file in the category.
+     * @param currentHash The hash of the current file.
+     * @param sampling Description of the sampling policy if the hash was sampled, otherwise null.
+     * @param file The Autopsy file used to tag all the information to.
      */
-    private IngestModule.ProcessResult processWithHashSets(AbstractFile file, Tlsh genHash) {
-        // Compare with all the known hash set groups that were created
-        for (Map.Entry<String, ArrayList<ParseTlshObj>> entry : hashSetMap.entrySet()) {
-            for (ParseTlshObj hashObj : entry.getValue()) {
-                Tlsh tlshObj;
-                try {
-                    tlshObj = Tlsh.fromTlshStr(hashObj.hashStr);
-                } catch (IllegalArgumentException ex) {
-                    logger.log(Level.INFO, "Invalid inputed hash " + hashObj.hashStr + "from digest - "
-                            + entry.getKey() + ": ", ex);
-                    continue;
-                }
+    private void postHitSummaryToBlackboard(TlshHitSummary summary, String currentHash, String sampling,
+            AbstractFile file) {
+        String configStr;
+        if (summary.fromHashSet) {
+            configStr = "For hashset " + summary.hashSetName + ", closest of " + summary.count + ": "
+                    + summary.describeClosest();
+        } else {
+            configStr = "Closest of " + summary.count + ": " + summary.describeClosest();
+        }
 
-                int distance = tlshObj.totalDiff(genHash, this.compareLength);
+        // The summary is recorded with one key for all of its hits, and skipped if the same hits were recorded
+        List<String> hitKeys = new ArrayList<>(summary.hits.size());
+        for (TlshComparisonHit hit : summary.hits) {
+            hitKeys.add(this.hitKeyOf(hit));
+        }
+        String summaryKey = TlshHitStore.summaryKeyOf(hitKeys, summary.fromHashSet ? summary.hashSetName : "");
+        if (this.skipRecordedHits && !this.hitStore.addIfAbsent(file.getId(), summaryKey)) {
+            return;
+        }
 
-                if (distance <= this.thresholdDistance) {
-                    postHashSetComparisonToBlackboard(distance, genHash.getEncoded(), hashObj, file);
-                }
+        // The summary is as notable as its most notable hit, which is not always the closest one
+        Score score = Score.SCORE_LIKELY_NOTABLE;
+        for (TlshComparisonHit hit : summary.hits) {
+            if (this.scoreOf(hit) == Score.SCORE_NOTABLE) {
+                score = Score.SCORE_NOTABLE;
+                break;
             }
         }
 
-        return IngestModule.ProcessResult.OK;
+        // A summary is only posted in the set of this ingest, so it is a single artifact
+        postComparisonHit("Best distance is: " + summary.bestDistance + ", " + summary.count + " matches",
+                score, currentHash, sampling, configStr, Collections.singletonList(summaryKey), file, false);
     }
 
     /**
-     * Post the hash comparison to the blackboard for the user to view. This also tags the hash set that the match
-     * was discovered in.
-     * 
-     * @param distance TLSH hash distance calculated by the TLSH algorithm.
+     * Post a comparison hit in the set of this ingest, and in the set of every ingest if requested.
+     *
+     * @param conclusion The distance of the hit.
+     * @param score Score of the hit, from its tier.
      * @param currentHash The hash of the current file.
-     * @param compObj Reference to the class containing all the compared to TLSH object information.
+     * @param sampling Description of the sampling policy if the hash was sampled, otherwise null.
+     * @param configStr Description of the reference hash that was matched.
+     * @param hitKeys The keys the artifact is recorded with.
      * @param file The Autopsy file used to tag all the information to.
+     * @param inCumulativeSet True to also post the hit in the set of every ingest.
      */
-    private void postHashSetComparisonToBlackboard(int distance, String currentHash, ParseTlshObj compObj,
-            AbstractFile file) {
+    private void postComparisonHit(String conclusion, Score score, String currentHash, String sampling,
+            String configStr, List<String> hitKeys, AbstractFile file, boolean inCumulativeSet) {
+        String configuration = configStr;
+        String justification = "TLSH comparison threshold met.";
+        if (sampling != null) {
+            configuration = configStr + " (" + sampling + ")";
+            justification = "TLSH comparison threshold met by a sampled TLSH of this file.";
+        }
 
-        BlackboardArtifact artifact = null;
-        BlackboardArtifact total_artifact = null;
+        List<String> setNames = new ArrayList<>(2);
+        setNames.add("TLSH Comparison Hits - " + this.ingestUUID);
+        if (inCumulativeSet) {
+            setNames.add("TLSH Comparison Hits");
+        }
+        for (String setName : setNames) {
+            List<BlackboardAttribute> attributes = new ArrayList<>(Arrays.asList(
+                    new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME,
+                            TlshIngestModuleFactory.getModuleName(),
+                            setName),
+                    new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_VALUE,
+                            TlshIngestModuleFactory.getModuleName(),
+                            currentHash)
+            ));
+            for (String hitKey : hitKeys) {
+                attributes.add(this.hitStore.attributeOf(hitKey));
+            }
 
-        String configStr;
-        if (compObj.comment.equals("")) {
-            configStr = "For hashset " + compObj.listName + ": " + compObj.hashStr;
-        } else {
-            configStr = "For hashset " + compObj.listName + " - " + compObj.comment + ": " + compObj.hashStr;
+            postAnalysisResult(file, BlackboardArtifact.Type.TSK_INTERESTING_FILE_HIT, score,
+                    conclusion,
+                    configuration,
+                    justification,
+                    attributes);
         }
+    }
 
-        try {
-            artifact = file.newAnalysisResult(
-                    BlackboardArtifact.Type.TSK_INTERESTING_FILE_HIT,
-                    Score.SCORE_NOTABLE,
-                    "Distance is: " + distance,
-                    configStr,
-                    "TLSH comparison threshold met.",
-                    Arrays.asList(
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    "TLSH Comparison Hits - " + this.ingestUUID),
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_VALUE,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    currentHash)
-                    ))
-                    .getAnalysisResult();
+    /**
+     * Add an analysis result to a file and post it, or queue it in the publisher when batched publishing is enabled.
+     *
+     * @return true if the result was added or queued.
+     */
+    private boolean postAnalysisResult(AbstractFile file, BlackboardArtifact.Type type, Score score,
+            String conclusion, String configuration, String justification, List<BlackboardAttribute> attributes) {
+        if (this.publisher != null) {
+            return this.publisher.submit(new TlshBlackboardPublisher.PendingResult(file, type, score, conclusion,
+                    configuration, justification, attributes));
+        }
 
-            total_artifact = file.newAnalysisResult(
-                    BlackboardArtifact.Type.TSK_INTERESTING_FILE_HIT,
-                    Score.SCORE_NOTABLE,
-                    "Distance is: " + distance,
-                    configStr,
-                    "TLSH comparison threshold met.",
-                    Arrays.asList(
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_SET_NAME,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    "TLSH Comparison Hits"),
-                            new BlackboardAttribute(ATTRIBUTE_TYPE.TSK_VALUE,
-                                    TlshIngestModuleFactory.getModuleName(),
-                                    currentHash)
-                    ))
+        BlackboardArtifact artifact;
+        try {
+            artifact = file.newAnalysisResult(type, score, conclusion, configuration, justification, attributes)
                     .getAnalysisResult();
         } catch (TskCoreException ex) {
             logger.log(Level.INFO, "Failed to add hash attribute to file: {0}", file.getName());
+            return false;
         }
 
         try {
             blackboard.postArtifact(artifact, TlshIngestModuleFactory.getModuleName());
-            blackboard.postArtifact(total_artifact, TlshIngestModuleFactory.getModuleName());
         } catch (Blackboard.BlackboardException ex) {
             logger.log(Level.SEVERE, "Unable to index blackboard artifact " + artifact.getArtifactID(), ex);
         }
-
+        return true;
     }
-
 }
@@ -0,0 +1,68 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import com.trendmicro.tlsh.Tlsh;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import org.sleuthkit.datamodel.AbstractFile;
+
+/**
+ * The work for a single file as it goes through hashing, comparing and posting. When the ingest pipeline is used the
+ * steps happen on different threads, so everything a later step needs is kept here instead of in local variables.
+ */
+public class TlshFileTask {
+
+    final TlshFileIngestModule owner;
+    final AbstractFile file;
+    final boolean sampled;
+
+    // Keys of the file in the job cache and the digest store
+    final String cacheKey;
+    final int storeVariant;
+
+    // The hash of the file, null until it has been found or calculated
+    Tlsh hash = null;
+    String hashStr = null;
+
+    // False if the hash was already posted to the blackboard by an earlier ingest
+    boolean postHash = true;
+
+    // Comparisons that met the threshold distance
+    final List<TlshComparisonHit> hits = new ArrayList<>();
+
+    // Chunks of the file passed from the read stage to the hash stage of the pipeline
+    BlockingQueue<TlshIngestPipeline.Chunk> chunks = null;
+
+    // Set by the read stage before its last chunk, true if all the data that was wanted could be read
+    boolean readComplete = false;
+
+    /**
+     * Create the task for a file.
+     *
+     * @param owner The module that processes the file and is called back by the pipeline.
+     * @param file The Autopsy file.
+     * @param sampled True to hash the blocks of the sampling policy instead of the whole file.
+     * @param cacheKey Key of the file in the job cache, or null.
+     * @param storeVariant Variant of the hash in the digest store.
+     */
+    TlshFileTask(TlshFileIngestModule owner, AbstractFile file, boolean sampled, String cacheKey, int storeVariant) {
+        this.owner = owner;
+        this.file = file;
+        this.sampled = sampled;
+        this.cacheKey = cacheKey;
+        this.storeVariant = storeVariant;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.sleuthkit.datamodel.Blackboard;
+import org.sleuthkit.datamodel.BlackboardArtifact;
+import org.sleuthkit.datamodel.BlackboardAttribute;
+import org.sleuthkit.datamodel.CaseDbAccessManager;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * The comparison hits already recorded for the files of a data source, so running the module on it again only posts
+ * the hits that are new. Every comparison hit carries a single key attribute: for the hit of one reference hash, the
+ * threshold, the reference hash and the name of its hash set, and for a summary of hits, a digest of the keys of all
+ * of its hits and the name of its hash set. The keys of the data source are loaded with a single query when the job
+ * starts, and a hit is only posted if its key was not recorded yet.
+ */
+public class TlshHitStore {
+
+    static final String HIT_KEY_ATTRIBUTE_TYPE_NAME = "MITRE_TLSH_HIT_KEY";
+
+    private final BlackboardAttribute.Type hitKeyType;
+
+    // Object id of the file followed by the key of the hit, for every hit recorded or posted in this job
+    private final Set<String> keys = new HashSet<>();
+    private boolean loaded = false;
+
+    TlshHitStore(BlackboardAttribute.Type hitKeyType) {
+        this.hitKeyType = hitKeyType;
+    }
+
+    /**
+     * Create an empty store, registering the key attribute type if the case does not have it yet.
+     *
+     * @param caseDb Database of the case.
+     * @return The store.
+     * @throws Blackboard.BlackboardException If the attribute type could not be registered.
+     */
+    static TlshHitStore getOrAdd(SleuthkitCase caseDb) throws Blackboard.BlackboardException {
+        return new TlshHitStore(caseDb.getBlackboard().getOrAddAttributeType(HIT_KEY_ATTRIBUTE_TYPE_NAME,
+                BlackboardAttribute.TSK_BLACKBOARD_ATTRIBUTE_VALUE_TYPE.STRING, "TLSH Hit (threshold, reference, set)"));
+    }
+
+    /**
+     * Get the key of a hit. TLSH hashes have no spaces, so the name of the hash set is simply the rest of the key.
+     *
+     * @param threshold Threshold the hit was found with.
+     * @param referenceHash The reference hash that was matched.
+     * @param hashSetName Name of the hash set of the reference hash, empty for the hash list.
+     */
+    static String keyOf(int threshold, String referenceHash, String hashSetName) {
+        String key = threshold + " " + referenceHash;
+        return hashSetName.isEmpty() ? key : key + " " + hashSetName;
+    }
+
+    /**
+     * Get the key of a summary of hits. The same hits give the same key in any order, and any hit that is added or
+     * removed gives another key.
+     *
+     * @param hitKeys The keys of the hits in the summary, from keyOf().
+     * @param hashSetName Name of the hash set of the summary, empty for the hash list.
+     */
+    static String summaryKeyOf(List<String> hitKeys, String hashSetName) {
+        List<String> sorted = new ArrayList<>(hitKeys);
+        Collections.sort(sorted);
+
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+        for (String hitKey : sorted) {
+            sha256.update(hitKey.getBytes(StandardCharsets.UTF_8));
+            sha256.update((byte) '\n');
+        }
+
+        StringBuilder key = new StringBuilder("summary ");
+        for (byte b : sha256.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hashSetName.isEmpty() ? key.toString() : key + " " + hashSetName;
+    }
+
+    /**
+     * Get the attribute that records a hit on its artifact.
+     *
+     * @param key The key of the hit, from keyOf().
+     */
+    BlackboardAttribute attributeOf(String key) {
+        return new BlackboardAttribute(this.hitKeyType, TlshIngestModuleFactory.getModuleName(), key);
+    }
+
+    /**
+     * Load the keys of the hits recorded for the files of a data source with a single query.
+     *
+     * @param caseDb Database of the case.
+     * @param dataSourceObjId Object id of the data source.
+     * @throws TskCoreException If the query failed.
+     */
+    void load(SleuthkitCase caseDb, long dataSourceObjId) throws TskCoreException {
+        String query = "arts.obj_id AS obj_id, attrs.value_text AS value_text"
+                + " FROM blackboard_artifacts AS arts"
+                + " JOIN blackboard_attributes AS attrs ON arts.artifact_id = attrs.artifact_id"
+                + " WHERE arts.artifact_type_id = "
+                + BlackboardArtifact.ARTIFACT_TYPE.TSK_INTERESTING_FILE_HIT.getTypeID()
+                + " AND arts.data_source_obj_id = " + dataSourceObjId
+                + " AND attrs.attribute_type_id = " + this.hitKeyType.getTypeID();
+
+        final SQLException[] failure = {null};
+        caseDb.getCaseDbAccessManager().select(query, new CaseDbAccessManager.CaseDbAccessQueryCallback() {
+            @Override
+            public void process(ResultSet resultSet) {
+                try {
+                    synchronized (TlshHitStore.this) {
+                        while (resultSet.next()) {
+                            keys.add(resultSet.getLong("obj_id") + " " + resultSet.getString("value_text"));
+                        }
+                    }
+                } catch (SQLException ex) {
+                    failure[0] = ex;
+                }
+            }
+        });
+        if (failure[0] != null) {
+            throw new TskCoreException("Failed to read the recorded TLSH hits", failure[0]);
+        }
+        synchronized (this) {
+            this.loaded = true;
+        }
+    }
+
+    /**
+     * Check if the recorded hits were loaded, so the hits that are not new can be skipped.
+     */
+    synchronized boolean isLoaded() {
+        return this.loaded;
+    }
+
+    /**
+     * Record a hit of a file, unless it was already recorded.
+     *
+     * @param fileId Object id of the file.
+     * @param key The key of the hit, from keyOf().
+     * @return true if the hit is new and has to be posted.
+     */
+    synchronized boolean addIfAbsent(long fileId, String key) {
+        return this.keys.add(fileId + " " + key);
+    }
+
+    synchronized int size() {
+        return this.keys.size();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The hits of a file in one category, the hash list or one hash set, summarized so they can be posted as a single
+ * artifact: the best distance, the number of hits and the closest reference hashes. Posting a summary instead of every
+ * hit keeps the number of artifacts proportional to the number of files, however many references a file matches.
+ */
+public class TlshHitSummary {
+
+    // Orders the hits by distance; the sort is stable, so hits at the same distance keep the order they were found in
+    private static final Comparator<TlshComparisonHit> BY_DISTANCE = new Comparator<TlshComparisonHit>() {
+        @Override
+        public int compare(TlshComparisonHit a, TlshComparisonHit b) {
+            return Integer.compare(a.distance, b.distance);
+        }
+    };
+
+    // True for the hits of a hash set, which is then named by hashSetName, false for the hits of the hash list
+    final boolean fromHashSet;
+    final String hashSetName;
+
+    int bestDistance = Integer.MAX_VALUE;
+    int count = 0;
+
+    // Every hit in the order they were found, and the closest hits, closest first
+    final List<TlshComparisonHit> hits = new ArrayList<>();
+    final List<TlshComparisonHit> closest = new ArrayList<>();
+
+    private TlshHitSummary(boolean fromHashSet, String hashSetName) {
+        this.fromHashSet = fromHashSet;
+        this.hashSetName = hashSetName;
+    }
+
+    /**
+     * Summarize the hits of a file, with one summary for the hash list and one for every hash set that has hits, in the
+     * order their first hit was found.
+     *
+     * @param hits The hits of the file.
+     * @param maxClosest Number of closest hits kept in every summary.
+     * @return The summaries.
+     */
+    static List<TlshHitSummary> summarize(List<TlshComparisonHit> hits, int maxClosest) {
+        Map<String, TlshHitSummary> summaries = new LinkedHashMap<>();
+        for (TlshComparisonHit hit : hits) {
+            // The hash list has no name, so it is kept under the null key
+            String key = hit.fromHashSet ? hit.compObj.listName : null;
+            TlshHitSummary summary = summaries.get(key);
+            if (summary == null) {
+                summary = new TlshHitSummary(hit.fromHashSet, key);
+                summaries.put(key, summary);
+            }
+            summary.count++;
+            summary.bestDistance = Math.min(summary.bestDistance, hit.distance);
+            summary.hits.add(hit);
+        }
+
+        for (TlshHitSummary summary : summaries.values()) {
+            summary.closest.addAll(summary.hits);
+            Collections.sort(summary.closest, BY_DISTANCE);
+            if (summary.closest.size() > maxClosest) {
+                summary.closest.subList(maxClosest, summary.closest.size()).clear();
+            }
+        }
+        return new ArrayList<>(summaries.values());
+    }
+
+    /**
+     * Describe the closest hits, closest first, with their comments and distances.
+     */
+    String describeClosest() {
+        StringBuilder description = new StringBuilder();
+        for (TlshComparisonHit hit : this.closest) {
+            if (description.length() > 0) {
+                description.append("; ");
+            }
+            if (!hit.compObj.comment.equals("")) {
+                description.append(hit.compObj.comment).append(": ");
+            }
+            description.append(hit.compObj.hashStr).append(" (distance ").append(hit.distance).append(')');
+        }
+        return description.toString();
+    }
+}
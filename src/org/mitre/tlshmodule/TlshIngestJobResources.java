@@ -0,0 +1,522 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.autopsy.coreutils.ModuleSettings;
+import org.sleuthkit.autopsy.coreutils.PlatformUtil;
+import org.sleuthkit.datamodel.Blackboard;
+import org.sleuthkit.datamodel.SleuthkitCase;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Holds the objects that are shared by every TlshFileIngestModule in the same ingest job. Autopsy creates one module
+ * per ingest thread, so anything that should only exist once per job is created by the first module that starts up and
+ * cleaned up by the last module that shuts down. That includes the reference index, so the hash sets are only parsed
+ * and held in memory once no matter how many ingest threads there are. The resources are built outside the lock of
+ * the running jobs, so building a large index only makes the modules of its own job wait.
+ */
+public class TlshIngestJobResources {
+
+    private static final Logger logger = Logger.getLogger(TlshIngestJobResources.class.getName());
+
+    // Resources of all the currently running jobs, keyed by the ingest job id
+    private static final Map<Long, TlshIngestJobResources> runningJobs = new HashMap<>();
+
+    // File name of the digest store in the Autopsy user config directory
+    private static final String DIGEST_STORE_FILE_NAME = "tlsh_digest_store.bin";
+
+    private final long jobId;
+    private int references = 0;
+
+    // Set by the first module of the job that calls initialize(), the other modules wait for it
+    private boolean initialized = false;
+
+    private ReadBufferPool bufferPool;
+
+    // The hash list and the enabled hash sets, decoded once and only read by the modules
+    private TlshReferenceIndex referenceIndex;
+
+    // Thresholds of the reference hashes and scores of the hits
+    private TlshMatchPolicy matchPolicy;
+
+    // Hashes of the files already hashed in this job, null if the cache is disabled
+    private TlshDigestCache digestCache;
+
+    // Hashes kept on disk between cases, null if the store is disabled or could not be opened
+    private TlshDigestStore digestStore;
+
+    // Which blocks of very large files are hashed, null if sampling is disabled
+    private TlshSamplingPolicy samplingPolicy;
+
+    // Threads that process the files of the job, null if the files are processed on the ingest threads
+    private TlshIngestPipeline pipeline;
+
+    // Writes the results of the job to the blackboard in batches, created by the first module that asks for it, null
+    // if the results are posted by the modules
+    private TlshBlackboardPublisher publisher = null;
+
+    // Hits recorded for the files of the job, created by the first module that asks for them
+    private TlshHitStore hitStore = null;
+
+    // Types the hashes of the files are posted with, registered by the first module that asks for them
+    private TlshDigestArtifacts digestArtifacts = null;
+
+    // Hashes already posted for the files of the job, loaded by the first module that asks for them, null if the
+    // loading failed
+    private TlshKnownHashMap knownHashes = null;
+    private boolean knownHashesLoaded = false;
+
+    // Number of files rejected by each TlshFileFilter stage
+    private final AtomicLongArray filterRejections = new AtomicLongArray(TlshFileFilter.Stage.values().length);
+
+    /**
+     * Create the empty resources for a job. This should only be called by acquire().
+     *
+     * @param jobId Autopsy ingest job id.
+     */
+    private TlshIngestJobResources(long jobId) {
+        this.jobId = jobId;
+    }
+
+    /**
+     * Build the resources if no other module of the job has built them yet. The modules of the job that call this
+     * while the first one is building them wait until it is done.
+     *
+     * @param settings Settings of the ingest job.
+     */
+    private synchronized void initialize(TlshModuleIngestJobSettings settings) {
+        if (this.initialized) {
+            return;
+        }
+
+        this.bufferPool = new ReadBufferPool(settings.getBufferPoolSize(), settings.getReadChunkSize());
+        this.matchPolicy = new TlshMatchPolicy(settings);
+        this.referenceIndex = buildReferenceIndex(jobId, settings, this.matchPolicy);
+        this.digestCache = settings.getUseDigestCache()
+                ? new TlshDigestCache(settings.getDigestCacheMaxEntries()) : null;
+        this.digestStore = settings.getUseDigestStore() ? openDigestStore(settings.getDigestStoreMaxEntries()) : null;
+
+        if (settings.getSampleLargeFiles()) {
+            this.samplingPolicy = new TlshSamplingPolicy(settings.getSampleSizeThreshold(),
+                    settings.getSampleByteBudget(), settings.getSampleBlockSize());
+        } else {
+            this.samplingPolicy = null;
+        }
+
+        this.pipeline = settings.getUseIngestPipeline()
+                ? new TlshIngestPipeline(settings, this.bufferPool, this.samplingPolicy) : null;
+        this.initialized = true;
+    }
+
+    /**
+     * Get the resources for the job, creating them if this is the first module of the job to start up. Every call
+     * must be matched with a call to release().
+     *
+     * @param jobId Autopsy ingest job id.
+     * @param settings Settings of the ingest job, only used when the resources are created.
+     * @return The shared resources for the job.
+     */
+    static TlshIngestJobResources acquire(long jobId, TlshModuleIngestJobSettings settings) {
+        TlshIngestJobResources resources;
+        synchronized (TlshIngestJobResources.class) {
+            resources = runningJobs.get(jobId);
+            if (resources == null) {
+                resources = new TlshIngestJobResources(jobId);
+                runningJobs.put(jobId, resources);
+            }
+            resources.references++;
+        }
+
+        try {
+            resources.initialize(settings);
+        } catch (RuntimeException ex) {
+            release(resources);
+            throw ex;
+        }
+        return resources;
+    }
+
+    /**
+     * Release the resources of a module. Once the last module of the job releases them the job statistics are logged
+     * and the resources are dropped.
+     *
+     * @param resources The resources that were returned by acquire().
+     * @return true if this was the last module of the job.
+     */
+    static boolean release(TlshIngestJobResources resources) {
+        synchronized (TlshIngestJobResources.class) {
+            resources.references--;
+            if (resources.references > 0) {
+                return false;
+            }
+            runningJobs.remove(resources.jobId);
+        }
+
+        // The last module of the job waits for the pipeline and the publisher without holding the lock
+        if (resources.isInitialized()) {
+            resources.close();
+        }
+        return true;
+    }
+
+    private synchronized boolean isInitialized() {
+        return this.initialized;
+    }
+
+    /**
+     * Stop the threads of the job, log its statistics and release the digest store.
+     */
+    private void close() {
+        if (this.pipeline != null) {
+            this.pipeline.shutDown();
+        }
+        // Every module flushed it as it shut down, so this only stops the writer thread
+        if (this.publisher != null) {
+            this.publisher.close();
+        }
+        this.logStatistics();
+        if (this.digestStore != null) {
+            TlshDigestStore.release(this.digestStore);
+        }
+    }
+
+    /**
+     * Parse the hash list, if a comparison is run, and all the enabled hash sets and decode them into the reference
+     * index. Hashes that are not valid are logged here once for the whole job.
+     *
+     * @param jobId Autopsy ingest job id, for the log.
+     * @param settings Settings of the ingest job.
+     * @param matchPolicy Gives the threshold of every hash.
+     * @return The reference index, with the hash list first and then the hash sets.
+     */
+    private static TlshReferenceIndex buildReferenceIndex(long jobId, TlshModuleIngestJobSettings settings,
+            TlshMatchPolicy matchPolicy) {
+        long startTime = System.nanoTime();
+
+        // Convert the hash list to ParseTlshObj class objects
+        List<ParseTlshObj> tlshHashes = new ArrayList<>();
+        if (settings.getRunTlshComparison()) {
+            for (String hashStr : settings.getTlshHashes()) {
+                ParseTlshObj hashObj = new ParseTlshObj();
+                hashObj.ParseObjFromStr(hashStr);
+                tlshHashes.add(hashObj);
+            }
+        }
+
+        // Convert all the of the module settings that are enabled hash sets
+        List<String> enabledHashSets = Arrays.asList(settings.getEnabledHashSets());
+        List<ParseTlshObj> hashSetHashes = new ArrayList<>();
+        Map<String, String> moduleSettings = ModuleSettings.getConfigSettings(TlshIngestModuleFactory.getModuleName());
+        for (Map.Entry<String, String> entry : moduleSettings.entrySet()) {
+            if (enabledHashSets.contains(entry.getKey())) {
+                for (String hashStr : ParseTlshObj.ParseHashLinesWithComments(entry.getValue())) {
+                    ParseTlshObj hashObj = new ParseTlshObj();
+                    hashObj.ParseObjFromStr(entry.getKey(), hashStr);
+                    hashSetHashes.add(hashObj);
+                }
+            }
+        }
+
+        TlshReferenceIndex index = new TlshReferenceIndex(tlshHashes.size() + hashSetHashes.size());
+        int[] thresholds = new int[tlshHashes.size() + hashSetHashes.size()];
+        int invalid = 0;
+        for (ParseTlshObj compHash : tlshHashes) {
+            if (index.add(compHash, false)) {
+                thresholds[index.size() - 1] = matchPolicy.thresholdOf(compHash, false);
+            } else {
+                logger.log(Level.INFO, "Invalid inputted hash {0}", compHash.hashStr);
+                invalid++;
+            }
+        }
+        for (ParseTlshObj hashObj : hashSetHashes) {
+            if (index.add(hashObj, true)) {
+                thresholds[index.size() - 1] = matchPolicy.thresholdOf(hashObj, true);
+            } else {
+                logger.log(Level.INFO, "Invalid inputed hash " + hashObj.hashStr + " from digest - "
+                        + hashObj.listName);
+                invalid++;
+            }
+        }
+
+        // Hash sets and hashes with their own threshold are searched with it in the same pass as the others
+        if (matchPolicy.hasCustomThresholds()) {
+            index.setEntryThresholds(thresholds);
+        }
+
+        if (settings.getUseParallelScan()) {
+            index.setParallelScanMinEntries(settings.getParallelScanMinEntries());
+        }
+        if (settings.getUseExactMatchFastPath()) {
+            index.buildExactIndex(settings.getCompareLength());
+        }
+        if (settings.getUseBandIndex()) {
+            index.buildBands(settings.getBandCount());
+        } else if (settings.getUseMetricTreeIndex()) {
+            index.buildTree();
+        } else if (settings.getUsePackedBodyKernel()) {
+            index.buildPackedBodies();
+        }
+
+        long elapsedMillis = (System.nanoTime() - startTime) / 1000000;
+        logger.log(Level.INFO, "TLSH reference index for job {0}: {1} hashes ({2} invalid) built in {3} ms, "
+                + "about {4} KB, vantage point tree: {5}, band index: {6}, packed bodies: {7}",
+                new Object[]{jobId, index.size(), invalid, elapsedMillis, index.getEstimatedSize() / 1024,
+                    index.hasTree(), index.hasBands(), index.hasPackedBodies()});
+        return index;
+    }
+
+    /**
+     * Create the engine that calculates the hashes, either the TLSH library or the module's own TlshDigestCreator.
+     *
+     * @param settings Settings of the ingest job.
+     * @return A new digest engine.
+     */
+    static TlshDigestEngine newDigestEngine(TlshModuleIngestJobSettings settings) {
+        if (settings.getUseInternalTlshCreator()) {
+            return new TlshDigestCreator();
+        }
+        return new LibraryTlshDigestEngine();
+    }
+
+    /**
+     * Open the digest store in the user config directory. The ingest still runs without it if it can not be opened.
+     *
+     * @param maxEntries Maximum number of hashes kept in the store.
+     * @return The store or null if it could not be opened.
+     */
+    private static TlshDigestStore openDigestStore(int maxEntries) {
+        Path path = Paths.get(PlatformUtil.getUserConfigDirectory(), TlshIngestModuleFactory.getModuleName(),
+                DIGEST_STORE_FILE_NAME);
+        try {
+            return TlshDigestStore.acquire(path, maxEntries);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Unable to open the TLSH digest store, hashes will not be kept between cases.", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Log the statistics of the job so the effect of the tuning settings can be checked.
+     */
+    private void logStatistics() {
+        logger.log(Level.INFO, "TLSH read buffer pool for job {0}: {1} hits, {2} misses, {3} byte buffers",
+                new Object[]{this.jobId, this.bufferPool.getHitCount(), this.bufferPool.getMissCount(),
+                    this.bufferPool.getBufferSize()});
+
+        if (this.pipeline != null) {
+            logger.log(Level.INFO, "TLSH ingest pipeline for job {0}: {1}",
+                    new Object[]{this.jobId, this.pipeline.getStatistics()});
+        }
+
+        if (this.publisher != null) {
+            logger.log(Level.INFO, "TLSH blackboard publisher for job {0}: {1}",
+                    new Object[]{this.jobId, this.publisher.getStatistics()});
+        }
+
+        if (this.digestCache != null) {
+            long lookups = this.digestCache.getHitCount() + this.digestCache.getMissCount();
+            long hitPercent = lookups == 0 ? 0 : this.digestCache.getHitCount() * 100 / lookups;
+            logger.log(Level.INFO, "TLSH digest cache for job {0}: {1} hits, {2} misses ({3}% hit rate), "
+                    + "{4} files without a key, {5} hashes cached",
+                    new Object[]{this.jobId, this.digestCache.getHitCount(), this.digestCache.getMissCount(),
+                        hitPercent, this.digestCache.getUnkeyedCount(), this.digestCache.size()});
+        }
+
+        TlshExactIndex exactIndex = this.referenceIndex.getExactIndex();
+        if (exactIndex != null) {
+            logger.log(Level.INFO, "TLSH exact match fast path for job {0}: {1} of {2} files had an exact match",
+                    new Object[]{this.jobId, exactIndex.getMatchedCount(), exactIndex.getLookupCount()});
+        }
+
+        for (TlshFileFilter.Stage stage : TlshFileFilter.Stage.values()) {
+            logger.log(Level.INFO, "TLSH filter for job {0}: {1} files rejected by {2}",
+                    new Object[]{this.jobId, this.filterRejections.get(stage.ordinal()), stage.getDisplayName()});
+        }
+    }
+
+    ReadBufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    /**
+     * Get the cache of hashes shared by the job.
+     *
+     * @return The cache or null if it is disabled.
+     */
+    TlshDigestCache getDigestCache() {
+        return this.digestCache;
+    }
+
+    /**
+     * Get the digest store shared by every job.
+     *
+     * @return The store or null if it is disabled or could not be opened.
+     */
+    TlshDigestStore getDigestStore() {
+        return this.digestStore;
+    }
+
+    /**
+     * Get the reference index of the job. It is shared by all the modules of the job and must not be changed.
+     */
+    TlshReferenceIndex getReferenceIndex() {
+        return this.referenceIndex;
+    }
+
+    /**
+     * Get the publisher that writes the results of the job to the blackboard in batches, starting it the first time.
+     *
+     * @param caseDb Database of the case.
+     * @param settings Settings of the ingest job, only used when the publisher is created.
+     * @return The publisher, or null if batched publishing is disabled.
+     */
+    synchronized TlshBlackboardPublisher getPublisher(SleuthkitCase caseDb, TlshModuleIngestJobSettings settings) {
+        if (this.publisher == null && settings.getUseBatchedPublisher()) {
+            this.publisher = new TlshBlackboardPublisher(caseDb, settings.getPublishQueueSize(),
+                    settings.getPublishBatchSize(), settings.getPublishFlushIntervalMillis());
+        }
+        return this.publisher;
+    }
+
+    /**
+     * Get the hits recorded for the files of the data source, registering the attribute type the hits are recorded
+     * with and loading the recorded hits the first time.
+     *
+     * @param caseDb Database of the case.
+     * @param dataSourceObjId Object id of the data source of the job.
+     * @param loadRecordedHits True to load the hits recorded by earlier ingests so they can be skipped.
+     * @return The store. It is not loaded if loading was disabled or failed.
+     * @throws Blackboard.BlackboardException If the attribute type could not be registered.
+     */
+    synchronized TlshHitStore getHitStore(SleuthkitCase caseDb, long dataSourceObjId, boolean loadRecordedHits)
+            throws Blackboard.BlackboardException {
+        if (this.hitStore != null) {
+            return this.hitStore;
+        }
+        this.hitStore = TlshHitStore.getOrAdd(caseDb);
+
+        if (loadRecordedHits) {
+            long startTime = System.nanoTime();
+            try {
+                this.hitStore.load(caseDb, dataSourceObjId);
+                logger.log(Level.INFO, "TLSH recorded hits for job {0}: {1} hits loaded in {2} ms",
+                        new Object[]{this.jobId, this.hitStore.size(), (System.nanoTime() - startTime) / 1000000});
+            } catch (TskCoreException ex) {
+                logger.log(Level.WARNING, "Failed to load the recorded TLSH hits, every hit will be posted", ex);
+            }
+        }
+        return this.hitStore;
+    }
+
+    /**
+     * Get the types the hashes of the files are posted with, registering them in the case and copying the hashes that
+     * earlier versions of the module posted for the data source the first time.
+     *
+     * @param caseDb Database of the case.
+     * @param dataSourceObjId Object id of the data source of the job.
+     * @return The types.
+     * @throws Blackboard.BlackboardException If the types could not be registered.
+     */
+    synchronized TlshDigestArtifacts getDigestArtifacts(SleuthkitCase caseDb, long dataSourceObjId)
+            throws Blackboard.BlackboardException {
+        if (this.digestArtifacts != null) {
+            return this.digestArtifacts;
+        }
+        this.digestArtifacts = TlshDigestArtifacts.getOrAdd(caseDb);
+
+        long startTime = System.nanoTime();
+        try {
+            int migrated = this.digestArtifacts.migrateLegacyDigests(caseDb, dataSourceObjId);
+            if (migrated > 0) {
+                logger.log(Level.INFO, "TLSH digests for job {0}: {1} old hashes copied in {2} ms",
+                        new Object[]{this.jobId, migrated, (System.nanoTime() - startTime) / 1000000});
+            }
+        } catch (TskCoreException ex) {
+            // The files whose hashes were not copied are simply hashed again
+            logger.log(Level.WARNING, "Failed to copy the TLSH hashes posted as interesting file hits", ex);
+        }
+        return this.digestArtifacts;
+    }
+
+    /**
+     * Get the hashes that were already posted for the files of the data source, loading them with a single query the
+     * first time. The map is shared by the modules of the job.
+     *
+     * @param digestArtifacts Types the hashes are posted with.
+     * @param caseDb Database of the case.
+     * @param dataSourceObjId Object id of the data source of the job.
+     * @return The map, or null if the hashes could not be loaded and have to be looked up for every file.
+     */
+    synchronized TlshKnownHashMap getKnownHashes(TlshDigestArtifacts digestArtifacts, SleuthkitCase caseDb,
+            long dataSourceObjId) {
+        if (this.knownHashesLoaded) {
+            return this.knownHashes;
+        }
+        this.knownHashesLoaded = true;
+
+        long startTime = System.nanoTime();
+        TlshKnownHashMap map = new TlshKnownHashMap(1024);
+        try {
+            digestArtifacts.loadDigests(caseDb, dataSourceObjId, map);
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, "Failed to load the known TLSH hashes, looking them up for every file", ex);
+            return null;
+        }
+
+        logger.log(Level.INFO, "TLSH known hashes for job {0}: {1} files loaded in {2} ms",
+                new Object[]{this.jobId, map.size(), (System.nanoTime() - startTime) / 1000000});
+        this.knownHashes = map;
+        return map;
+    }
+
+    /**
+     * Get the policy that decides the thresholds and scores of the hits of the job.
+     */
+    TlshMatchPolicy getMatchPolicy() {
+        return this.matchPolicy;
+    }
+
+    /**
+     * Get the sampling policy of the job.
+     *
+     * @return The policy or null if sampling is disabled.
+     */
+    TlshSamplingPolicy getSamplingPolicy() {
+        return this.samplingPolicy;
+    }
+
+    /**
+     * Get the pipeline that processes the files of the job.
+     *
+     * @return The pipeline or null if the files are processed on the ingest threads.
+     */
+    TlshIngestPipeline getPipeline() {
+        return this.pipeline;
+    }
+
+    AtomicLongArray getFilterRejections() {
+        return this.filterRejections;
+    }
+}
@@ -57,7 +57,9 @@ public class TlshIngestModuleFactory implements IngestModuleFactory {
 
     @Override
     public IngestModuleIngestJobSettings getDefaultIngestJobSettings() {
-        return new TlshModuleIngestJobSettings();
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        TlshAdvancedSettings.load(settings);
+        return settings;
     }
 
     // Global Ingest settings panel
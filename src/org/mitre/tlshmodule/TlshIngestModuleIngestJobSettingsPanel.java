@@ -60,6 +60,9 @@ public class TlshIngestModuleIngestJobSettingsPanel extends IngestModuleIngestJo
     };
     private String savedMimeSelected = "*/*";
 
+    // Settings the panel was opened with, used to carry over the options that are not shown on the panel
+    private final TlshModuleIngestJobSettings openedSettings;
+
     // Set up the timer variables
     private int timerDelay = 1000; // milliseconds
     Timer timer = new Timer(timerDelay, this);
@@ -68,6 +71,7 @@ public class TlshIngestModuleIngestJobSettingsPanel extends IngestModuleIngestJo
      * Creates the TlshIngestModuleIngestJobSettingsPanel form instance
      */
     public TlshIngestModuleIngestJobSettingsPanel(TlshModuleIngestJobSettings settings) {
+        this.openedSettings = settings;
         initComponents();
         customizeComponents(settings);
 
@@ -106,9 +110,16 @@ public class TlshIngestModuleIngestJobSettingsPanel extends IngestModuleIngestJo
         // https://stackoverflow.com/questions/4042434/converting-arrayliststring-to-string-in-java
         String[] convertedArray = enabledHashSets.toArray(new String[0]);
         
-        return new TlshModuleIngestJobSettings(inputedHashes.length != 0, inputedHashes,
-                (Integer) this.thresholdDistanceSpinner.getValue(), this.compareLengthCheckbox.isSelected(),
-                convertedArray, this.mimeFileTypeComboBox.getSelectedItem().toString(), UUID.randomUUID().toString());
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings(inputedHashes.length != 0,
+                inputedHashes, (Integer) this.thresholdDistanceSpinner.getValue(),
+                this.compareLengthCheckbox.isSelected(), convertedArray,
+                this.mimeFileTypeComboBox.getSelectedItem().toString(), UUID.randomUUID().toString());
+        settings.copyAdvancedSettings(this.openedSettings);
+
+        // The options that are not on the panel are set in the advanced settings file
+        TlshAdvancedSettings.load(settings);
+
+        return settings;
     }
 
     /**
@@ -0,0 +1,409 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import com.trendmicro.tlsh.Tlsh;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.TskCoreException;
+
+/**
+ * Runs the work for the files of an ingest job in four stages, each with its own threads: reading the file, hashing
+ * it, comparing the hash and posting the results to the blackboard. The stages are connected by bounded queues, so a
+ * slow stage holds back the stages before it instead of letting work pile up in memory, and the Autopsy ingest threads
+ * only have to hand the files over. The number of threads of every stage is set separately so the slowest stage can be
+ * given more of them.
+ *
+ * The read stage streams the chunks of a file to the hash stage through a small queue per file, so a file is never
+ * held in memory all at once. A file is handed to the hash stage before its first chunk is read, which guarantees that
+ * every file being hashed has a reader feeding it.
+ *
+ * The pipeline calls back into the module that submitted the file to compare and post it, and calls
+ * TlshFileIngestModule.taskFinished() once it is done with the file, whether it succeeded or not.
+ */
+public class TlshIngestPipeline {
+
+    private static final Logger logger = Logger.getLogger(TlshIngestPipeline.class.getName());
+
+    /**
+     * A part of a file that was read into a buffer borrowed from the buffer pool.
+     */
+    static class Chunk {
+
+        final byte[] buf;
+        final int length;
+
+        Chunk(byte[] buf, int length) {
+            this.buf = buf;
+            this.length = length;
+        }
+    }
+
+    // Sent after the last chunk of a file
+    private static final Chunk END_OF_FILE = new Chunk(null, 0);
+    private static final Chunk READ_FAILED = new Chunk(null, -1);
+
+    private final ReadBufferPool bufferPool;
+    private final TlshSamplingPolicy samplingPolicy;
+    private final int chunkQueueSize;
+
+    private final ThreadPoolExecutor readStage;
+    private final ThreadPoolExecutor hashStage;
+    private final ThreadPoolExecutor compareStage;
+    private final ThreadPoolExecutor publishStage;
+
+    // Every hash thread reuses its own digest engine and cryptographic digests
+    private final ThreadLocal<TlshDigestEngine> digestEngines;
+    private final ThreadLocal<CryptographicDigests> cryptographicDigests;
+
+    /**
+     * Create the pipeline and start its threads.
+     *
+     * @param settings Settings of the ingest job.
+     * @param bufferPool Pool the read buffers are borrowed from.
+     * @param samplingPolicy Sampling policy of the job, or null if sampling is disabled.
+     */
+    TlshIngestPipeline(final TlshModuleIngestJobSettings settings, ReadBufferPool bufferPool,
+            TlshSamplingPolicy samplingPolicy) {
+        this.bufferPool = bufferPool;
+        this.samplingPolicy = samplingPolicy;
+        this.chunkQueueSize = settings.getPipelineChunkQueueSize();
+
+        int queueSize = settings.getPipelineQueueSize();
+        this.readStage = newStage("read", settings.getPipelineReadThreads(), queueSize);
+        this.hashStage = newStage("hash", settings.getPipelineHashThreads(), queueSize);
+        this.compareStage = newStage("compare", settings.getPipelineCompareThreads(), queueSize);
+        this.publishStage = newStage("publish", settings.getPipelinePublishThreads(), queueSize);
+
+        this.digestEngines = new ThreadLocal<TlshDigestEngine>() {
+            @Override
+            protected TlshDigestEngine initialValue() {
+                return TlshIngestJobResources.newDigestEngine(settings);
+            }
+        };
+
+        if (settings.getComputeCryptographicHashes()) {
+            this.cryptographicDigests = new ThreadLocal<CryptographicDigests>() {
+                @Override
+                protected CryptographicDigests initialValue() {
+                    return new CryptographicDigests();
+                }
+            };
+        } else {
+            this.cryptographicDigests = null;
+        }
+    }
+
+    /**
+     * Create the threads of a stage. Submitting work to a stage whose queue is full waits until there is room.
+     *
+     * @param name Name of the stage, used for the thread names.
+     * @param threads Number of threads of the stage.
+     * @param queueSize Number of files that can wait for the stage.
+     * @return The executor of the stage.
+     */
+    private static ThreadPoolExecutor newStage(final String name, int threads, int queueSize) {
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TLSH " + name + " " + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+
+        RejectedExecutionHandler waitForRoom = new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("The TLSH " + name + " stage has been shut down");
+                }
+                try {
+                    executor.getQueue().put(r);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException("Interrupted while waiting for the TLSH " + name + " stage",
+                            ex);
+                }
+            }
+        };
+
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize), threadFactory, waitForRoom);
+    }
+
+    /**
+     * Submit a file that still needs to be read and hashed. Waits while the read stage is full.
+     *
+     * @param task The file.
+     * @return false if the pipeline did not take the file, it is then already finished.
+     */
+    boolean submitRead(final TlshFileTask task) {
+        return submit(this.readStage, task, new Runnable() {
+            @Override
+            public void run() {
+                read(task);
+            }
+        });
+    }
+
+    /**
+     * Submit a file whose hash is already known, so it only needs to be compared and posted. Waits while the compare
+     * stage is full.
+     *
+     * @param task The file with its hash set.
+     * @return false if the pipeline did not take the file, it is then already finished.
+     */
+    boolean submitCompare(final TlshFileTask task) {
+        return submit(this.compareStage, task, new Runnable() {
+            @Override
+            public void run() {
+                compare(task);
+            }
+        });
+    }
+
+    private boolean submitHash(final TlshFileTask task) {
+        return submit(this.hashStage, task, new Runnable() {
+            @Override
+            public void run() {
+                hash(task);
+            }
+        });
+    }
+
+    private boolean submitPublish(final TlshFileTask task) {
+        return submit(this.publishStage, task, new Runnable() {
+            @Override
+            public void run() {
+                publish(task);
+            }
+        });
+    }
+
+    /**
+     * Submit the work for a file to a stage. If the stage does not take it, the file is finished so the module does
+     * not wait for it forever.
+     *
+     * @return true if the stage took the file.
+     */
+    private static boolean submit(ThreadPoolExecutor stage, TlshFileTask task, Runnable work) {
+        try {
+            stage.execute(work);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            logger.log(Level.WARNING, "Unable to queue file for TLSH processing: " + task.file.getName(), ex);
+            task.owner.taskFinished(task);
+            return false;
+        }
+    }
+
+    /**
+     * Read stage: hand the file to the hash stage, then read it one chunk at a time into the queue of the file.
+     */
+    private void read(TlshFileTask task) {
+        task.chunks = new ArrayBlockingQueue<>(this.chunkQueueSize);
+        if (!submitHash(task)) {
+            return;
+        }
+
+        long fileSize = task.file.getSize();
+        long expected = 0;
+        long bytesRead = 0;
+        Chunk last = END_OF_FILE;
+        try {
+            if (task.sampled) {
+                int blockSize = this.samplingPolicy.getBlockSize();
+                for (int block = 0; block < this.samplingPolicy.getBlockCount(); block++) {
+                    expected += blockSize;
+                    bytesRead += readRegion(task, this.samplingPolicy.getBlockOffset(fileSize, block), blockSize);
+                }
+            } else {
+                expected = fileSize;
+                bytesRead = readRegion(task, 0, fileSize);
+            }
+
+            task.readComplete = bytesRead == expected;
+            if (!task.readComplete) {
+                logger.log(Level.WARNING, "Could not read all of the file for creating TLSH hash: {0}",
+                        task.file.getName());
+            }
+        } catch (TskCoreException ex) {
+            logger.log(Level.WARNING, "Exception while reading the file.", ex);
+            last = READ_FAILED;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            last = READ_FAILED;
+        }
+
+        try {
+            task.chunks.put(last);
+        } catch (InterruptedException ex) {
+            // Only happens when the pipeline is being shut down, which also stops the hash stage
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read a region of the file into chunks, each in its own buffer from the pool.
+     *
+     * @return Number of bytes that were read, less than the length if the file ended early.
+     */
+    private long readRegion(TlshFileTask task, long offset, long length) throws TskCoreException,
+            InterruptedException {
+        long done = 0;
+        while (done < length) {
+            byte[] buf = this.bufferPool.borrow();
+            int bytesRead;
+            try {
+                bytesRead = task.file.read(buf, offset + done, Math.min(buf.length, length - done));
+            } catch (TskCoreException ex) {
+                this.bufferPool.giveBack(buf);
+                throw ex;
+            }
+            if (bytesRead <= 0) {
+                this.bufferPool.giveBack(buf);
+                break;
+            }
+
+            task.chunks.put(new Chunk(buf, bytesRead));
+            done += bytesRead;
+        }
+
+        return done;
+    }
+
+    /**
+     * Hash stage: input the chunks of the file into the digest engine of this thread until the end of the file. The
+     * queue of the file is always emptied, even when hashing fails, so its reader is never left waiting. The MD5 and
+     * SHA-256 are calculated from the same chunks when they are enabled and the file is not sampled.
+     */
+    private void hash(TlshFileTask task) {
+        TlshDigestEngine engine = this.digestEngines.get();
+        engine.reset();
+        CryptographicDigests cryptographic = null;
+        if (this.cryptographicDigests != null && !task.sampled && CryptographicDigests.isMissingHashes(task.file)) {
+            cryptographic = this.cryptographicDigests.get();
+            cryptographic.reset();
+        }
+
+        boolean failed = false;
+        try {
+            Chunk chunk = task.chunks.take();
+            while (chunk != END_OF_FILE && chunk != READ_FAILED) {
+                try {
+                    if (!failed) {
+                        engine.update(chunk.buf, 0, chunk.length);
+                        if (cryptographic != null) {
+                            cryptographic.update(chunk.buf, 0, chunk.length);
+                        }
+                    }
+                } catch (IllegalStateException ex) {
+                    // TLSH has a maximum amount of data it can hash
+                    logger.log(Level.WARNING, "File is too large to generate a TLSH hash: " + task.file.getName(), ex);
+                    failed = true;
+                } finally {
+                    this.bufferPool.giveBack(chunk.buf);
+                }
+                chunk = task.chunks.take();
+            }
+            failed = failed || chunk == READ_FAILED;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failed = true;
+        }
+
+        Tlsh hash = null;
+        if (!failed) {
+            try {
+                hash = engine.getHash();
+            } catch (IllegalStateException ex) {
+                logger.log(Level.WARNING, "Exception while generating the hash for the file.", ex);
+            }
+        }
+
+        if (hash == null) {
+            task.owner.taskFinished(task);
+            return;
+        }
+
+        // The cryptographic hashes are only right if the whole file was read
+        if (cryptographic != null && task.readComplete) {
+            cryptographic.storeOn(task.file);
+        }
+
+        try {
+            task.owner.hashCalculated(task, hash);
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Unexpected error while storing the TLSH hash of " + task.file.getName(), ex);
+        }
+        submitCompare(task);
+    }
+
+    /**
+     * Compare stage: compare the hash of the file with the hash list and hash sets.
+     */
+    private void compare(TlshFileTask task) {
+        try {
+            task.owner.compareTask(task);
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Unexpected error while comparing the TLSH hash of " + task.file.getName(), ex);
+            task.owner.taskFinished(task);
+            return;
+        }
+        submitPublish(task);
+    }
+
+    /**
+     * Publish stage: post the hash and the comparison hits of the file to the blackboard.
+     */
+    private void publish(TlshFileTask task) {
+        try {
+            task.owner.publishTask(task);
+        } catch (RuntimeException ex) {
+            logger.log(Level.SEVERE, "Unexpected error while posting the TLSH results of " + task.file.getName(), ex);
+        } finally {
+            task.owner.taskFinished(task);
+        }
+    }
+
+    /**
+     * Stop the threads of every stage. This should only be called once every module of the job has waited for its
+     * files to finish.
+     */
+    void shutDown() {
+        this.readStage.shutdown();
+        this.hashStage.shutdown();
+        this.compareStage.shutdown();
+        this.publishStage.shutdown();
+    }
+
+    /**
+     * Get a summary of the number of files that went through every stage, for the job statistics.
+     */
+    String getStatistics() {
+        return this.readStage.getCompletedTaskCount() + " read, " + this.hashStage.getCompletedTaskCount()
+                + " hashed, " + this.compareStage.getCompletedTaskCount() + " compared, "
+                + this.publishStage.getCompletedTaskCount() + " published";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+/**
+ * Map from the object id of a file to the TLSH hash that was already posted for it, loaded in bulk when the ingest
+ * starts so process() does not have to read the artifacts of every file to know if it was hashed before. The ids are
+ * kept in a primitive open addressing table, so there is no boxed key or entry object per file. It is shared by the
+ * modules of the job and is updated as hashes are posted. A file can have a hash of the whole file and sampled hashes,
+ * so every hash is kept with its variant from TlshDigestStore.variantOf() and is only found again with the same one.
+ */
+public class TlshKnownHashMap {
+
+    // Keys of the empty slots; object ids start at 1
+    private static final long EMPTY = 0;
+
+    private long[] keys;
+    private int[] variants;
+    private String[] hashes;
+    private int size = 0;
+
+    /**
+     * Create an empty map.
+     *
+     * @param expectedSize Number of files expected, so the table does not have to grow while it is loaded.
+     */
+    TlshKnownHashMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity *= 2;
+        }
+        this.keys = new long[capacity];
+        this.variants = new int[capacity];
+        this.hashes = new String[capacity];
+    }
+
+    /**
+     * Get the hash of the whole file.
+     *
+     * @param fileId Object id of the file.
+     * @return The hash that was posted for the file, or null if it was not hashed.
+     */
+    String get(long fileId) {
+        return get(fileId, 0);
+    }
+
+    /**
+     * Get the hash of a file that was made in a given way.
+     *
+     * @param fileId Object id of the file.
+     * @param variant Variant of the hash.
+     * @return The hash that was posted for the file, or null if it was not hashed that way.
+     */
+    synchronized String get(long fileId, int variant) {
+        int slot = slotOf(this.keys, this.variants, fileId, variant);
+        return this.keys[slot] == fileId ? this.hashes[slot] : null;
+    }
+
+    /**
+     * Keep the hash of the whole file, unless the file already has one.
+     *
+     * @param fileId Object id of the file.
+     * @param hash The hash that was posted for the file.
+     */
+    void putIfAbsent(long fileId, String hash) {
+        putIfAbsent(fileId, 0, hash);
+    }
+
+    /**
+     * Keep the hash of a file, unless the file already has one of the same variant.
+     *
+     * @param fileId Object id of the file.
+     * @param variant Variant of the hash.
+     * @param hash The hash that was posted for the file.
+     */
+    synchronized void putIfAbsent(long fileId, int variant, String hash) {
+        if (fileId == EMPTY || hash == null) {
+            return;
+        }
+
+        int slot = slotOf(this.keys, this.variants, fileId, variant);
+        if (this.keys[slot] == fileId) {
+            return;
+        }
+        this.keys[slot] = fileId;
+        this.variants[slot] = variant;
+        this.hashes[slot] = hash;
+        this.size++;
+
+        // Keep the table at most half full so the probes stay short
+        if (this.size * 2 > this.keys.length) {
+            grow();
+        }
+    }
+
+    synchronized int size() {
+        return this.size;
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        int[] oldVariants = this.variants;
+        String[] oldHashes = this.hashes;
+        this.keys = new long[oldKeys.length * 2];
+        this.variants = new int[oldKeys.length * 2];
+        this.hashes = new String[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = slotOf(this.keys, this.variants, oldKeys[i], oldVariants[i]);
+                this.keys[slot] = oldKeys[i];
+                this.variants[slot] = oldVariants[i];
+                this.hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    /**
+     * Find the slot of a file id and variant with linear probing: the slot holding them, or the empty slot they would
+     * go into.
+     */
+    private static int slotOf(long[] keys, int[] variants, long fileId, int variant) {
+        int mask = keys.length - 1;
+        // Spread the sequential object ids over the table
+        long mixed = (fileId ^ ((long) variant << 32)) * 0x9E3779B97F4A7C15L;
+        int slot = (int) (mixed ^ (mixed >>> 32)) & mask;
+        while (keys[slot] != EMPTY && (keys[slot] != fileId || variants[slot] != variant)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
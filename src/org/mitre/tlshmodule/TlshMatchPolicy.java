@@ -0,0 +1,117 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.sleuthkit.autopsy.coreutils.Logger;
+import org.sleuthkit.datamodel.Score;
+
+/**
+ * Decides which comparisons are hits and how notable they are. Every reference hash gets its own threshold distance:
+ * the threshold written in its comment if per-entry thresholds are enabled, otherwise the threshold of its hash set,
+ * otherwise the threshold of the job. The thresholds are stored in the reference index, so one pass over it applies all
+ * of them. When tiers are enabled, hits within a share of the threshold of their reference hash are notable and the
+ * hits further away are likely notable, so hash sets with a loose threshold get the same tiers as strict ones;
+ * otherwise every hit is notable.
+ */
+public class TlshMatchPolicy {
+
+    private static final Logger logger = Logger.getLogger(TlshMatchPolicy.class.getName());
+
+    // Threshold of a single hash, written anywhere in its comment, such as "# dropper family threshold=40"
+    private static final Pattern ENTRY_THRESHOLD = Pattern.compile("\\bthreshold\\s*=\\s*(\\d+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private final int jobThreshold;
+    private final Map<String, Integer> hashSetThresholds = new HashMap<>();
+    private final boolean useEntryThresholds;
+
+    // Hits within this percent of the threshold of their reference hash are notable, further hits are likely notable
+    private final boolean useScoreTiers;
+    private final int notableTierPercent;
+
+    /**
+     * Create the policy of an ingest job.
+     *
+     * @param settings Settings of the ingest job.
+     */
+    TlshMatchPolicy(TlshModuleIngestJobSettings settings) {
+        this.jobThreshold = settings.getTargetDistance();
+        for (String setThreshold : settings.getHashSetThresholds()) {
+            // Hash set names can contain "=", so the threshold is after the last one
+            int separator = setThreshold.lastIndexOf('=');
+            try {
+                this.hashSetThresholds.put(setThreshold.substring(0, separator).trim(),
+                        Integer.parseInt(setThreshold.substring(separator + 1).trim()));
+            } catch (IndexOutOfBoundsException | NumberFormatException ex) {
+                logger.log(Level.WARNING, "Ignoring hash set threshold {0}, it is not name=distance", setThreshold);
+            }
+        }
+        this.useEntryThresholds = settings.getUseEntryThresholds();
+        this.useScoreTiers = settings.getUseScoreTiers();
+        this.notableTierPercent = settings.getNotableTierPercent();
+    }
+
+    /**
+     * Check if any reference hash can have a threshold other than the threshold of the job.
+     */
+    boolean hasCustomThresholds() {
+        return this.useEntryThresholds || !this.hashSetThresholds.isEmpty();
+    }
+
+    /**
+     * Get the threshold distance of a reference hash.
+     *
+     * @param reference The hash and the information about where it comes from.
+     * @param isFromHashSet True if the hash comes from a hash set instead of the hash list.
+     * @return The maximum distance of a hit on the hash.
+     */
+    int thresholdOf(ParseTlshObj reference, boolean isFromHashSet) {
+        if (this.useEntryThresholds && reference.comment != null) {
+            Matcher matcher = ENTRY_THRESHOLD.matcher(reference.comment);
+            if (matcher.find()) {
+                try {
+                    return Integer.parseInt(matcher.group(1));
+                } catch (NumberFormatException ex) {
+                    // Too many digits, use the threshold of the set
+                }
+            }
+        }
+        if (isFromHashSet) {
+            Integer setThreshold = this.hashSetThresholds.get(reference.listName);
+            if (setThreshold != null) {
+                return setThreshold;
+            }
+        }
+        return this.jobThreshold;
+    }
+
+    /**
+     * Get the score of a hit.
+     *
+     * @param distance Distance of the hit.
+     * @param threshold Threshold of the reference hash, from thresholdOf().
+     * @return The score of the tier the distance falls into, or notable if tiers are disabled.
+     */
+    Score scoreOf(int distance, int threshold) {
+        if (!this.useScoreTiers || distance * 100L <= (long) threshold * this.notableTierPercent) {
+            return Score.SCORE_NOTABLE;
+        }
+        return Score.SCORE_LIKELY_NOTABLE;
+    }
+}
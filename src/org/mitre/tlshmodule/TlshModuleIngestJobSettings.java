@@ -23,6 +23,59 @@ public class TlshModuleIngestJobSettings implements IngestModuleIngestJobSetting
 
     private static final long serialVersionUID = 1L;
 
+    // Default number of bytes read from a file and fed into TLSH at a time
+    static final int DEFAULT_READ_CHUNK_SIZE = 1024 * 1024;
+
+    // Default number of idle read buffers kept for reuse by the ingest threads of a job
+    static final int DEFAULT_BUFFER_POOL_SIZE = 16;
+
+    // Defaults for sampling very large files instead of reading all of them
+    static final long DEFAULT_SAMPLE_SIZE_THRESHOLD = 1024L * 1024 * 1024;
+    static final long DEFAULT_SAMPLE_BYTE_BUDGET = 64L * 1024 * 1024;
+    static final int DEFAULT_SAMPLE_BLOCK_SIZE = 1024 * 1024;
+
+    // Default number of hashes kept by the job-wide cache of duplicate files
+    static final boolean DEFAULT_USE_DIGEST_CACHE = true;
+    static final int DEFAULT_DIGEST_CACHE_MAX_ENTRIES = 1000000;
+
+    // Load the hashes already posted for the data source when the ingest starts by default
+    static final boolean DEFAULT_PRELOAD_KNOWN_HASHES = true;
+
+    // Default number of closest reference hashes listed in an aggregated hit
+    static final int DEFAULT_AGGREGATED_CLOSEST_HITS = 5;
+
+    // Defaults of the batched blackboard publisher: results waiting to be written, results per transaction and longest
+    // time a result waits for its batch to fill up
+    static final int DEFAULT_PUBLISH_QUEUE_SIZE = 10000;
+    static final int DEFAULT_PUBLISH_BATCH_SIZE = 500;
+    static final int DEFAULT_PUBLISH_FLUSH_INTERVAL_MILLIS = 1000;
+
+    // Default share of the threshold of a reference hash within which a hit is notable when score tiers are used,
+    // further hits are likely notable
+    static final int DEFAULT_NOTABLE_TIER_PERCENT = 50;
+
+    // Default size of the reference index above which a file is compared with it on all the processors
+    static final int DEFAULT_PARALLEL_SCAN_MIN_ENTRIES = 1000000;
+
+    // Default number of closest reference hashes kept for every file in top-K mode
+    static final int DEFAULT_TOP_K_MATCHES = 10;
+
+    // Default number of files compared with the reference hashes together in batch comparison mode
+    static final int DEFAULT_COMPARISON_BATCH_SIZE = 64;
+
+    // Default number of bands the body of a hash is split into for the band index
+    static final int DEFAULT_BAND_COUNT = 16;
+
+    // Default number of hashes kept in the digest store on disk
+    static final int DEFAULT_DIGEST_STORE_MAX_ENTRIES = 1000000;
+
+    // Defaults for the threads and queues of the ingest pipeline, the hash stage defaults to one thread per processor
+    static final int DEFAULT_PIPELINE_READ_THREADS = 4;
+    static final int DEFAULT_PIPELINE_COMPARE_THREADS = 2;
+    static final int DEFAULT_PIPELINE_PUBLISH_THREADS = 1;
+    static final int DEFAULT_PIPELINE_QUEUE_SIZE = 64;
+    static final int DEFAULT_PIPELINE_CHUNK_QUEUE_SIZE = 4;
+
     private String ingestUUID = "";
 
     // Compare for hashlist (if a single hash is needed it works here too)
@@ -36,6 +89,106 @@ public class TlshModuleIngestJobSettings implements IngestModuleIngestJobSetting
 
     private String compareMimeType = "*/*";
 
+    // Size of the buffer used to stream file contents into TLSH so memory use does not grow with the file size
+    private int readChunkSize = DEFAULT_READ_CHUNK_SIZE;
+    private int bufferPoolSize = DEFAULT_BUFFER_POOL_SIZE;
+
+    // Use the module's own TlshDigestCreator instead of the TLSH library to calculate hashes
+    private boolean useInternalTlshCreator = false;
+
+    // Filters that are checked before a file is read. A max file size of 0 means there is no limit, and an empty
+    // allowed extension list allows all extensions.
+    private long minFileSize = TlshDigestCreator.MIN_DATA_LENGTH;
+    private long maxFileSize = 0;
+    private String[] allowedExtensions = new String[0];
+    private String[] deniedExtensions = new String[0];
+    private boolean skipKnownFiles = false;
+
+    // Hash files larger than the threshold from a fixed set of blocks instead of all of their content
+    private boolean sampleLargeFiles = false;
+    private long sampleSizeThreshold = DEFAULT_SAMPLE_SIZE_THRESHOLD;
+    private long sampleByteBudget = DEFAULT_SAMPLE_BYTE_BUDGET;
+    private int sampleBlockSize = DEFAULT_SAMPLE_BLOCK_SIZE;
+
+    // Reuse the hash of a file for other files with the same content. Files without an MD5 or SHA-256 are only keyed
+    // by their size and a hash of their head and tail when usePartialDigestCacheKey is enabled. Null until it is set,
+    // as in settings serialized before this option existed, so the getter falls back to the default.
+    private Boolean useDigestCache = null;
+    private int digestCacheMaxEntries = DEFAULT_DIGEST_CACHE_MAX_ENTRIES;
+    private boolean usePartialDigestCacheKey = false;
+
+    // Keep the hashes of files with a SHA-256 on disk so they are not hashed again in later cases
+    private boolean useDigestStore = false;
+    private int digestStoreMaxEntries = DEFAULT_DIGEST_STORE_MAX_ENTRIES;
+
+    // Find the reference hashes near a file with a vantage point tree instead of comparing it with all of them
+    private boolean useMetricTreeIndex = false;
+
+    // Score the bodies of the reference hashes with the packed popcount kernel when scanning them
+    private boolean usePackedBodyKernel = false;
+
+    // Only post the comparison hits that were not recorded for the data source by an earlier ingest, keyed by the file,
+    // the reference hash, its hash set and the threshold
+    private boolean skipRecordedHits = false;
+
+    // Post one artifact for the hits of a file in the hash list and in every hash set, with the best distance, the
+    // number of hits and the closest reference hashes, instead of an artifact for every hit
+    private boolean aggregateHits = false;
+    private int aggregatedClosestHits = DEFAULT_AGGREGATED_CLOSEST_HITS;
+
+    // Add the results of the job to the blackboard in batches from a single writer thread, instead of one transaction
+    // and one event for every artifact
+    private boolean useBatchedPublisher = false;
+    private int publishQueueSize = DEFAULT_PUBLISH_QUEUE_SIZE;
+    private int publishBatchSize = DEFAULT_PUBLISH_BATCH_SIZE;
+    private int publishFlushIntervalMillis = DEFAULT_PUBLISH_FLUSH_INTERVAL_MILLIS;
+
+    // Load the hashes already posted for the data source in one query when the ingest starts, instead of looking up the
+    // artifacts of every file. Null until it is set, so older settings get the default.
+    private Boolean preloadKnownHashes = null;
+
+    // Thresholds of hash sets that differ from the job threshold, as "hash set name=distance", the threshold written
+    // as "threshold=distance" in the comment of a hash when useEntryThresholds is enabled, and the score tiers of hits
+    private String[] hashSetThresholds = new String[0];
+    private boolean useEntryThresholds = false;
+    private boolean useScoreTiers = false;
+    private int notableTierPercent = DEFAULT_NOTABLE_TIER_PERCENT;
+
+    // Compare a file with a large reference index in parallel on the common fork-join pool
+    private boolean useParallelScan = false;
+    private int parallelScanMinEntries = DEFAULT_PARALLEL_SCAN_MIN_ENTRIES;
+
+    // Look up the reference hashes that are exactly the same as a file's hash before comparing it with all of them,
+    // and skip the comparisons for files that have an exact match when exactMatchSkipsScan is enabled
+    private boolean useExactMatchFastPath = false;
+    private boolean exactMatchSkipsScan = false;
+
+    // Only post the K closest reference hashes within the threshold for every file, in total or for every hash set
+    private boolean useTopKMatches = false;
+    private int topKMatches = DEFAULT_TOP_K_MATCHES;
+    private boolean topKPerHashSet = false;
+
+    // Compare the files of an ingest thread with the reference hashes in batches, posting the hits when the batch is
+    // full or the ingest shuts down
+    private boolean useBatchComparison = false;
+    private int comparisonBatchSize = DEFAULT_COMPARISON_BATCH_SIZE;
+
+    // Only compare a file with the reference hashes that share a band of their body with it, faster but approximate
+    private boolean useBandIndex = false;
+    private int bandCount = DEFAULT_BAND_COUNT;
+
+    // Calculate the MD5 and SHA-256 of files from the data read for TLSH and store them if Autopsy does not have them
+    private boolean computeCryptographicHashes = false;
+
+    // Read, hash, compare and post files on the threads of the ingest pipeline instead of the ingest threads
+    private boolean useIngestPipeline = false;
+    private int pipelineReadThreads = DEFAULT_PIPELINE_READ_THREADS;
+    private int pipelineHashThreads = 0;
+    private int pipelineCompareThreads = DEFAULT_PIPELINE_COMPARE_THREADS;
+    private int pipelinePublishThreads = DEFAULT_PIPELINE_PUBLISH_THREADS;
+    private int pipelineQueueSize = DEFAULT_PIPELINE_QUEUE_SIZE;
+    private int pipelineChunkQueueSize = DEFAULT_PIPELINE_CHUNK_QUEUE_SIZE;
+
     // Empty Constructor
     TlshModuleIngestJobSettings() {
     }
@@ -115,4 +268,547 @@ public class TlshModuleIngestJobSettings implements IngestModuleIngestJobSetting
     String getCompareMimeType() {
         return this.compareMimeType;
     }
+
+    void setReadChunkSize(int readChunkSize) {
+        this.readChunkSize = readChunkSize;
+    }
+
+    int getReadChunkSize() {
+        // Settings serialized before this option existed deserialize it as 0
+        if (this.readChunkSize <= 0) {
+            return DEFAULT_READ_CHUNK_SIZE;
+        }
+        return this.readChunkSize;
+    }
+
+    void setBufferPoolSize(int bufferPoolSize) {
+        this.bufferPoolSize = bufferPoolSize;
+    }
+
+    int getBufferPoolSize() {
+        if (this.bufferPoolSize <= 0) {
+            return DEFAULT_BUFFER_POOL_SIZE;
+        }
+        return this.bufferPoolSize;
+    }
+
+    void setUseInternalTlshCreator(boolean enabled) {
+        this.useInternalTlshCreator = enabled;
+    }
+
+    boolean getUseInternalTlshCreator() {
+        return this.useInternalTlshCreator;
+    }
+
+    void setMinFileSize(long minFileSize) {
+        this.minFileSize = minFileSize;
+    }
+
+    long getMinFileSize() {
+        // Smaller files can never produce a TLSH hash
+        return Math.max(this.minFileSize, TlshDigestCreator.MIN_DATA_LENGTH);
+    }
+
+    void setMaxFileSize(long maxFileSize) {
+        this.maxFileSize = maxFileSize;
+    }
+
+    long getMaxFileSize() {
+        return this.maxFileSize;
+    }
+
+    void setAllowedExtensions(String[] extensions) {
+        this.allowedExtensions = extensions;
+    }
+
+    String[] getAllowedExtensions() {
+        if (this.allowedExtensions == null) {
+            return new String[0];
+        }
+        return this.allowedExtensions;
+    }
+
+    void setDeniedExtensions(String[] extensions) {
+        this.deniedExtensions = extensions;
+    }
+
+    String[] getDeniedExtensions() {
+        if (this.deniedExtensions == null) {
+            return new String[0];
+        }
+        return this.deniedExtensions;
+    }
+
+    void setSkipKnownFiles(boolean skipKnownFiles) {
+        this.skipKnownFiles = skipKnownFiles;
+    }
+
+    boolean getSkipKnownFiles() {
+        return this.skipKnownFiles;
+    }
+
+    void setSampleLargeFiles(boolean enabled) {
+        this.sampleLargeFiles = enabled;
+    }
+
+    boolean getSampleLargeFiles() {
+        return this.sampleLargeFiles;
+    }
+
+    void setSampleSizeThreshold(long sizeThreshold) {
+        this.sampleSizeThreshold = sizeThreshold;
+    }
+
+    long getSampleSizeThreshold() {
+        if (this.sampleSizeThreshold <= 0) {
+            return DEFAULT_SAMPLE_SIZE_THRESHOLD;
+        }
+        return this.sampleSizeThreshold;
+    }
+
+    void setSampleByteBudget(long byteBudget) {
+        this.sampleByteBudget = byteBudget;
+    }
+
+    long getSampleByteBudget() {
+        if (this.sampleByteBudget <= 0) {
+            return DEFAULT_SAMPLE_BYTE_BUDGET;
+        }
+        return this.sampleByteBudget;
+    }
+
+    void setSampleBlockSize(int blockSize) {
+        this.sampleBlockSize = blockSize;
+    }
+
+    int getSampleBlockSize() {
+        if (this.sampleBlockSize <= 0) {
+            return DEFAULT_SAMPLE_BLOCK_SIZE;
+        }
+        return this.sampleBlockSize;
+    }
+
+    void setUseDigestCache(boolean enabled) {
+        this.useDigestCache = enabled;
+    }
+
+    boolean getUseDigestCache() {
+        if (this.useDigestCache == null) {
+            return DEFAULT_USE_DIGEST_CACHE;
+        }
+        return this.useDigestCache;
+    }
+
+    void setDigestCacheMaxEntries(int maxEntries) {
+        this.digestCacheMaxEntries = maxEntries;
+    }
+
+    int getDigestCacheMaxEntries() {
+        if (this.digestCacheMaxEntries <= 0) {
+            return DEFAULT_DIGEST_CACHE_MAX_ENTRIES;
+        }
+        return this.digestCacheMaxEntries;
+    }
+
+    void setUsePartialDigestCacheKey(boolean enabled) {
+        this.usePartialDigestCacheKey = enabled;
+    }
+
+    boolean getUsePartialDigestCacheKey() {
+        return this.usePartialDigestCacheKey;
+    }
+
+    void setUseDigestStore(boolean enabled) {
+        this.useDigestStore = enabled;
+    }
+
+    boolean getUseDigestStore() {
+        return this.useDigestStore;
+    }
+
+    void setDigestStoreMaxEntries(int maxEntries) {
+        this.digestStoreMaxEntries = maxEntries;
+    }
+
+    int getDigestStoreMaxEntries() {
+        if (this.digestStoreMaxEntries <= 0) {
+            return DEFAULT_DIGEST_STORE_MAX_ENTRIES;
+        }
+        return this.digestStoreMaxEntries;
+    }
+
+    void setUseMetricTreeIndex(boolean enabled) {
+        this.useMetricTreeIndex = enabled;
+    }
+
+    boolean getUseMetricTreeIndex() {
+        return this.useMetricTreeIndex;
+    }
+
+    void setUsePackedBodyKernel(boolean enabled) {
+        this.usePackedBodyKernel = enabled;
+    }
+
+    boolean getUsePackedBodyKernel() {
+        return this.usePackedBodyKernel;
+    }
+
+    void setSkipRecordedHits(boolean enabled) {
+        this.skipRecordedHits = enabled;
+    }
+
+    boolean getSkipRecordedHits() {
+        return this.skipRecordedHits;
+    }
+
+    void setAggregateHits(boolean enabled) {
+        this.aggregateHits = enabled;
+    }
+
+    boolean getAggregateHits() {
+        return this.aggregateHits;
+    }
+
+    void setAggregatedClosestHits(int count) {
+        this.aggregatedClosestHits = count;
+    }
+
+    int getAggregatedClosestHits() {
+        if (this.aggregatedClosestHits <= 0) {
+            return DEFAULT_AGGREGATED_CLOSEST_HITS;
+        }
+        return this.aggregatedClosestHits;
+    }
+
+    void setUseBatchedPublisher(boolean enabled) {
+        this.useBatchedPublisher = enabled;
+    }
+
+    boolean getUseBatchedPublisher() {
+        return this.useBatchedPublisher;
+    }
+
+    void setPublishQueueSize(int size) {
+        this.publishQueueSize = size;
+    }
+
+    int getPublishQueueSize() {
+        if (this.publishQueueSize <= 0) {
+            return DEFAULT_PUBLISH_QUEUE_SIZE;
+        }
+        return this.publishQueueSize;
+    }
+
+    void setPublishBatchSize(int size) {
+        this.publishBatchSize = size;
+    }
+
+    int getPublishBatchSize() {
+        if (this.publishBatchSize <= 0) {
+            return DEFAULT_PUBLISH_BATCH_SIZE;
+        }
+        return this.publishBatchSize;
+    }
+
+    void setPublishFlushIntervalMillis(int millis) {
+        this.publishFlushIntervalMillis = millis;
+    }
+
+    int getPublishFlushIntervalMillis() {
+        if (this.publishFlushIntervalMillis <= 0) {
+            return DEFAULT_PUBLISH_FLUSH_INTERVAL_MILLIS;
+        }
+        return this.publishFlushIntervalMillis;
+    }
+
+    void setPreloadKnownHashes(boolean enabled) {
+        this.preloadKnownHashes = enabled;
+    }
+
+    boolean getPreloadKnownHashes() {
+        if (this.preloadKnownHashes == null) {
+            return DEFAULT_PRELOAD_KNOWN_HASHES;
+        }
+        return this.preloadKnownHashes;
+    }
+
+    void setHashSetThresholds(String[] thresholds) {
+        this.hashSetThresholds = thresholds;
+    }
+
+    String[] getHashSetThresholds() {
+        if (this.hashSetThresholds == null) {
+            return new String[0];
+        }
+        return this.hashSetThresholds;
+    }
+
+    void setUseEntryThresholds(boolean enabled) {
+        this.useEntryThresholds = enabled;
+    }
+
+    boolean getUseEntryThresholds() {
+        return this.useEntryThresholds;
+    }
+
+    void setUseScoreTiers(boolean enabled) {
+        this.useScoreTiers = enabled;
+    }
+
+    boolean getUseScoreTiers() {
+        return this.useScoreTiers;
+    }
+
+    void setNotableTierPercent(int percent) {
+        this.notableTierPercent = percent;
+    }
+
+    int getNotableTierPercent() {
+        if (this.notableTierPercent <= 0 || this.notableTierPercent > 100) {
+            return DEFAULT_NOTABLE_TIER_PERCENT;
+        }
+        return this.notableTierPercent;
+    }
+
+    void setUseParallelScan(boolean enabled) {
+        this.useParallelScan = enabled;
+    }
+
+    boolean getUseParallelScan() {
+        return this.useParallelScan;
+    }
+
+    void setParallelScanMinEntries(int minEntries) {
+        this.parallelScanMinEntries = minEntries;
+    }
+
+    int getParallelScanMinEntries() {
+        if (this.parallelScanMinEntries <= 0) {
+            return DEFAULT_PARALLEL_SCAN_MIN_ENTRIES;
+        }
+        return this.parallelScanMinEntries;
+    }
+
+    void setUseExactMatchFastPath(boolean enabled) {
+        this.useExactMatchFastPath = enabled;
+    }
+
+    boolean getUseExactMatchFastPath() {
+        return this.useExactMatchFastPath;
+    }
+
+    void setExactMatchSkipsScan(boolean enabled) {
+        this.exactMatchSkipsScan = enabled;
+    }
+
+    boolean getExactMatchSkipsScan() {
+        return this.exactMatchSkipsScan;
+    }
+
+    void setUseTopKMatches(boolean enabled) {
+        this.useTopKMatches = enabled;
+    }
+
+    boolean getUseTopKMatches() {
+        return this.useTopKMatches;
+    }
+
+    void setTopKMatches(int k) {
+        this.topKMatches = k;
+    }
+
+    int getTopKMatches() {
+        if (this.topKMatches <= 0) {
+            return DEFAULT_TOP_K_MATCHES;
+        }
+        return this.topKMatches;
+    }
+
+    void setTopKPerHashSet(boolean enabled) {
+        this.topKPerHashSet = enabled;
+    }
+
+    boolean getTopKPerHashSet() {
+        return this.topKPerHashSet;
+    }
+
+    void setUseBatchComparison(boolean enabled) {
+        this.useBatchComparison = enabled;
+    }
+
+    boolean getUseBatchComparison() {
+        return this.useBatchComparison;
+    }
+
+    void setComparisonBatchSize(int size) {
+        this.comparisonBatchSize = size;
+    }
+
+    int getComparisonBatchSize() {
+        if (this.comparisonBatchSize <= 0) {
+            return DEFAULT_COMPARISON_BATCH_SIZE;
+        }
+        return this.comparisonBatchSize;
+    }
+
+    void setUseBandIndex(boolean enabled) {
+        this.useBandIndex = enabled;
+    }
+
+    boolean getUseBandIndex() {
+        return this.useBandIndex;
+    }
+
+    void setBandCount(int count) {
+        this.bandCount = count;
+    }
+
+    int getBandCount() {
+        if (this.bandCount <= 0) {
+            return DEFAULT_BAND_COUNT;
+        }
+        return this.bandCount;
+    }
+
+    void setComputeCryptographicHashes(boolean enabled) {
+        this.computeCryptographicHashes = enabled;
+    }
+
+    boolean getComputeCryptographicHashes() {
+        return this.computeCryptographicHashes;
+    }
+
+    void setUseIngestPipeline(boolean enabled) {
+        this.useIngestPipeline = enabled;
+    }
+
+    boolean getUseIngestPipeline() {
+        return this.useIngestPipeline;
+    }
+
+    void setPipelineReadThreads(int threads) {
+        this.pipelineReadThreads = threads;
+    }
+
+    int getPipelineReadThreads() {
+        if (this.pipelineReadThreads <= 0) {
+            return DEFAULT_PIPELINE_READ_THREADS;
+        }
+        return this.pipelineReadThreads;
+    }
+
+    void setPipelineHashThreads(int threads) {
+        this.pipelineHashThreads = threads;
+    }
+
+    int getPipelineHashThreads() {
+        if (this.pipelineHashThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return this.pipelineHashThreads;
+    }
+
+    void setPipelineCompareThreads(int threads) {
+        this.pipelineCompareThreads = threads;
+    }
+
+    int getPipelineCompareThreads() {
+        if (this.pipelineCompareThreads <= 0) {
+            return DEFAULT_PIPELINE_COMPARE_THREADS;
+        }
+        return this.pipelineCompareThreads;
+    }
+
+    void setPipelinePublishThreads(int threads) {
+        this.pipelinePublishThreads = threads;
+    }
+
+    int getPipelinePublishThreads() {
+        if (this.pipelinePublishThreads <= 0) {
+            return DEFAULT_PIPELINE_PUBLISH_THREADS;
+        }
+        return this.pipelinePublishThreads;
+    }
+
+    void setPipelineQueueSize(int queueSize) {
+        this.pipelineQueueSize = queueSize;
+    }
+
+    int getPipelineQueueSize() {
+        if (this.pipelineQueueSize <= 0) {
+            return DEFAULT_PIPELINE_QUEUE_SIZE;
+        }
+        return this.pipelineQueueSize;
+    }
+
+    void setPipelineChunkQueueSize(int queueSize) {
+        this.pipelineChunkQueueSize = queueSize;
+    }
+
+    int getPipelineChunkQueueSize() {
+        if (this.pipelineChunkQueueSize <= 0) {
+            return DEFAULT_PIPELINE_CHUNK_QUEUE_SIZE;
+        }
+        return this.pipelineChunkQueueSize;
+    }
+
+    /**
+     * Copies the settings that are not shown on the ingest job settings panel from a previous settings object. The
+     * panel builds a new settings object every time, so without this those values would fall back to their defaults.
+     *
+     * @param other The settings that the panel was opened with.
+     */
+    void copyAdvancedSettings(TlshModuleIngestJobSettings other) {
+        this.readChunkSize = other.getReadChunkSize();
+        this.bufferPoolSize = other.getBufferPoolSize();
+        this.useInternalTlshCreator = other.getUseInternalTlshCreator();
+        this.minFileSize = other.getMinFileSize();
+        this.maxFileSize = other.getMaxFileSize();
+        this.allowedExtensions = other.getAllowedExtensions();
+        this.deniedExtensions = other.getDeniedExtensions();
+        this.skipKnownFiles = other.getSkipKnownFiles();
+        this.sampleLargeFiles = other.getSampleLargeFiles();
+        this.sampleSizeThreshold = other.getSampleSizeThreshold();
+        this.sampleByteBudget = other.getSampleByteBudget();
+        this.sampleBlockSize = other.getSampleBlockSize();
+        this.useDigestCache = other.getUseDigestCache();
+        this.digestCacheMaxEntries = other.getDigestCacheMaxEntries();
+        this.usePartialDigestCacheKey = other.getUsePartialDigestCacheKey();
+        this.useDigestStore = other.getUseDigestStore();
+        this.digestStoreMaxEntries = other.getDigestStoreMaxEntries();
+        this.useMetricTreeIndex = other.getUseMetricTreeIndex();
+        this.usePackedBodyKernel = other.getUsePackedBodyKernel();
+        this.skipRecordedHits = other.getSkipRecordedHits();
+        this.aggregateHits = other.getAggregateHits();
+        this.aggregatedClosestHits = other.getAggregatedClosestHits();
+        this.useBatchedPublisher = other.getUseBatchedPublisher();
+        this.publishQueueSize = other.getPublishQueueSize();
+        this.publishBatchSize = other.getPublishBatchSize();
+        this.publishFlushIntervalMillis = other.getPublishFlushIntervalMillis();
+        this.preloadKnownHashes = other.getPreloadKnownHashes();
+        this.hashSetThresholds = other.getHashSetThresholds();
+        this.useEntryThresholds = other.getUseEntryThresholds();
+        this.useScoreTiers = other.getUseScoreTiers();
+        this.notableTierPercent = other.getNotableTierPercent();
+        this.useParallelScan = other.getUseParallelScan();
+        this.parallelScanMinEntries = other.getParallelScanMinEntries();
+        this.useExactMatchFastPath = other.getUseExactMatchFastPath();
+        this.exactMatchSkipsScan = other.getExactMatchSkipsScan();
+        this.useTopKMatches = other.getUseTopKMatches();
+        this.topKMatches = other.getTopKMatches();
+        this.topKPerHashSet = other.getTopKPerHashSet();
+        this.useBatchComparison = other.getUseBatchComparison();
+        this.comparisonBatchSize = other.getComparisonBatchSize();
+        this.useBandIndex = other.getUseBandIndex();
+        this.bandCount = other.getBandCount();
+        this.computeCryptographicHashes = other.getComputeCryptographicHashes();
+        this.useIngestPipeline = other.getUseIngestPipeline();
+        this.pipelineReadThreads = other.getPipelineReadThreads();
+        // Copied as is so 0 keeps meaning one thread per processor of the machine running the ingest
+        this.pipelineHashThreads = other.pipelineHashThreads;
+        this.pipelineCompareThreads = other.getPipelineCompareThreads();
+        this.pipelinePublishThreads = other.getPipelinePublishThreads();
+        this.pipelineQueueSize = other.getPipelineQueueSize();
+        this.pipelineChunkQueueSize = other.getPipelineChunkQueueSize();
+    }
 }
@@ -0,0 +1,133 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+/**
+ * Keeps the K closest entries of the reference index found so far for one file, in a max heap on the distance so the
+ * furthest of them can be replaced in constant time. Entries with the same distance are ordered by their index, so the
+ * result is the same as sorting every hit and keeping the first K, whatever order the entries are offered in.
+ */
+public class TlshNearestHits {
+
+    private final int[] distances;
+    private final int[] entries;
+    private int size = 0;
+
+    /**
+     * Create an empty heap.
+     *
+     * @param k Maximum number of entries kept.
+     */
+    TlshNearestHits(int k) {
+        this.distances = new int[k];
+        this.entries = new int[k];
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Get the largest distance an entry can have and still be kept, so the distance calculation can stop once it is
+     * past it.
+     *
+     * @param threshold Maximum distance of a hit.
+     * @return The threshold until the heap is full, then the distance of the furthest entry kept.
+     */
+    int bound(int threshold) {
+        if (this.size < this.distances.length) {
+            return threshold;
+        }
+        return Math.min(threshold, this.distances[0]);
+    }
+
+    /**
+     * Keep an entry if it is closer than the furthest entry kept, or the heap is not full yet.
+     *
+     * @param distance Distance of the entry.
+     * @param entry Index of the entry.
+     */
+    void offer(int distance, int entry) {
+        if (this.size < this.distances.length) {
+            int i = this.size++;
+            // Move the new entry up until its parent is further than it
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!further(distance, entry, this.distances[parent], this.entries[parent])) {
+                    break;
+                }
+                this.distances[i] = this.distances[parent];
+                this.entries[i] = this.entries[parent];
+                i = parent;
+            }
+            this.distances[i] = distance;
+            this.entries[i] = entry;
+            return;
+        }
+
+        if (this.size == 0 || !further(this.distances[0], this.entries[0], distance, entry)) {
+            return;
+        }
+        siftDown(distance, entry);
+    }
+
+    /**
+     * Remove the entries from the heap, closest first.
+     *
+     * @param sortedDistances Receives the distances, at least size() long.
+     * @param sortedEntries Receives the entries, at least size() long.
+     * @return The number of entries.
+     */
+    int drain(int[] sortedDistances, int[] sortedEntries) {
+        int count = this.size;
+        for (int i = count - 1; i >= 0; i--) {
+            sortedDistances[i] = this.distances[0];
+            sortedEntries[i] = this.entries[0];
+            this.size--;
+            if (this.size > 0) {
+                siftDown(this.distances[this.size], this.entries[this.size]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Put an entry at the root and move it down until both its children are closer than it.
+     */
+    private void siftDown(int distance, int entry) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size && further(this.distances[child + 1], this.entries[child + 1],
+                    this.distances[child], this.entries[child])) {
+                child++;
+            }
+            if (!further(this.distances[child], this.entries[child], distance, entry)) {
+                break;
+            }
+            this.distances[i] = this.distances[child];
+            this.entries[i] = this.entries[child];
+            i = child;
+        }
+        this.distances[i] = distance;
+        this.entries[i] = entry;
+    }
+
+    private static boolean further(int distanceA, int entryA, int distanceB, int entryB) {
+        return distanceA > distanceB || (distanceA == distanceB && entryA > entryB);
+    }
+}
@@ -0,0 +1,783 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The reference hashes that files are compared with, decoded once when the ingest starts and kept in flat primitive
+ * arrays. Comparing a file with the index does not decode any strings or allocate any objects per reference hash, only
+ * for the hashes that meet the threshold distance.
+ *
+ * Only hashes in the default TLSH layout are supported: 128 buckets with a 1 byte checksum, written as 72 characters
+ * starting with "T1" or as the 70 characters without it. That is the only layout the module creates, and the TLSH
+ * library can not compare hashes of different layouts anyway.
+ *
+ * The distance is the same as the one calculated by Tlsh.totalDiff().
+ */
+public class TlshReferenceIndex {
+
+    // Layout of a decoded hash: checksum, length value, Q ratios (Q1 in the high nibble) and the body
+    static final int CHECKSUM = 0;
+    static final int LVALUE = 1;
+    static final int Q_RATIOS = 2;
+    static final int BODY = 3;
+    static final int BODY_LENGTH = 32;
+    static final int DECODED_LENGTH = BODY + BODY_LENGTH;
+
+    // Number of characters of an encoded hash without and with the "T1" version prefix
+    private static final int ENCODED_LENGTH = 2 * DECODED_LENGTH;
+    private static final String VERSION_PREFIX = "T1";
+
+    // Distance added for every step of the length value and Q ratio differences above 1
+    private static final int RANGE_STEP = 12;
+
+    // Body bytes compared between checks of the running distance against the threshold
+    private static final int EARLY_EXIT_STRIDE = 8;
+
+    // Distance between every pair of body bytes, indexed by (a << 8) | b
+    private static final byte[] BODY_DISTANCE_TABLE = new byte[256 * 256];
+
+    static {
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                BODY_DISTANCE_TABLE[(a << 8) | b] = (byte) bodyByteDistance(a, b);
+            }
+        }
+    }
+
+    // Entries whose bodies are scored per call of the packed kernel
+    private static final int PACKED_BLOCK_SIZE = 256;
+
+    // Entries compared with every hash of a batch before moving on, about 140 KB of headers and bodies so a tile
+    // stays in the L2 cache
+    private static final int BATCH_TILE_SIZE = 4096;
+
+    // Entries scanned by a single fork-join task of a parallel scan
+    private static final int PARALLEL_CHUNK_SIZE = 64 * 1024;
+
+    private int size = 0;
+    private final byte[] checksums;
+    private final byte[] lvalues;
+    private final byte[] qRatios;
+    private final byte[] bodies;
+
+    // The hash that every entry was created from, and whether it comes from a hash set or the hash list
+    private final ParseTlshObj[] references;
+    private final boolean[] fromHashSet;
+
+    // Group of every entry for the nearest hits per hash set, 0 for the hash list and one per hash set name after it
+    private final int[] groups;
+    private final Map<String, Integer> hashSetGroups = new HashMap<>();
+
+    // Finds the candidate entries of a query without scanning all of them, null to scan
+    private TlshVantagePointTree tree = null;
+
+    // Finds the entries that share a band with a query, approximate, null to not use bands
+    private TlshBandIndex bands = null;
+
+    // Indexes with at least this many entries are scanned in parallel on the common fork-join pool, 0 to never
+    private int parallelScanMinEntries = 0;
+
+    // Threshold of every entry when they do not all use the threshold of the search, and the largest of them
+    private int[] entryThresholds = null;
+    private int maxEntryThreshold = 0;
+
+    // Finds the entries at distance 0 of a query, null if the exact match fast path is disabled
+    private TlshExactIndex exact = null;
+
+    // Bodies packed for TlshBodyKernel, null to score them with the byte pair table
+    private long[] packedBodies = null;
+
+    /**
+     * Create an empty index.
+     *
+     * @param capacity Maximum number of hashes that can be added.
+     */
+    TlshReferenceIndex(int capacity) {
+        this.checksums = new byte[capacity];
+        this.lvalues = new byte[capacity];
+        this.qRatios = new byte[capacity];
+        this.bodies = new byte[capacity * BODY_LENGTH];
+        this.references = new ParseTlshObj[capacity];
+        this.fromHashSet = new boolean[capacity];
+        this.groups = new int[capacity];
+    }
+
+    /**
+     * Decode a hash string.
+     *
+     * @param hashStr TLSH hash string.
+     * @return The decoded hash, or null if it is not a valid hash in the default layout.
+     */
+    static byte[] decode(String hashStr) {
+        if (hashStr == null) {
+            return null;
+        }
+
+        int start;
+        if (hashStr.length() == ENCODED_LENGTH + VERSION_PREFIX.length()
+                && hashStr.regionMatches(true, 0, VERSION_PREFIX, 0, VERSION_PREFIX.length())) {
+            start = VERSION_PREFIX.length();
+        } else if (hashStr.length() == ENCODED_LENGTH) {
+            start = 0;
+        } else {
+            return null;
+        }
+
+        byte[] decoded = new byte[DECODED_LENGTH];
+        for (int i = 0; i < DECODED_LENGTH; i++) {
+            int high = Character.digit(hashStr.charAt(start + i * 2), 16);
+            int low = Character.digit(hashStr.charAt(start + i * 2 + 1), 16);
+            if (high < 0 || low < 0) {
+                return null;
+            }
+
+            if (i < Q_RATIOS) {
+                // The checksum and length value are written with their nibbles swapped
+                decoded[i] = (byte) ((low << 4) | high);
+            } else if (i == Q_RATIOS) {
+                decoded[i] = (byte) ((high << 4) | low);
+            } else {
+                // The body is written starting with the last byte
+                decoded[DECODED_LENGTH - 1 - (i - BODY)] = (byte) ((high << 4) | low);
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Add a reference hash to the index.
+     *
+     * @param reference The hash and the information about where it comes from.
+     * @param isFromHashSet True if the hash comes from a hash set instead of the hash list.
+     * @return false if the hash is not valid and was not added.
+     */
+    boolean add(ParseTlshObj reference, boolean isFromHashSet) {
+        byte[] decoded = decode(reference.hashStr);
+        if (decoded == null) {
+            return false;
+        }
+
+        add(decoded, reference, isFromHashSet);
+        return true;
+    }
+
+    /**
+     * Add a reference hash that is already decoded to the index.
+     *
+     * @param decoded The decoded hash.
+     * @param reference The hash and the information about where it comes from.
+     * @param isFromHashSet True if the hash comes from a hash set instead of the hash list.
+     */
+    void add(byte[] decoded, ParseTlshObj reference, boolean isFromHashSet) {
+        int entry = this.size;
+        this.checksums[entry] = decoded[CHECKSUM];
+        this.lvalues[entry] = decoded[LVALUE];
+        this.qRatios[entry] = decoded[Q_RATIOS];
+        System.arraycopy(decoded, BODY, this.bodies, entry * BODY_LENGTH, BODY_LENGTH);
+        this.references[entry] = reference;
+        this.fromHashSet[entry] = isFromHashSet;
+        if (isFromHashSet) {
+            Integer group = this.hashSetGroups.get(reference.listName);
+            if (group == null) {
+                group = this.hashSetGroups.size() + 1;
+                this.hashSetGroups.put(reference.listName, group);
+            }
+            this.groups[entry] = group;
+        }
+        this.size++;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Compare a hash with every hash in the index and add the ones that meet the threshold to the hits, in the order
+     * they were added to the index. When bands have been built only the entries that share a band with the hash are
+     * compared, so hits can be missed.
+     *
+     * @param query Decoded hash of the file.
+     * @param threshold Maximum distance of a hit, unless the entries have their own thresholds.
+     * @param compareLength True to include the difference in length in the distance.
+     * @param hits List the hits are added to.
+     */
+    void findMatches(byte[] query, int threshold, boolean compareLength, List<TlshComparisonHit> hits) {
+        if (this.tree == null && this.bands == null) {
+            if (this.parallelScanMinEntries > 0 && this.size >= this.parallelScanMinEntries) {
+                hits.addAll(ForkJoinPool.commonPool().invoke(new ScanTask(query, 0, this.size, threshold,
+                        compareLength)));
+            } else if (this.packedBodies != null) {
+                scanPacked(query, TlshBodyKernel.pack(query, BODY, 1), new int[PACKED_BLOCK_SIZE], 0, this.size,
+                        threshold, compareLength, hits);
+            } else {
+                scan(query, 0, this.size, threshold, compareLength, hits);
+            }
+            return;
+        }
+
+        TlshCandidateList candidates = new TlshCandidateList();
+        if (this.bands != null) {
+            // The bands return the entries that share a band, once for every band they share
+            this.bands.search(query, candidates);
+            candidates.sortUnique();
+        } else {
+            // The tree returns every entry that can be within the threshold, in tree order
+            this.tree.search(query, searchThreshold(threshold), candidates);
+            candidates.sort();
+        }
+        for (int i = 0; i < candidates.size(); i++) {
+            int entry = candidates.get(i);
+            int entryThreshold = thresholdOf(entry, threshold);
+            int distance = boundedDistance(query, entry, compareLength, entryThreshold);
+            if (distance <= entryThreshold) {
+                hits.add(new TlshComparisonHit(distance, this.references[entry], this.fromHashSet[entry]));
+            }
+        }
+    }
+
+    /**
+     * Add the entries that are exactly the same as a hash, at distance 0, to the hits in the order they were added to
+     * the index. The exact index must have been built.
+     *
+     * @param query Decoded hash of the file.
+     * @param hits List the hits are added to.
+     * @return The number of hits added.
+     */
+    int findExact(byte[] query, List<TlshComparisonHit> hits) {
+        return findExact(query, 0, false, hits);
+    }
+
+    /**
+     * Add the entries that are exactly the same as a hash, at distance 0, to the hits in the order they were added to
+     * the index, up to k of them. These are the hits at distance 0 that findNearest() would keep. The exact index must
+     * have been built.
+     *
+     * @param query Decoded hash of the file.
+     * @param k Maximum number of hits, in total or for every hash set, or 0 for all of them.
+     * @param perHashSet True to keep k hits for every hash set, and k for the hash list, instead of k in total.
+     * @param hits List the hits are added to.
+     * @return The number of hits added.
+     */
+    int findExact(byte[] query, int k, boolean perHashSet, List<TlshComparisonHit> hits) {
+        TlshCandidateList candidates = new TlshCandidateList();
+        this.exact.search(query, candidates);
+
+        int[] groupCounts = new int[perHashSet ? this.hashSetGroups.size() + 1 : 1];
+        int found = 0;
+        for (int i = 0; i < candidates.size(); i++) {
+            int entry = candidates.get(i);
+            int group = perHashSet ? this.groups[entry] : 0;
+            if (k > 0 && groupCounts[group] >= k) {
+                continue;
+            }
+            if (boundedDistance(query, entry, this.exact.getCompareLength(), 0) == 0) {
+                hits.add(new TlshComparisonHit(0, this.references[entry], this.fromHashSet[entry]));
+                groupCounts[group]++;
+                found++;
+            }
+        }
+        this.exact.countLookup(found > 0);
+        return found;
+    }
+
+    /**
+     * Build the exact index so findExact() can find the hashes at distance 0 without scanning. It must be called
+     * after all the hashes have been added.
+     *
+     * @param compareLength True if the length is part of the distance of the job.
+     */
+    void buildExactIndex(boolean compareLength) {
+        this.exact = new TlshExactIndex(this.checksums, this.lvalues, this.qRatios, this.bodies, this.size,
+                compareLength);
+    }
+
+    /**
+     * Get the exact index.
+     *
+     * @return The exact index, or null if it has not been built.
+     */
+    TlshExactIndex getExactIndex() {
+        return this.exact;
+    }
+
+    /**
+     * Find the hashes in the index that are closest to a hash, up to k of them, and add the ones that meet the threshold
+     * to the hits, closest first. Entries with the same distance are added in the order they were added to the index.
+     * Once k hashes have been found the distance of the furthest one is used as the threshold, so the distance
+     * calculation stops early for more of the remaining hashes.
+     *
+     * @param query Decoded hash of the file.
+     * @param threshold Maximum distance of a hit.
+     * @param compareLength True to include the difference in length in the distance.
+     * @param k Maximum number of hits, in total or for every hash set.
+     * @param perHashSet True to keep k hits for every hash set, and k for the hash list, instead of k in total.
+     * @param hits List the hits are added to.
+     */
+    void findNearest(byte[] query, int threshold, boolean compareLength, int k, boolean perHashSet,
+            List<TlshComparisonHit> hits) {
+        TlshNearestHits[] nearest = new TlshNearestHits[perHashSet ? this.hashSetGroups.size() + 1 : 1];
+
+        TlshCandidateList candidates = null;
+        if (this.bands != null || this.tree != null) {
+            candidates = new TlshCandidateList();
+            if (this.bands != null) {
+                this.bands.search(query, candidates);
+                candidates.sortUnique();
+            } else {
+                this.tree.search(query, searchThreshold(threshold), candidates);
+                candidates.sort();
+            }
+        }
+
+        int count = candidates == null ? this.size : candidates.size();
+        for (int i = 0; i < count; i++) {
+            int entry = candidates == null ? i : candidates.get(i);
+            int group = perHashSet ? this.groups[entry] : 0;
+            if (nearest[group] == null) {
+                nearest[group] = new TlshNearestHits(k);
+            }
+
+            int bound = nearest[group].bound(thresholdOf(entry, threshold));
+            int distance = boundedDistance(query, entry, compareLength, bound);
+            if (distance <= bound) {
+                nearest[group].offer(distance, entry);
+            }
+        }
+
+        // Merge the groups so the hits are closest first across all of them
+        int total = 0;
+        for (TlshNearestHits group : nearest) {
+            if (group != null) {
+                total += group.size();
+            }
+        }
+        long[] sorted = new long[total];
+        int[] distances = new int[k];
+        int[] entries = new int[k];
+        int merged = 0;
+        for (TlshNearestHits group : nearest) {
+            if (group != null) {
+                int groupSize = group.drain(distances, entries);
+                for (int i = 0; i < groupSize; i++) {
+                    sorted[merged++] = ((long) distances[i] << 32) | entries[i];
+                }
+            }
+        }
+        Arrays.sort(sorted);
+        for (long hit : sorted) {
+            int entry = (int) hit;
+            hits.add(new TlshComparisonHit((int) (hit >>> 32), this.references[entry], this.fromHashSet[entry]));
+        }
+    }
+
+    /**
+     * Compare a batch of hashes with the index. When the index is scanned it is walked in tiles that fit in the
+     * processor cache, and every hash of the batch is compared with a tile before moving to the next one, so the index
+     * is read from memory once per batch instead of once per hash. The hits of every hash are the same, in the same
+     * order, as calling findMatches() for it.
+     *
+     * @param queries Decoded hashes of the files.
+     * @param threshold Maximum distance of a hit.
+     * @param compareLength True to include the difference in length in the distance.
+     * @param hits Lists the hits of every hash are added to, in the same order as the hashes.
+     */
+    void findMatches(List<byte[]> queries, int threshold, boolean compareLength, List<List<TlshComparisonHit>> hits) {
+        if (this.tree != null || this.bands != null) {
+            for (int q = 0; q < queries.size(); q++) {
+                findMatches(queries.get(q), threshold, compareLength, hits.get(q));
+            }
+            return;
+        }
+
+        long[][] packedQueries = null;
+        int[] bodyDistances = null;
+        if (this.packedBodies != null) {
+            packedQueries = new long[queries.size()][];
+            for (int q = 0; q < queries.size(); q++) {
+                packedQueries[q] = TlshBodyKernel.pack(queries.get(q), BODY, 1);
+            }
+            bodyDistances = new int[PACKED_BLOCK_SIZE];
+        }
+
+        for (int tileStart = 0; tileStart < this.size; tileStart += BATCH_TILE_SIZE) {
+            int tileEnd = Math.min(this.size, tileStart + BATCH_TILE_SIZE);
+            for (int q = 0; q < queries.size(); q++) {
+                if (packedQueries != null) {
+                    scanPacked(queries.get(q), packedQueries[q], bodyDistances, tileStart, tileEnd, threshold,
+                            compareLength, hits.get(q));
+                } else {
+                    scan(queries.get(q), tileStart, tileEnd, threshold, compareLength, hits.get(q));
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans a range of the entries for a hash, splitting it in two halves that are scanned in parallel until it is
+     * small enough. The hits of the halves are joined in order, so they are in the same order as a scan on one thread
+     * no matter how the work was split or which threads ran it.
+     */
+    private final class ScanTask extends RecursiveTask<List<TlshComparisonHit>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] query;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final boolean compareLength;
+
+        ScanTask(byte[] query, int from, int to, int threshold, boolean compareLength) {
+            this.query = query;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.compareLength = compareLength;
+        }
+
+        @Override
+        protected List<TlshComparisonHit> compute() {
+            if (this.to - this.from <= PARALLEL_CHUNK_SIZE) {
+                List<TlshComparisonHit> hits = new ArrayList<>();
+                if (packedBodies != null) {
+                    scanPacked(this.query, TlshBodyKernel.pack(this.query, BODY, 1), new int[PACKED_BLOCK_SIZE],
+                            this.from, this.to, this.threshold, this.compareLength, hits);
+                } else {
+                    scan(this.query, this.from, this.to, this.threshold, this.compareLength, hits);
+                }
+                return hits;
+            }
+
+            int middle = (this.from + this.to) >>> 1;
+            ScanTask first = new ScanTask(this.query, this.from, middle, this.threshold, this.compareLength);
+            ScanTask second = new ScanTask(this.query, middle, this.to, this.threshold, this.compareLength);
+            second.fork();
+            List<TlshComparisonHit> hits = first.compute();
+            hits.addAll(second.join());
+            return hits;
+        }
+    }
+
+    /**
+     * Give every entry its own threshold distance, used instead of the threshold passed to the searches, so hash sets
+     * with different thresholds are all searched in one pass. It must be called after all the hashes have been added.
+     *
+     * @param thresholds Threshold of every entry, in the order they were added.
+     */
+    void setEntryThresholds(int[] thresholds) {
+        this.entryThresholds = thresholds;
+        this.maxEntryThreshold = 0;
+        for (int entry = 0; entry < this.size; entry++) {
+            this.maxEntryThreshold = Math.max(this.maxEntryThreshold, thresholds[entry]);
+        }
+    }
+
+    /**
+     * Get the threshold of an entry.
+     *
+     * @param entry Index of the entry.
+     * @param threshold Threshold of the search.
+     * @return The threshold of the entry, or of the search if the entries do not have their own.
+     */
+    private int thresholdOf(int entry, int threshold) {
+        return this.entryThresholds == null ? threshold : this.entryThresholds[entry];
+    }
+
+    /**
+     * Get the threshold the tree has to search with to find the candidates of every entry.
+     */
+    private int searchThreshold(int threshold) {
+        return this.entryThresholds == null ? threshold : this.maxEntryThreshold;
+    }
+
+    /**
+     * Scan the index on the common fork-join pool for a single hash when it has at least the given number of entries,
+     * so a file compared near the end of the ingest, when the other ingest threads are idle, uses all the processors.
+     * Only scans are split, not the tree, band or batch searches.
+     *
+     * @param minEntries Minimum number of entries, 0 to always scan on the calling thread.
+     */
+    void setParallelScanMinEntries(int minEntries) {
+        this.parallelScanMinEntries = minEntries;
+    }
+
+    /**
+     * Compare a hash with a range of the entries.
+     */
+    private void scan(byte[] query, int from, int to, int threshold, boolean compareLength,
+            List<TlshComparisonHit> hits) {
+        for (int entry = from; entry < to; entry++) {
+            int entryThreshold = thresholdOf(entry, threshold);
+            int distance = boundedDistance(query, entry, compareLength, entryThreshold);
+            if (distance <= entryThreshold) {
+                hits.add(new TlshComparisonHit(distance, this.references[entry], this.fromHashSet[entry]));
+            }
+        }
+    }
+
+    /**
+     * Compare a hash with a range of the entries using the packed kernel, scoring the bodies of a block of entries per
+     * call and then adding the distance of their headers.
+     */
+    private void scanPacked(byte[] query, long[] packedQuery, int[] bodyDistances, int from, int to, int threshold,
+            boolean compareLength, List<TlshComparisonHit> hits) {
+        for (int first = from; first < to; first += PACKED_BLOCK_SIZE) {
+            int count = Math.min(PACKED_BLOCK_SIZE, to - first);
+            TlshBodyKernel.bodyDistances(packedQuery, this.packedBodies, first, count, bodyDistances);
+            for (int i = 0; i < count; i++) {
+                int entry = first + i;
+                int entryThreshold = thresholdOf(entry, threshold);
+                if (bodyDistances[i] > entryThreshold) {
+                    continue;
+                }
+                int distance = bodyDistances[i] + headerDistance(query[CHECKSUM], query[LVALUE], query[Q_RATIOS],
+                        this.checksums[entry], this.lvalues[entry], this.qRatios[entry], compareLength);
+                if (distance <= entryThreshold) {
+                    hits.add(new TlshComparisonHit(distance, this.references[entry], this.fromHashSet[entry]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Pack the bodies of the hashes into longs so scanning the index scores them with TlshBodyKernel. It is only
+     * used when there is no tree or band index, and must be called after all the hashes have been added.
+     */
+    void buildPackedBodies() {
+        this.packedBodies = TlshBodyKernel.pack(this.bodies, 0, this.size);
+    }
+
+    boolean hasPackedBodies() {
+        return this.packedBodies != null;
+    }
+
+    /**
+     * Build a vantage point tree over the hashes so findMatches() only has to check the hashes that can be within the
+     * threshold. It must be called after all the hashes have been added.
+     */
+    void buildTree() {
+        this.tree = new TlshVantagePointTree(this.bodies, this.size);
+    }
+
+    boolean hasTree() {
+        return this.tree != null;
+    }
+
+    /**
+     * Build a band index over the hashes so findMatches() only has to check the hashes that share a band with the
+     * query. This takes precedence over the tree. It must be called after all the hashes have been added.
+     *
+     * @param bandCount Number of bands the body is split into.
+     */
+    void buildBands(int bandCount) {
+        this.bands = new TlshBandIndex(this.bodies, this.size, bandCount);
+    }
+
+    boolean hasBands() {
+        return this.bands != null;
+    }
+
+    /**
+     * Calculate the distance between a hash and an entry of the index.
+     *
+     * @param query Decoded hash of the file.
+     * @param entry Index of the entry.
+     * @param compareLength True to include the difference in length in the distance.
+     * @return The TLSH distance.
+     */
+    int distance(byte[] query, int entry, boolean compareLength) {
+        int diff = headerDistance(query[CHECKSUM], query[LVALUE], query[Q_RATIOS],
+                this.checksums[entry], this.lvalues[entry], this.qRatios[entry], compareLength);
+
+        int bodyStart = entry * BODY_LENGTH;
+        for (int i = 0; i < BODY_LENGTH; i++) {
+            diff += BODY_DISTANCE_TABLE[((query[BODY + i] & 0xFF) << 8) | (this.bodies[bodyStart + i] & 0xFF)];
+        }
+        return diff;
+    }
+
+    /**
+     * Calculate the distance between a hash and an entry of the index, stopping as soon as it is known to be above
+     * the threshold. The header is scored first, the length value and Q ratios can push the distance past the
+     * threshold on their own, and then the body is added a few bytes at a time.
+     *
+     * @param query Decoded hash of the file.
+     * @param entry Index of the entry.
+     * @param compareLength True to include the difference in length in the distance.
+     * @param threshold Maximum distance of a hit.
+     * @return The TLSH distance if it is at most the threshold, otherwise some value above the threshold.
+     */
+    int boundedDistance(byte[] query, int entry, boolean compareLength, int threshold) {
+        int diff = 0;
+        if (compareLength) {
+            diff = lengthDistance(query[LVALUE], this.lvalues[entry]);
+            if (diff > threshold) {
+                return diff;
+            }
+        }
+
+        diff += qRatiosDistance(query[Q_RATIOS], this.qRatios[entry]);
+        if (query[CHECKSUM] != this.checksums[entry]) {
+            diff++;
+        }
+        if (diff > threshold) {
+            return diff;
+        }
+
+        int bodyStart = entry * BODY_LENGTH;
+        for (int i = 0; i < BODY_LENGTH; i += EARLY_EXIT_STRIDE) {
+            for (int j = i; j < i + EARLY_EXIT_STRIDE; j++) {
+                diff += BODY_DISTANCE_TABLE[((query[BODY + j] & 0xFF) << 8) | (this.bodies[bodyStart + j] & 0xFF)];
+            }
+            if (diff > threshold) {
+                return diff;
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Calculate the distance between two decoded hashes.
+     *
+     * @param a First decoded hash.
+     * @param b Second decoded hash.
+     * @param compareLength True to include the difference in length in the distance.
+     * @return The TLSH distance.
+     */
+    static int distance(byte[] a, byte[] b, boolean compareLength) {
+        int diff = headerDistance(a[CHECKSUM], a[LVALUE], a[Q_RATIOS], b[CHECKSUM], b[LVALUE], b[Q_RATIOS],
+                compareLength);
+        for (int i = BODY; i < DECODED_LENGTH; i++) {
+            diff += BODY_DISTANCE_TABLE[((a[i] & 0xFF) << 8) | (b[i] & 0xFF)];
+        }
+        return diff;
+    }
+
+    /**
+     * Calculate the part of the distance that comes from the checksum, length value and Q ratios.
+     */
+    static int headerDistance(byte checksumA, byte lvalueA, byte qRatiosA, byte checksumB, byte lvalueB,
+            byte qRatiosB, boolean compareLength) {
+        int diff = 0;
+
+        if (compareLength) {
+            diff += lengthDistance(lvalueA, lvalueB);
+        }
+
+        diff += qRatiosDistance(qRatiosA, qRatiosB);
+
+        if (checksumA != checksumB) {
+            diff++;
+        }
+        return diff;
+    }
+
+    /**
+     * Calculate the part of the distance that comes from the length values.
+     */
+    private static int lengthDistance(byte lvalueA, byte lvalueB) {
+        int lvalueDiff = modDiff(lvalueA & 0xFF, lvalueB & 0xFF, 256);
+        return lvalueDiff <= 1 ? lvalueDiff : lvalueDiff * RANGE_STEP;
+    }
+
+    /**
+     * Calculate the part of the distance that comes from the Q ratios.
+     */
+    private static int qRatiosDistance(byte qRatiosA, byte qRatiosB) {
+        int q1Diff = modDiff((qRatiosA >> 4) & 0xF, (qRatiosB >> 4) & 0xF, 16);
+        int q2Diff = modDiff(qRatiosA & 0xF, qRatiosB & 0xF, 16);
+        return (q1Diff <= 1 ? q1Diff : (q1Diff - 1) * RANGE_STEP) + (q2Diff <= 1 ? q2Diff : (q2Diff - 1) * RANGE_STEP);
+    }
+
+    /**
+     * Calculate the distance between two body bytes. Each byte holds four 2 bit bucket codes, codes that differ by 3
+     * count as 6.
+     */
+    static int bodyByteDistance(int a, int b) {
+        int diff = 0;
+        for (int shift = 0; shift < 8; shift += 2) {
+            int codeDiff = Math.abs(((a >> shift) & 3) - ((b >> shift) & 3));
+            diff += codeDiff == 3 ? 6 : codeDiff;
+        }
+        return diff;
+    }
+
+    /**
+     * Distance between two values on a circle of the given size.
+     */
+    private static int modDiff(int x, int y, int range) {
+        int direct = Math.abs(x - y);
+        return Math.min(direct, range - direct);
+    }
+
+    /**
+     * Estimate the number of bytes of memory held by the index, including the reference hash objects and their
+     * strings, for the job statistics.
+     *
+     * @return Estimated size in bytes.
+     */
+    long getEstimatedSize() {
+        // Flat arrays, plus an 8 byte reference, a boolean and a group per entry
+        long bytes = (long) this.checksums.length * (3 + BODY_LENGTH + 8 + 1 + 4);
+        if (this.tree != null) {
+            // Order and radius of every entry
+            bytes += (long) this.size * 8;
+        }
+        if (this.packedBodies != null) {
+            bytes += (long) this.packedBodies.length * 8;
+        }
+        if (this.exact != null) {
+            bytes += (long) this.size * 8;
+        }
+        if (this.entryThresholds != null) {
+            bytes += (long) this.entryThresholds.length * 4;
+        }
+        if (this.bands != null) {
+            // Sorted entries of every band
+            bytes += (long) this.size * 4 * this.bands.getBandCount();
+        }
+        for (int entry = 0; entry < this.size; entry++) {
+            ParseTlshObj reference = this.references[entry];
+            // Object header and three fields, and the strings (the list name is usually shared)
+            bytes += 32 + estimatedStringSize(reference.hashStr) + estimatedStringSize(reference.comment);
+        }
+        return bytes;
+    }
+
+    private static long estimatedStringSize(String str) {
+        return str == null ? 0 : 40 + 2L * str.length();
+    }
+
+    /**
+     * Get the reference hash of an entry.
+     */
+    ParseTlshObj getReference(int entry) {
+        return this.references[entry];
+    }
+
+    /**
+     * Checks if an entry comes from a hash set instead of the hash list.
+     */
+    boolean isFromHashSet(int entry) {
+        return this.fromHashSet[entry];
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+/**
+ * Describes which parts of a very large file are read when it is hashed in sampled mode. The file is split into a fixed
+ * number of blocks: the first block of the file, the last block of the file, and blocks evenly spaced between them. The
+ * blocks only depend on the file size and the policy, so the same file always gives the same sampled hash and sampled
+ * hashes made with the same policy can be compared with each other.
+ */
+public class TlshSamplingPolicy {
+
+    // Changes to how the blocks are picked must change the version so old and new sampled hashes can be told apart
+    private static final int POLICY_VERSION = 1;
+
+    private final long sizeThreshold;
+    private final int blockSize;
+    private final int blockCount;
+
+    /**
+     * Create a sampling policy.
+     *
+     * @param sizeThreshold Files larger than this many bytes are sampled.
+     * @param byteBudget Maximum number of bytes read from a sampled file.
+     * @param blockSize Number of bytes in each sampled block.
+     */
+    TlshSamplingPolicy(long sizeThreshold, long byteBudget, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than 0");
+        }
+
+        // The budget can never be more than what TLSH can hash and always allows the head and tail blocks
+        long budget = Math.min(byteBudget, TlshDigestCreator.MAX_DATA_LENGTH);
+        this.blockSize = blockSize;
+        this.blockCount = (int) Math.max(2, Math.min(Integer.MAX_VALUE, budget / blockSize));
+        this.sizeThreshold = Math.max(sizeThreshold, (long) this.blockSize * this.blockCount);
+    }
+
+    /**
+     * Checks if a file of this size gets sampled instead of read completely.
+     *
+     * @param fileSize Size of the file in bytes.
+     * @return true if the file should be sampled.
+     */
+    boolean appliesTo(long fileSize) {
+        return fileSize > this.sizeThreshold;
+    }
+
+    /**
+     * Get the number of blocks read from a sampled file.
+     */
+    int getBlockCount() {
+        return this.blockCount;
+    }
+
+    /**
+     * Get the number of bytes in each block.
+     */
+    int getBlockSize() {
+        return this.blockSize;
+    }
+
+    /**
+     * Get the offset of a block in a sampled file. Block 0 is the start of the file, the last block ends at the end of
+     * the file and the rest are evenly spaced between them, so the blocks never overlap.
+     *
+     * @param fileSize Size of the file in bytes, it must be one that appliesTo() accepts.
+     * @param block Index of the block, from 0 to getBlockCount() - 1.
+     * @return Offset of the first byte of the block.
+     */
+    long getBlockOffset(long fileSize, int block) {
+        long lastOffset = fileSize - this.blockSize;
+        // Split the multiplication so large files and many blocks can not overflow
+        long stride = lastOffset / (this.blockCount - 1);
+        long remainder = lastOffset % (this.blockCount - 1);
+        return stride * block + (remainder * block) / (this.blockCount - 1);
+    }
+
+    /**
+     * Get a description of the policy to store with sampled hashes, so it is clear how the hash was made and which
+     * other hashes it can be compared with.
+     *
+     * @return Policy description.
+     */
+    String getDescription() {
+        return "Sampled TLSH v" + POLICY_VERSION + ": " + this.blockCount + " blocks of " + this.blockSize
+                + " bytes (head, tail and evenly spaced)";
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+/**
+ * A vantage point tree over the bodies of the hashes in a TlshReferenceIndex, used to find the hashes within a distance
+ * of a file without comparing it with every hash.
+ *
+ * The TLSH distance itself is not a metric (a code difference of 3 counts as 6, and the header differences jump in
+ * steps of 12), so the triangle inequality can not be used with it directly. The tree is built on the L1 distance
+ * between the 2 bit bucket codes of the bodies instead. That is a metric, and it is never larger than the TLSH
+ * distance, so every hash within the threshold TLSH distance is also within the threshold L1 distance. The tree finds
+ * those candidates exactly and the index then checks their real TLSH distance.
+ *
+ * The tree is stored as an order of the entries and a radius per node. The node covering the range [lo, hi) of the
+ * order has its vantage point at lo, the entries closer than its radius in [lo + 1, mid) and the others in [mid, hi),
+ * where mid = (lo + 1 + hi) / 2. Small ranges are leaves that are scanned.
+ */
+public class TlshVantagePointTree {
+
+    // Ranges up to this size are scanned instead of split
+    private static final int LEAF_SIZE = 16;
+
+    // L1 distance between the four bucket codes of every pair of body bytes
+    private static final byte[] L1_TABLE = new byte[256 * 256];
+
+    static {
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                int diff = 0;
+                for (int shift = 0; shift < 8; shift += 2) {
+                    diff += Math.abs(((a >> shift) & 3) - ((b >> shift) & 3));
+                }
+                L1_TABLE[(a << 8) | b] = (byte) diff;
+            }
+        }
+    }
+
+    private final byte[] bodies;
+    private final int[] order;
+    private final int[] radius;
+
+    /**
+     * Build the tree.
+     *
+     * @param bodies Bodies of the entries, TlshReferenceIndex.BODY_LENGTH bytes each.
+     * @param size Number of entries.
+     */
+    TlshVantagePointTree(byte[] bodies, int size) {
+        this.bodies = bodies;
+        this.order = new int[size];
+        this.radius = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.order[i] = i;
+        }
+
+        // Distance to the vantage point in the high bits and the entry in the low bits, so sorting keeps them together
+        long[] keys = new long[size];
+        build(0, size, keys);
+    }
+
+    /**
+     * Build the node covering [lo, hi) of the order, and the nodes below it.
+     */
+    private void build(int lo, int hi, long[] keys) {
+        while (hi - lo > LEAF_SIZE) {
+            int vantagePoint = this.order[lo];
+            for (int i = lo + 1; i < hi; i++) {
+                keys[i] = ((long) entryDistance(vantagePoint, this.order[i]) << 32) | this.order[i];
+            }
+
+            int mid = (lo + 1 + hi) >>> 1;
+            select(keys, lo + 1, hi - 1, mid);
+            for (int i = lo + 1; i < hi; i++) {
+                this.order[i] = (int) keys[i];
+            }
+            this.radius[lo] = (int) (keys[mid] >>> 32);
+
+            // Recurse into the inside and loop on the outside so the stack only grows with the depth of the tree
+            build(lo + 1, mid, keys);
+            lo = mid;
+        }
+    }
+
+    /**
+     * Partially sort the keys so the key at k is the one that would be there if [left, right] was sorted, with smaller
+     * keys before it and larger keys after it.
+     */
+    private static void select(long[] keys, int left, int right, int k) {
+        while (left < right) {
+            long pivot = keys[(left + right) >>> 1];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    long tmp = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Find every entry whose body is within an L1 distance of the query body.
+     *
+     * @param query Decoded hash of the file.
+     * @param maxDistance Maximum L1 distance.
+     * @param candidates List the entries are added to.
+     */
+    void search(byte[] query, int maxDistance, TlshCandidateList candidates) {
+        search(query, maxDistance, 0, this.order.length, candidates);
+    }
+
+    private void search(byte[] query, int maxDistance, int lo, int hi, TlshCandidateList candidates) {
+        while (hi - lo > LEAF_SIZE) {
+            int vantagePoint = this.order[lo];
+            int distance = queryDistance(query, vantagePoint);
+            if (distance <= maxDistance) {
+                candidates.add(vantagePoint);
+            }
+
+            // Only search the sides of the node that can hold entries within the distance
+            int mid = (lo + 1 + hi) >>> 1;
+            boolean searchInside = distance - maxDistance <= this.radius[lo];
+            boolean searchOutside = distance + maxDistance >= this.radius[lo];
+            if (searchInside && searchOutside) {
+                search(query, maxDistance, lo + 1, mid, candidates);
+                lo = mid;
+            } else if (searchInside) {
+                hi = mid;
+                lo = lo + 1;
+            } else {
+                lo = mid;
+            }
+        }
+
+        for (int i = lo; i < hi; i++) {
+            int entry = this.order[i];
+            if (queryDistance(query, entry) <= maxDistance) {
+                candidates.add(entry);
+            }
+        }
+    }
+
+    private int entryDistance(int a, int b) {
+        int startA = a * TlshReferenceIndex.BODY_LENGTH;
+        int startB = b * TlshReferenceIndex.BODY_LENGTH;
+        int diff = 0;
+        for (int i = 0; i < TlshReferenceIndex.BODY_LENGTH; i++) {
+            diff += L1_TABLE[((this.bodies[startA + i] & 0xFF) << 8) | (this.bodies[startB + i] & 0xFF)];
+        }
+        return diff;
+    }
+
+    private int queryDistance(byte[] query, int entry) {
+        int start = entry * TlshReferenceIndex.BODY_LENGTH;
+        int diff = 0;
+        for (int i = 0; i < TlshReferenceIndex.BODY_LENGTH; i++) {
+            diff += L1_TABLE[((query[TlshReferenceIndex.BODY + i] & 0xFF) << 8) | (this.bodies[start + i] & 0xFF)];
+        }
+        return diff;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Used to test the MD5 and SHA-256 calculated alongside the TLSH hash.
+ */
+public class CryptographicDigestsTest {
+
+    private static final String ABC_MD5 = "900150983cd24fb0d6963f7d28e17f72";
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    /**
+     * Ensure that the hashes match the standard test vectors when the data is input in parts.
+     */
+    @Test
+    public void testKnownHashes() {
+        System.out.println("** CryptographicDigestsTest: testKnownHashes()");
+        byte[] data = "xabcx".getBytes(StandardCharsets.US_ASCII);
+        CryptographicDigests digests = new CryptographicDigests();
+
+        digests.update(data, 1, 1);
+        digests.update(data, 2, 2);
+        digests.finish();
+
+        assertEquals(ABC_MD5, digests.getMd5Hash());
+        assertEquals(ABC_SHA256, digests.getSha256Hash());
+    }
+
+    /**
+     * Ensure that data from the previous file does not change the hashes of the next file.
+     */
+    @Test
+    public void testReset() {
+        System.out.println("** CryptographicDigestsTest: testReset()");
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+        CryptographicDigests digests = new CryptographicDigests();
+
+        digests.update(data, 0, 2);
+        digests.reset();
+        digests.update(data, 0, data.length);
+        digests.finish();
+        assertEquals(ABC_MD5, digests.getMd5Hash());
+
+        // Finishing also resets, so the same object can hash the next file
+        digests.update(data, 0, data.length);
+        digests.finish();
+        assertEquals(ABC_SHA256, digests.getSha256Hash());
+    }
+
+    /**
+     * Ensure that the hex strings are lower case and keep leading zeros.
+     */
+    @Test
+    public void testToHex() {
+        System.out.println("** CryptographicDigestsTest: testToHex()");
+
+        assertEquals("000fa0ff", CryptographicDigests.toHex(new byte[]{0, 15, (byte) 0xa0, (byte) 0xff}));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Used to test the read buffer pool that is shared by the ingest threads.
+ */
+public class ReadBufferPoolTest {
+
+    /**
+     * Ensure that the first borrow allocates a buffer of the configured size and counts as a miss.
+     */
+    @Test
+    public void testBorrowFromEmptyPool() {
+        System.out.println("** ReadBufferPoolTest: testBorrowFromEmptyPool()");
+        ReadBufferPool pool = new ReadBufferPool(2, 64);
+
+        byte[] buf = pool.borrow();
+        assertEquals(64, buf.length);
+        assertEquals(0, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    /**
+     * Ensure that a buffer that was given back is handed out again instead of allocating a new one.
+     */
+    @Test
+    public void testBufferIsReused() {
+        System.out.println("** ReadBufferPoolTest: testBufferIsReused()");
+        ReadBufferPool pool = new ReadBufferPool(2, 64);
+
+        byte[] first = pool.borrow();
+        pool.giveBack(first);
+        byte[] second = pool.borrow();
+
+        assertSame(first, second);
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getMissCount());
+    }
+
+    /**
+     * Ensure that the pool never keeps more idle buffers than its size.
+     */
+    @Test
+    public void testPoolIsBounded() {
+        System.out.println("** ReadBufferPoolTest: testPoolIsBounded()");
+        ReadBufferPool pool = new ReadBufferPool(2, 64);
+
+        byte[] a = pool.borrow();
+        byte[] b = pool.borrow();
+        byte[] c = pool.borrow();
+        pool.giveBack(a);
+        pool.giveBack(b);
+        pool.giveBack(c);
+
+        assertEquals(2, pool.getIdleCount());
+    }
+
+    /**
+     * Ensure that buffers of the wrong size are not accepted back into the pool.
+     */
+    @Test
+    public void testWrongSizeIsNotPooled() {
+        System.out.println("** ReadBufferPoolTest: testWrongSizeIsNotPooled()");
+        ReadBufferPool pool = new ReadBufferPool(2, 64);
+
+        pool.giveBack(new byte[32]);
+        pool.giveBack(null);
+
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    /**
+     * Ensure that a pool cannot be created without any room for buffers.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPoolSize() {
+        System.out.println("** ReadBufferPoolTest: testInvalidPoolSize()");
+        new ReadBufferPool(0, 64);
+    }
+}
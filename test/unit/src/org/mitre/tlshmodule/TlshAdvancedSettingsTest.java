@@ -0,0 +1,66 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Used to test reading the advanced options from the module settings file.
+ */
+public class TlshAdvancedSettingsTest {
+
+    /**
+     * Ensure that booleans, numbers and lists are set from their names.
+     */
+    @Test
+    public void testOptionsAreApplied() {
+        System.out.println("** TlshAdvancedSettingsTest: testOptionsAreApplied()");
+        Map<String, String> properties = new HashMap<>();
+        properties.put("useBandIndex", "true");
+        properties.put("bandCount", " 8 ");
+        properties.put("maxFileSize", "1048576");
+        properties.put("allowedExtensions", "exe, dll,,");
+        properties.put("useDigestCache", "FALSE");
+
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        TlshAdvancedSettings.apply(properties, settings);
+        assertTrue(settings.getUseBandIndex());
+        assertEquals(8, settings.getBandCount());
+        assertEquals(1048576L, settings.getMaxFileSize());
+        assertArrayEquals(new String[]{"exe", "dll"}, settings.getAllowedExtensions());
+        assertFalse(settings.getUseDigestCache());
+    }
+
+    /**
+     * Ensure that unknown options and values that can not be parsed are ignored and keep the default.
+     */
+    @Test
+    public void testInvalidOptionsAreIgnored() {
+        System.out.println("** TlshAdvancedSettingsTest: testInvalidOptionsAreIgnored()");
+        Map<String, String> properties = new HashMap<>();
+        properties.put("noSuchOption", "true");
+        properties.put("useBandIndex", "yes");
+        properties.put("bandCount", "many");
+        properties.put("useExactMatchFastPath", "true");
+
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        TlshAdvancedSettings.apply(properties, settings);
+        assertFalse(settings.getUseBandIndex());
+        assertEquals(TlshModuleIngestJobSettings.DEFAULT_BAND_COUNT, settings.getBandCount());
+        assertTrue(settings.getUseExactMatchFastPath());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Recall and query time of the band index against scanning the TlshReferenceIndex. This is not a unit test and is not
+ * run with them; run its main method from the IDE (Run File) with the test classpath.
+ *
+ * The corpus is made of families of generated files: every family starts from a file of random words and its members
+ * are copies of it with spans of the data replaced, inserted or deleted. The hashes are calculated with
+ * TlshDigestCreator, so they have the same structure as the hashes of real files. One edited copy of every family is
+ * used as a query and the rest are the references. The recall is the share of the hits of the exact scan that the band
+ * index also finds.
+ *
+ * Usage: TlshBandIndexBenchmark [threshold] [number of families]
+ */
+public class TlshBandIndexBenchmark {
+
+    private static final int FAMILY_SIZE = 10;
+    private static final int FILE_SIZE = 16 * 1024;
+    private static final int VOCABULARY_SIZE = 2000;
+    private static final int[] BAND_COUNTS = {8, 11, 16, 32};
+
+    public static void main(String[] args) {
+        int threshold = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int families = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        Random random = new Random(families);
+        byte[][] vocabulary = new byte[VOCABULARY_SIZE][];
+        for (int i = 0; i < VOCABULARY_SIZE; i++) {
+            vocabulary[i] = new byte[2 + random.nextInt(9)];
+            for (int j = 0; j < vocabulary[i].length; j++) {
+                vocabulary[i][j] = (byte) ('a' + random.nextInt(26));
+            }
+        }
+
+        List<byte[]> references = new ArrayList<>();
+        List<byte[]> queries = new ArrayList<>();
+        TlshDigestCreator creator = new TlshDigestCreator();
+        for (int family = 0; family < families; family++) {
+            byte[] base = randomFile(random, vocabulary);
+            for (int member = 0; member < FAMILY_SIZE; member++) {
+                byte[] data = member == 0 ? base : edit(random, vocabulary, base);
+                creator.reset();
+                creator.update(data, 0, data.length);
+                byte[] decoded = TlshReferenceIndex.decode(creator.getEncoded());
+                if (member == FAMILY_SIZE - 1) {
+                    queries.add(decoded);
+                } else {
+                    references.add(decoded);
+                }
+            }
+        }
+
+        TlshReferenceIndex scanned = newIndex(references);
+        List<List<TlshComparisonHit>> expected = new ArrayList<>();
+        long scanNanos = TlshTestHelper.timeQueries(scanned, queries, threshold, expected);
+        int expectedHits = 0;
+        for (List<TlshComparisonHit> hits : expected) {
+            expectedHits += hits.size();
+        }
+
+        System.out.printf("Threshold %d, %d references, %d queries, %d hits from the scan, %.1f us per scan%n",
+                threshold, references.size(), queries.size(), expectedHits, scanNanos / 1000.0 / queries.size());
+        System.out.printf("%6s %10s %12s %10s %12s %10s%n", "bands", "build ms", "query us", "speedup", "candidates",
+                "recall");
+        for (int bandCount : BAND_COUNTS) {
+            TlshReferenceIndex banded = newIndex(references);
+            long buildStart = System.nanoTime();
+            banded.buildBands(bandCount);
+            long buildNanos = System.nanoTime() - buildStart;
+
+            List<List<TlshComparisonHit>> actual = new ArrayList<>();
+            long bandNanos = TlshTestHelper.timeQueries(banded, queries, threshold, actual);
+
+            // The band index only misses hits, every hit it finds is also found by the scan
+            int foundHits = 0;
+            for (List<TlshComparisonHit> hits : actual) {
+                foundHits += hits.size();
+            }
+            TlshBandIndex bands = new TlshBandIndex(bodiesOf(references), references.size(), bandCount);
+            TlshCandidateList candidates = new TlshCandidateList();
+            long candidateCount = 0;
+            for (byte[] query : queries) {
+                candidates.clear();
+                bands.search(query, candidates);
+                candidates.sortUnique();
+                candidateCount += candidates.size();
+            }
+
+            System.out.printf("%6d %10d %12.1f %9.1fx %12.1f %9.1f%%%n", bandCount, buildNanos / 1000000,
+                    bandNanos / 1000.0 / queries.size(), (double) scanNanos / bandNanos,
+                    (double) candidateCount / queries.size(),
+                    expectedHits == 0 ? 100.0 : 100.0 * foundHits / expectedHits);
+        }
+        System.out.println(TlshTestHelper.blackhole == 0 ? "" : " ");
+    }
+
+    private static TlshReferenceIndex newIndex(List<byte[]> references) {
+        ParseTlshObj reference = new ParseTlshObj("benchmark", "");
+        TlshReferenceIndex index = new TlshReferenceIndex(references.size());
+        for (byte[] decoded : references) {
+            index.add(decoded, reference, true);
+        }
+        return index;
+    }
+
+    private static byte[] bodiesOf(List<byte[]> references) {
+        byte[] bodies = new byte[references.size() * TlshReferenceIndex.BODY_LENGTH];
+        for (int i = 0; i < references.size(); i++) {
+            System.arraycopy(references.get(i), TlshReferenceIndex.BODY, bodies, i * TlshReferenceIndex.BODY_LENGTH,
+                    TlshReferenceIndex.BODY_LENGTH);
+        }
+        return bodies;
+    }
+
+    /**
+     * Generate a file of random words separated by spaces and new lines.
+     */
+    private static byte[] randomFile(Random random, byte[][] vocabulary) {
+        byte[] data = new byte[FILE_SIZE];
+        int length = 0;
+        while (length < FILE_SIZE) {
+            byte[] word = vocabulary[random.nextInt(vocabulary.length)];
+            int copied = Math.min(word.length, FILE_SIZE - length);
+            System.arraycopy(word, 0, data, length, copied);
+            length += copied;
+            if (length < FILE_SIZE) {
+                data[length++] = (byte) (random.nextInt(8) == 0 ? '\n' : ' ');
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Copy a file and replace, insert or delete a few spans of it.
+     */
+    private static byte[] edit(Random random, byte[][] vocabulary, byte[] base) {
+        byte[] data = base.clone();
+        int edits = 1 + random.nextInt(8);
+        for (int i = 0; i < edits; i++) {
+            byte[] span = randomFile(random, vocabulary);
+            int spanLength = 16 + random.nextInt(512);
+            int position = random.nextInt(data.length - spanLength);
+            switch (random.nextInt(3)) {
+                case 0:
+                    System.arraycopy(span, 0, data, position, spanLength);
+                    break;
+                case 1:
+                    byte[] inserted = new byte[data.length + spanLength];
+                    System.arraycopy(data, 0, inserted, 0, position);
+                    System.arraycopy(span, 0, inserted, position, spanLength);
+                    System.arraycopy(data, position, inserted, position + spanLength, data.length - position);
+                    data = inserted;
+                    break;
+                default:
+                    byte[] deleted = new byte[data.length - spanLength];
+                    System.arraycopy(data, 0, deleted, 0, position);
+                    System.arraycopy(data, position + spanLength, deleted, position, deleted.length - position);
+                    data = deleted;
+                    break;
+            }
+        }
+        return data;
+    }
+}
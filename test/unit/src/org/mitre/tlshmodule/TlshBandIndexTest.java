@@ -0,0 +1,114 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the band index, which only has to find a subset of the hits of scanning the reference index.
+ */
+public class TlshBandIndexTest {
+
+    private static TlshReferenceIndex newIndex(List<byte[]> references) {
+        TlshReferenceIndex index = new TlshReferenceIndex(references.size());
+        for (int i = 0; i < references.size(); i++) {
+            index.add(references.get(i), new ParseTlshObj(Integer.toString(i)), false);
+        }
+        return index;
+    }
+
+    /**
+     * Ensure that a hash that is in the index is always found, whatever the number of bands.
+     */
+    @Test
+    public void testFindsIdenticalHashes() {
+        System.out.println("** TlshBandIndexTest: testFindsIdenticalHashes()");
+        Random random = new Random(21);
+        List<byte[]> references = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            references.add(TlshTestHelper.randomDecoded(random));
+        }
+
+        for (int bandCount = 1; bandCount <= 40; bandCount++) {
+            TlshReferenceIndex index = newIndex(references);
+            index.buildBands(bandCount);
+            assertTrue(index.hasBands());
+            for (int i = 0; i < references.size(); i += 25) {
+                List<TlshComparisonHit> hits = new ArrayList<>();
+                index.findMatches(references.get(i), 0, true, hits);
+                assertEquals(1, hits.size());
+                assertEquals(0, hits.get(0).distance);
+            }
+        }
+    }
+
+    /**
+     * Ensure that the band index only returns hits that the scan also finds, in the same order and with the same
+     * distances, and that it finds the hashes that differ from the query in a single band.
+     */
+    @Test
+    public void testHitsAreSubsetOfScan() {
+        System.out.println("** TlshBandIndexTest: testHitsAreSubsetOfScan()");
+        Random random = new Random(22);
+        List<byte[]> references = new ArrayList<>();
+        byte[] query = TlshTestHelper.randomDecoded(random);
+        for (int i = 0; i < 2000; i++) {
+            byte[] decoded = TlshTestHelper.randomDecoded(random);
+            if (i % 4 == 0) {
+                // Only the first 4 bytes of the body differ from the query, so 7 of the 8 bands are shared
+                decoded = query.clone();
+                for (int j = 0; j < 4; j++) {
+                    decoded[TlshReferenceIndex.BODY + j] = (byte) random.nextInt(256);
+                }
+            }
+            references.add(decoded);
+        }
+        TlshReferenceIndex scanned = newIndex(references);
+        TlshReferenceIndex banded = newIndex(references);
+        banded.buildBands(8);
+
+        List<TlshComparisonHit> expected = new ArrayList<>();
+        List<TlshComparisonHit> actual = new ArrayList<>();
+        scanned.findMatches(query, 2000, false, expected);
+        banded.findMatches(query, 2000, false, actual);
+
+        assertEquals(2000, expected.size());
+        assertEquals(500, actual.size());
+        int hit = 0;
+        for (TlshComparisonHit expectedHit : expected) {
+            if (hit < actual.size() && expectedHit.distance == actual.get(hit).distance
+                    && expectedHit.compObj.hashStr.equals(actual.get(hit).compObj.hashStr)) {
+                hit++;
+            }
+        }
+        assertEquals(actual.size(), hit);
+    }
+
+    /**
+     * Ensure that the band count is clamped to the range the index supports.
+     */
+    @Test
+    public void testBandCountIsClamped() {
+        System.out.println("** TlshBandIndexTest: testBandCountIsClamped()");
+        byte[] bodies = new byte[TlshReferenceIndex.BODY_LENGTH];
+
+        assertEquals(TlshBandIndex.MIN_BAND_COUNT, new TlshBandIndex(bodies, 1, 1).getBandCount());
+        assertEquals(11, new TlshBandIndex(bodies, 1, 11).getBandCount());
+        assertEquals(TlshBandIndex.MAX_BAND_COUNT, new TlshBandIndex(bodies, 1, 100).getBandCount());
+    }
+}
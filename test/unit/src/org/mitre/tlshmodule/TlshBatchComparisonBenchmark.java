@@ -0,0 +1,84 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Time of comparing files with a large TlshReferenceIndex one at a time and in batches of different sizes. This is not
+ * a unit test and is not run with them; run its main method from the IDE (Run File) with the test classpath. The
+ * index is much larger than the processor cache, so comparing one file at a time reads all of it from memory for
+ * every file, while a batch reads it once.
+ *
+ * Usage: TlshBatchComparisonBenchmark [number of hashes] [threshold]
+ */
+public class TlshBatchComparisonBenchmark {
+
+    private static final int FILES = 256;
+    private static final int[] BATCH_SIZES = {1, 8, 32, 64, 128};
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        int threshold = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        Random random = new Random(size);
+        ParseTlshObj reference = new ParseTlshObj("benchmark", "");
+        TlshReferenceIndex index = new TlshReferenceIndex(size);
+        for (int i = 0; i < size; i++) {
+            index.add(TlshTestHelper.randomDecoded(random), reference, true);
+        }
+        List<byte[]> files = new ArrayList<>();
+        for (int i = 0; i < FILES; i++) {
+            files.add(TlshTestHelper.randomDecoded(random));
+        }
+
+        System.out.printf("%d hashes, %d files, threshold %d%n", size, FILES, threshold);
+        for (boolean packed : new boolean[]{false, true}) {
+            if (packed) {
+                index.buildPackedBodies();
+            }
+            System.out.printf("%s%n%10s %14s %10s%n", packed ? "Packed kernel" : "Byte pair table", "batch",
+                    "us per file", "speedup");
+            double single = 0;
+            for (int batchSize : BATCH_SIZES) {
+                // Warm up, then time
+                compare(index, files, batchSize, threshold);
+                long start = System.nanoTime();
+                compare(index, files, batchSize, threshold);
+                double perFile = (System.nanoTime() - start) / 1000.0 / FILES;
+                if (batchSize == 1) {
+                    single = perFile;
+                }
+                System.out.printf("%10d %14.1f %9.2fx%n", batchSize, perFile, single / perFile);
+            }
+        }
+        System.out.println(TlshTestHelper.blackhole == 0 ? "" : " ");
+    }
+
+    private static void compare(TlshReferenceIndex index, List<byte[]> files, int batchSize, int threshold) {
+        for (int first = 0; first < files.size(); first += batchSize) {
+            List<byte[]> batch = files.subList(first, Math.min(files.size(), first + batchSize));
+            List<List<TlshComparisonHit>> hits = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                hits.add(new ArrayList<TlshComparisonHit>());
+            }
+            index.findMatches(batch, threshold, false, hits);
+            for (List<TlshComparisonHit> fileHits : hits) {
+                TlshTestHelper.blackhole += fileHits.size();
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Query time of scanning the TlshReferenceIndex with the byte pair table and with the packed body kernel. This is not
+ * a unit test and is not run with them; run its main method from the IDE (Run File) with the test classpath, on the
+ * machine the ingest runs on, since the speed of the kernel depends on the processor having a POPCNT instruction.
+ * Half of the hashes are close to the queries, so both the early exit of the table and the body distance of the
+ * kernel are exercised.
+ *
+ * Usage: TlshBodyKernelBenchmark [number of hashes] [threshold]...
+ */
+public class TlshBodyKernelBenchmark {
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int[] thresholds = {30, 100, 300};
+        if (args.length > 1) {
+            thresholds = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                thresholds[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Random random = new Random(size);
+        byte[] center = new byte[TlshReferenceIndex.DECODED_LENGTH];
+        random.nextBytes(center);
+        ParseTlshObj reference = new ParseTlshObj("benchmark", "");
+        TlshReferenceIndex scanned = new TlshReferenceIndex(size);
+        TlshReferenceIndex packed = new TlshReferenceIndex(size);
+        for (int i = 0; i < size; i++) {
+            byte[] decoded = i % 2 == 0 ? mutate(random, center, 8) : TlshTestHelper.randomDecoded(random);
+            scanned.add(decoded, reference, true);
+            packed.add(decoded, reference, true);
+        }
+        packed.buildPackedBodies();
+
+        byte[][] queries = new byte[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = mutate(random, center, 4);
+        }
+
+        System.out.printf("%d hashes, %d queries per threshold%n", size, QUERIES);
+        System.out.printf("%10s %12s %12s %10s%n", "threshold", "table us", "packed us", "speedup");
+        for (int threshold : thresholds) {
+            long tableNanos = TlshTestHelper.timeQueries(scanned, Arrays.asList(queries), threshold, null);
+            long packedNanos = TlshTestHelper.timeQueries(packed, Arrays.asList(queries), threshold, null);
+            System.out.printf("%10d %12.1f %12.1f %9.2fx%n", threshold, tableNanos / 1000.0 / QUERIES,
+                    packedNanos / 1000.0 / QUERIES, (double) tableNanos / packedNanos);
+        }
+        System.out.println(TlshTestHelper.blackhole == 0 ? "" : " ");
+    }
+
+    /**
+     * Copy a decoded hash and change a few of its body bytes.
+     */
+    private static byte[] mutate(Random random, byte[] decoded, int changes) {
+        byte[] mutated = decoded.clone();
+        for (int i = 0; i < changes; i++) {
+            mutated[TlshReferenceIndex.BODY + random.nextInt(TlshReferenceIndex.BODY_LENGTH)] ^=
+                    (byte) (1 << random.nextInt(8));
+        }
+        return mutated;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the packed body kernel gives the same distances as comparing the bucket codes one at a time.
+ */
+public class TlshBodyKernelTest {
+
+    /**
+     * Ensure that the distance of every pair of bytes, in every position of a word, is the same as the byte distance.
+     */
+    @Test
+    public void testWordDistanceMatchesBytes() {
+        System.out.println("** TlshBodyKernelTest: testWordDistanceMatchesBytes()");
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                int expected = TlshReferenceIndex.bodyByteDistance(a, b);
+                for (int shift = 0; shift < 64; shift += 8) {
+                    assertEquals(expected, TlshBodyKernel.wordDistance((long) a << shift, (long) b << shift));
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensure that the distances of a run of packed bodies match the distances of the unpacked hashes.
+     */
+    @Test
+    public void testBodyDistances() {
+        System.out.println("** TlshBodyKernelTest: testBodyDistances()");
+        Random random = new Random(30);
+        byte[] bodies = new byte[100 * TlshReferenceIndex.BODY_LENGTH];
+        random.nextBytes(bodies);
+        byte[] query = new byte[TlshReferenceIndex.DECODED_LENGTH];
+        random.nextBytes(query);
+
+        long[] packed = TlshBodyKernel.pack(bodies, 0, 100);
+        int[] distances = new int[60];
+        TlshBodyKernel.bodyDistances(TlshBodyKernel.pack(query, TlshReferenceIndex.BODY, 1), packed, 40, 60,
+                distances);
+        for (int i = 0; i < 60; i++) {
+            int expected = 0;
+            for (int j = 0; j < TlshReferenceIndex.BODY_LENGTH; j++) {
+                expected += TlshReferenceIndex.bodyByteDistance(query[TlshReferenceIndex.BODY + j] & 0xFF,
+                        bodies[(40 + i) * TlshReferenceIndex.BODY_LENGTH + j] & 0xFF);
+            }
+            assertEquals(expected, distances[i]);
+        }
+    }
+
+    /**
+     * Ensure that scanning the index with packed bodies finds the same hits, in the same order, as scanning it with the
+     * byte pair table.
+     */
+    @Test
+    public void testPackedScanMatchesScan() {
+        System.out.println("** TlshBodyKernelTest: testPackedScanMatchesScan()");
+        Random random = new Random(31);
+        byte[] center = new byte[TlshReferenceIndex.DECODED_LENGTH];
+        random.nextBytes(center);
+        TlshReferenceIndex scanned = new TlshReferenceIndex(1000);
+        TlshReferenceIndex packed = new TlshReferenceIndex(1000);
+        for (int i = 0; i < 1000; i++) {
+            byte[] decoded = center.clone();
+            for (int j = random.nextInt(40); j > 0; j--) {
+                decoded[random.nextInt(decoded.length)] = (byte) random.nextInt(256);
+            }
+            ParseTlshObj reference = new ParseTlshObj(Integer.toString(i));
+            scanned.add(decoded, reference, false);
+            packed.add(decoded, reference, false);
+        }
+        packed.buildPackedBodies();
+        assertTrue(packed.hasPackedBodies());
+
+        for (int threshold : new int[]{0, 30, 100, 300}) {
+            for (boolean compareLength : new boolean[]{false, true}) {
+                List<TlshComparisonHit> expected = new ArrayList<>();
+                List<TlshComparisonHit> actual = new ArrayList<>();
+                scanned.findMatches(center, threshold, compareLength, expected);
+                packed.findMatches(center, threshold, compareLength, actual);
+
+                assertEquals(expected.size(), actual.size());
+                for (int hit = 0; hit < expected.size(); hit++) {
+                    assertSame(expected.get(hit).compObj, actual.get(hit).compObj);
+                    assertEquals(expected.get(hit).distance, actual.get(hit).distance);
+                }
+            }
+        }
+    }
+}
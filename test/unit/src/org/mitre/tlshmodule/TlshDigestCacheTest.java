@@ -0,0 +1,84 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Used to test the job-wide cache of TLSH hashes for duplicate files.
+ */
+public class TlshDigestCacheTest {
+
+    private static final String HASH = "T1A2A0226A5A4CA24E8ADA6DA9B72C52F5C0D2E0A6A5E0E8C4D50C8E2D1E2B0A0A2A0C42";
+
+    /**
+     * Ensure that SHA-256 is preferred over MD5 and that files without either can not be keyed.
+     */
+    @Test
+    public void testContentKey() {
+        System.out.println("** TlshDigestCacheTest: testContentKey()");
+
+        assertEquals("sha256:ab12", TlshDigestCache.contentKey("AB12", "cd34"));
+        assertEquals("md5:cd34", TlshDigestCache.contentKey(null, "CD34"));
+        assertEquals("md5:cd34", TlshDigestCache.contentKey("", "cd34"));
+        assertNull(TlshDigestCache.contentKey(null, null));
+    }
+
+    /**
+     * Ensure that the partial key depends on both the size and the partial digest.
+     */
+    @Test
+    public void testPartialKey() {
+        System.out.println("** TlshDigestCacheTest: testPartialKey()");
+        byte[] digest = {(byte) 0x0f, (byte) 0xa0};
+
+        assertEquals("partial:300:0fa0", TlshDigestCache.partialKey(300, digest));
+        assertNotEquals(TlshDigestCache.partialKey(300, digest), TlshDigestCache.partialKey(301, digest));
+    }
+
+    /**
+     * Ensure that a hash that was put in the cache is found again and that hits and misses are counted.
+     */
+    @Test
+    public void testHitAndMiss() {
+        System.out.println("** TlshDigestCacheTest: testHitAndMiss()");
+        TlshDigestCache cache = new TlshDigestCache(10);
+
+        assertNull(cache.get("md5:cd34"));
+        cache.put("md5:cd34", HASH);
+        assertEquals(HASH, cache.get("md5:cd34"));
+        assertNull(cache.get(null));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getUnkeyedCount());
+    }
+
+    /**
+     * Ensure that the cache stops growing once it holds the maximum number of hashes.
+     */
+    @Test
+    public void testCacheIsBounded() {
+        System.out.println("** TlshDigestCacheTest: testCacheIsBounded()");
+        TlshDigestCache cache = new TlshDigestCache(2);
+
+        cache.put("md5:1", HASH);
+        cache.put("md5:2", HASH);
+        cache.put("md5:3", HASH);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("md5:3"));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Random;
+
+/**
+ * Throughput comparison of the TLSH library and the module's TlshDigestCreator. This is not a unit test and is not run
+ * with them; run its main method from the IDE (Run File) with the test classpath to print the MB/s of both engines.
+ *
+ * Usage: TlshDigestCreatorBenchmark [data size in MB] [measured iterations]
+ */
+public class TlshDigestCreatorBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+
+    // Keeps the JIT from removing the hashing as dead code
+    private static int blackhole = 0;
+
+    public static void main(String[] args) {
+        int sizeMb = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        byte[] data = new byte[sizeMb * 1024 * 1024];
+        new Random(1).nextBytes(data);
+
+        TlshDigestEngine library = new LibraryTlshDigestEngine();
+        TlshDigestEngine internal = new TlshDigestCreator();
+
+        // Check that both produce the same hash before timing anything
+        String libraryHash = hash(library, data);
+        String internalHash = hash(internal, data);
+        if (!libraryHash.equals(internalHash)) {
+            throw new IllegalStateException("Hashes differ: " + libraryHash + " " + internalHash);
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            hash(library, data);
+            hash(internal, data);
+        }
+
+        // Alternate between the engines so background noise affects both equally
+        long libraryNanos = 0;
+        long internalNanos = 0;
+        for (int i = 0; i < iterations; i++) {
+            libraryNanos += time(library, data);
+            internalNanos += time(internal, data);
+        }
+
+        double megabytes = data.length / (1024.0 * 1024.0) * iterations;
+        double libraryRate = megabytes / (libraryNanos / 1e9);
+        double internalRate = megabytes / (internalNanos / 1e9);
+
+        System.out.printf("TLSH library:      %8.1f MB/s%n", libraryRate);
+        System.out.printf("TlshDigestCreator: %8.1f MB/s%n", internalRate);
+        System.out.printf("Speedup:           %8.2fx%n", internalRate / libraryRate);
+        System.out.println(blackhole == 0 ? "" : " ");
+    }
+
+    /**
+     * Hash the data with the engine in 1 MiB chunks, the same way the ingest module reads files.
+     */
+    private static String hash(TlshDigestEngine engine, byte[] data) {
+        int chunkSize = TlshModuleIngestJobSettings.DEFAULT_READ_CHUNK_SIZE;
+        engine.reset();
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            engine.update(data, offset, Math.min(chunkSize, data.length - offset));
+        }
+        String encoded = engine.getHash().getEncoded();
+        blackhole += encoded.hashCode();
+        return encoded;
+    }
+
+    /**
+     * Time a single hash of the data.
+     *
+     * @return Elapsed time in nanoseconds.
+     */
+    private static long time(TlshDigestEngine engine, byte[] data) {
+        long start = System.nanoTime();
+        hash(engine, data);
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import com.trendmicro.tlsh.TlshCreator;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Differential tests that make sure the module's TlshDigestCreator produces the exact same hashes as the official TLSH
+ * library.
+ */
+public class TlshDigestCreatorTest {
+
+    /**
+     * Calculate the hash with the TLSH library.
+     *
+     * @param data Data to hash.
+     * @return The encoded hash or null if the library could not create one.
+     */
+    private static String libraryHash(byte[] data) {
+        TlshCreator creator = new TlshCreator();
+        creator.update(data);
+        try {
+            return creator.getHash().getEncoded();
+        } catch (IllegalStateException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Calculate the hash with the TlshDigestCreator.
+     *
+     * @param creator The creator to use, it is reset first.
+     * @param data Data to hash.
+     * @param chunkSize Number of bytes passed to each update call.
+     * @return The encoded hash or null if it could not create one.
+     */
+    private static String internalHash(TlshDigestCreator creator, byte[] data, int chunkSize) {
+        creator.reset();
+        for (int offset = 0; offset < data.length; offset += chunkSize) {
+            creator.update(data, offset, Math.min(chunkSize, data.length - offset));
+        }
+        try {
+            return creator.getEncoded();
+        } catch (IllegalStateException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Generate data of a given size that is random, text-like, or mostly repeated so all parts of the hash get used.
+     */
+    private static byte[] testData(Random random, int size, int kind) {
+        byte[] data = new byte[size];
+        if (kind == 0) {
+            random.nextBytes(data);
+        } else if (kind == 1) {
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) ('a' + random.nextInt(26));
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                data[i] = (byte) (random.nextInt(16) == 0 ? random.nextInt(256) : i % 7);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Ensure that the hashes match the TLSH library for many different sizes and types of data.
+     */
+    @Test
+    public void testMatchesLibrary() {
+        System.out.println("** TlshDigestCreatorTest: testMatchesLibrary()");
+        Random random = new Random(2023);
+        TlshDigestCreator creator = new TlshDigestCreator();
+
+        for (int i = 0; i < 300; i++) {
+            byte[] data = testData(random, 1 + random.nextInt(20000), i % 3);
+            assertEquals("Size " + data.length, libraryHash(data), internalHash(creator, data, data.length));
+        }
+    }
+
+    /**
+     * Ensure that splitting the data over many update calls, even ones smaller than the sliding window, does not change
+     * the hash.
+     */
+    @Test
+    public void testChunkedUpdates() {
+        System.out.println("** TlshDigestCreatorTest: testChunkedUpdates()");
+        Random random = new Random(42);
+        TlshDigestCreator creator = new TlshDigestCreator();
+        byte[] data = testData(random, 10000, 0);
+        String expected = libraryHash(data);
+
+        assertNotNull(expected);
+        for (int chunkSize : new int[]{1, 2, 3, 5, 64, 4099}) {
+            assertEquals("Chunk size " + chunkSize, expected, internalHash(creator, data, chunkSize));
+        }
+    }
+
+    /**
+     * Ensure that both heap and direct ByteBuffers produce the same hash as the library.
+     */
+    @Test
+    public void testByteBufferInput() {
+        System.out.println("** TlshDigestCreatorTest: testByteBufferInput()");
+        Random random = new Random(7);
+        byte[] data = testData(random, 30000, 1);
+        String expected = libraryHash(data);
+
+        TlshDigestCreator creator = new TlshDigestCreator();
+        ByteBuffer heap = ByteBuffer.wrap(data);
+        creator.update(heap);
+        assertEquals(expected, creator.getEncoded());
+        assertFalse(heap.hasRemaining());
+
+        creator.reset();
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length);
+        direct.put(data);
+        direct.flip();
+        creator.update(direct);
+        assertEquals(expected, creator.getEncoded());
+    }
+
+    /**
+     * Ensure that the returned Tlsh object encodes to the same string and compares with a distance of 0 to the library
+     * hash.
+     */
+    @Test
+    public void testGetHash() {
+        System.out.println("** TlshDigestCreatorTest: testGetHash()");
+        byte[] data = testData(new Random(3), 5000, 2);
+        TlshCreator library = new TlshCreator();
+        library.update(data);
+
+        TlshDigestCreator creator = new TlshDigestCreator();
+        creator.update(data, 0, data.length);
+
+        assertEquals(library.getHash().getEncoded(), creator.getHash().getEncoded());
+        assertEquals(0, creator.getHash().totalDiff(library.getHash(), true));
+    }
+
+    /**
+     * Ensure that data that is too short is rejected the same way as the library, including the 256 byte minimum.
+     */
+    @Test
+    public void testTooLittleData() {
+        System.out.println("** TlshDigestCreatorTest: testTooLittleData()");
+        Random random = new Random(5);
+        TlshDigestCreator creator = new TlshDigestCreator();
+
+        byte[] data = testData(random, TlshDigestCreator.MIN_DATA_LENGTH - 1, 0);
+        assertNull(libraryHash(data));
+        assertNull(internalHash(creator, data, data.length));
+        assertFalse(creator.isValid());
+    }
+
+    /**
+     * Ensure that data without enough variance is rejected.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testNoVariance() {
+        System.out.println("** TlshDigestCreatorTest: testNoVariance()");
+        TlshDigestCreator creator = new TlshDigestCreator();
+        creator.update(new byte[4096], 0, 4096);
+        creator.getEncoded();
+    }
+
+    /**
+     * Ensure that the length value matches the boundaries of the TLSH length table.
+     */
+    @Test
+    public void testLengthValue() {
+        System.out.println("** TlshDigestCreatorTest: testLengthValue()");
+        assertEquals(0, TlshDigestCreator.lengthValue(1));
+        assertEquals(1, TlshDigestCreator.lengthValue(2));
+        assertEquals(15, TlshDigestCreator.lengthValue(656));
+        assertEquals(16, TlshDigestCreator.lengthValue(657));
+        assertEquals(169, TlshDigestCreator.lengthValue(TlshDigestCreator.MAX_DATA_LENGTH));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Used to test the TLSH digest store on disk.
+ */
+public class TlshDigestStoreTest {
+
+    private static final String SHA256_A = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+    private static final String SHA256_B = "60303AE22B998861BCE3B28F33EEC1BE758A213C86C93C076DBE9F558C11C752";
+    private static final String HASH_1 = "T1A2A0226A5A4CA24E8ADA6DA9B72C52F5C0D2E0A6A5E0E8C4D50C8E2D1E2B0A0A2A0C42";
+    private static final String HASH_2 = "T1B3B0226A5A4CA24E8ADA6DA9B72C52F5C0D2E0A6A5E0E8C4D50C8E2D1E2B0A0A2A0C42";
+
+    private Path directory;
+    private Path storePath;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("tlsh-store");
+        this.storePath = this.directory.resolve("store.bin");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.storePath);
+        Files.deleteIfExists(this.directory);
+    }
+
+    /**
+     * Ensure that an appended hash can be looked up and is still there once the store has been reopened.
+     */
+    @Test
+    public void testHashIsKeptAfterReopening() throws IOException {
+        System.out.println("** TlshDigestStoreTest: testHashIsKeptAfterReopening()");
+        TlshDigestStore store = TlshDigestStore.acquire(this.storePath, 100);
+        assertNull(store.lookup(SHA256_A, 1000, 0));
+        store.append(SHA256_A, 1000, 0, HASH_1);
+        assertEquals(HASH_1, store.lookup(SHA256_A, 1000, 0));
+        TlshDigestStore.release(store);
+
+        store = TlshDigestStore.acquire(this.storePath, 100);
+        assertEquals(HASH_1, store.lookup(SHA256_A.toUpperCase(), 1000, 0));
+        assertEquals(1, store.size());
+        TlshDigestStore.release(store);
+    }
+
+    /**
+     * Ensure that the size and the variant are part of the key and files without a valid SHA-256 are not stored.
+     */
+    @Test
+    public void testKeyIncludesSizeAndVariant() throws IOException {
+        System.out.println("** TlshDigestStoreTest: testKeyIncludesSizeAndVariant()");
+        TlshDigestStore store = TlshDigestStore.acquire(this.storePath, 100);
+        store.append(SHA256_A, 1000, 0, HASH_1);
+        store.append(null, 1000, 0, HASH_2);
+        store.append("not a sha256", 1000, 0, HASH_2);
+
+        assertNull(store.lookup(SHA256_A, 1001, 0));
+        assertNull(store.lookup(SHA256_A, 1000, TlshDigestStore.variantOf("Sampled")));
+        assertNull(store.lookup(SHA256_B, 1000, 0));
+        assertEquals(1, store.size());
+        TlshDigestStore.release(store);
+
+        assertEquals(0, TlshDigestStore.variantOf(null));
+        assertNotEquals(0, TlshDigestStore.variantOf("Sampled"));
+    }
+
+    /**
+     * Ensure that replaced records are dropped when the store is compacted and the latest hash is kept.
+     */
+    @Test
+    public void testCompaction() throws IOException {
+        System.out.println("** TlshDigestStoreTest: testCompaction()");
+        TlshDigestStore store = TlshDigestStore.acquire(this.storePath, 100);
+        store.append(SHA256_A, 1000, 0, HASH_1);
+        store.append(SHA256_A, 1000, 0, HASH_2);
+        store.append(SHA256_B, 1000, 0, HASH_1);
+        TlshDigestStore.release(store);
+        assertEquals(TlshDigestStore.HEADER_SIZE + 3 * TlshDigestStore.RECORD_SIZE, Files.size(this.storePath));
+
+        store = TlshDigestStore.acquire(this.storePath, 100);
+        assertEquals(HASH_2, store.lookup(SHA256_A, 1000, 0));
+        assertEquals(HASH_1, store.lookup(SHA256_B, 1000, 0));
+        TlshDigestStore.release(store);
+        assertEquals(TlshDigestStore.HEADER_SIZE + 2 * TlshDigestStore.RECORD_SIZE, Files.size(this.storePath));
+    }
+
+    /**
+     * Ensure that a record that was only partly written is dropped instead of breaking the store.
+     */
+    @Test
+    public void testPartialRecordIsDropped() throws IOException {
+        System.out.println("** TlshDigestStoreTest: testPartialRecordIsDropped()");
+        TlshDigestStore store = TlshDigestStore.acquire(this.storePath, 100);
+        store.append(SHA256_A, 1000, 0, HASH_1);
+        TlshDigestStore.release(store);
+
+        try (FileChannel channel = FileChannel.open(this.storePath, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[10]));
+        }
+
+        store = TlshDigestStore.acquire(this.storePath, 100);
+        assertEquals(HASH_1, store.lookup(SHA256_A, 1000, 0));
+        store.append(SHA256_B, 1000, 0, HASH_2);
+        TlshDigestStore.release(store);
+
+        store = TlshDigestStore.acquire(this.storePath, 100);
+        assertEquals(HASH_2, store.lookup(SHA256_B, 1000, 0));
+        TlshDigestStore.release(store);
+    }
+
+    /**
+     * Ensure that hashes are found among both the sorted and the appended records, and that the records of the oldest
+     * sessions are dropped first when there are too many.
+     */
+    @Test
+    public void testSortedAndAppendedRecords() throws IOException {
+        System.out.println("** TlshDigestStoreTest: testSortedAndAppendedRecords()");
+        TlshDigestStore store = TlshDigestStore.acquire(this.storePath, 1000);
+        for (int i = 0; i < 800; i++) {
+            store.append(sha256Of(i), i, 0, HASH_1);
+        }
+        TlshDigestStore.release(store);
+
+        // Compacted into sorted records when it is opened, the next appends stay unsorted
+        store = TlshDigestStore.acquire(this.storePath, 1000);
+        for (int i = 800; i < 850; i++) {
+            store.append(sha256Of(i), i, 0, HASH_2);
+        }
+        TlshDigestStore.release(store);
+        assertEquals(TlshDigestStore.HEADER_SIZE + 850 * TlshDigestStore.RECORD_SIZE, Files.size(this.storePath));
+
+        store = TlshDigestStore.acquire(this.storePath, 1000);
+        for (int i = 0; i < 850; i++) {
+            assertEquals(i < 800 ? HASH_1 : HASH_2, store.lookup(sha256Of(i), i, 0));
+        }
+        assertNull(store.lookup(sha256Of(0), 1, 0));
+        assertEquals(850, store.size());
+        TlshDigestStore.release(store);
+
+        // Opening it with a lower limit drops the hashes of the first session
+        store = TlshDigestStore.acquire(this.storePath, 100);
+        assertNull(store.lookup(sha256Of(0), 0, 0));
+        assertEquals(HASH_2, store.lookup(sha256Of(849), 849, 0));
+        assertEquals(100, store.size());
+        TlshDigestStore.release(store);
+    }
+
+    private static String sha256Of(int i) {
+        StringBuilder sha256 = new StringBuilder();
+        for (int j = 0; j < 8; j++) {
+            sha256.append(String.format("%08x", (i + 1) * 0x9E3779B9 + j));
+        }
+        return sha256.toString();
+    }
+}
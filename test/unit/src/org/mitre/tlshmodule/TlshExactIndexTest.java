@@ -0,0 +1,123 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the exact match fast path finds the same hashes as the hits at distance 0 of scanning the index.
+ */
+public class TlshExactIndexTest {
+
+    /**
+     * Ensure that the exact matches are the hits at distance 0, in index order, with and without the length, and that
+     * hashes that only differ in the length value are exact matches only when the length is not compared.
+     */
+    @Test
+    public void testFindExactMatchesScan() {
+        System.out.println("** TlshExactIndexTest: testFindExactMatchesScan()");
+        Random random = new Random(50);
+        List<byte[]> queries = new ArrayList<>();
+        List<byte[]> references = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            byte[] decoded = new byte[TlshReferenceIndex.DECODED_LENGTH];
+            random.nextBytes(decoded);
+            queries.add(decoded);
+        }
+        for (int i = 0; i < 2000; i++) {
+            byte[] decoded = queries.get(random.nextInt(queries.size())).clone();
+            switch (random.nextInt(4)) {
+                case 0:
+                    // Only the length differs
+                    decoded[TlshReferenceIndex.LVALUE]++;
+                    break;
+                case 1:
+                    decoded[TlshReferenceIndex.BODY + random.nextInt(TlshReferenceIndex.BODY_LENGTH)] ^= 1;
+                    break;
+                case 2:
+                    random.nextBytes(decoded);
+                    break;
+                default:
+                    break;
+            }
+            references.add(decoded);
+        }
+
+        for (boolean compareLength : new boolean[]{false, true}) {
+            TlshReferenceIndex index = new TlshReferenceIndex(references.size());
+            for (int i = 0; i < references.size(); i++) {
+                index.add(references.get(i), new ParseTlshObj(Integer.toString(i)), false);
+            }
+            index.buildExactIndex(compareLength);
+
+            int matched = 0;
+            for (byte[] query : queries) {
+                List<TlshComparisonHit> expected = new ArrayList<>();
+                index.findMatches(query, 0, compareLength, expected);
+                List<TlshComparisonHit> actual = new ArrayList<>();
+                assertEquals(expected.size(), index.findExact(query, actual));
+
+                assertEquals(expected.size(), actual.size());
+                for (int hit = 0; hit < expected.size(); hit++) {
+                    assertSame(expected.get(hit).compObj, actual.get(hit).compObj);
+                    assertEquals(0, actual.get(hit).distance);
+                }
+                if (!expected.isEmpty()) {
+                    matched++;
+                }
+            }
+            assertEquals(queries.size(), index.getExactIndex().getLookupCount());
+            assertEquals(matched, index.getExactIndex().getMatchedCount());
+        }
+    }
+
+    /**
+     * Ensure that with a limit only the first k exact matches are kept, in total or for every hash set, which are the
+     * hits that finding the k nearest hashes keeps.
+     */
+    @Test
+    public void testFindExactKeepsFirstK() {
+        System.out.println("** TlshExactIndexTest: testFindExactKeepsFirstK()");
+        Random random = new Random(51);
+        byte[] query = new byte[TlshReferenceIndex.DECODED_LENGTH];
+        random.nextBytes(query);
+
+        TlshReferenceIndex index = new TlshReferenceIndex(12);
+        for (int i = 0; i < 4; i++) {
+            index.add(query.clone(), new ParseTlshObj(Integer.toString(i)), false);
+            index.add(query.clone(), new ParseTlshObj("set A", "A" + i), true);
+            index.add(query.clone(), new ParseTlshObj("set B", "B" + i), true);
+        }
+        index.buildExactIndex(true);
+
+        for (boolean perHashSet : new boolean[]{false, true}) {
+            List<TlshComparisonHit> expected = new ArrayList<>();
+            index.findNearest(query, 0, true, 2, perHashSet, expected);
+            List<TlshComparisonHit> actual = new ArrayList<>();
+            assertEquals(perHashSet ? 6 : 2, index.findExact(query, 2, perHashSet, actual));
+
+            assertEquals(expected.size(), actual.size());
+            for (int hit = 0; hit < expected.size(); hit++) {
+                assertSame(expected.get(hit).compObj, actual.get(hit).compObj);
+            }
+        }
+
+        List<TlshComparisonHit> all = new ArrayList<>();
+        assertEquals(12, index.findExact(query, all));
+    }
+}
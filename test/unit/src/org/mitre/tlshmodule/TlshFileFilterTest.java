@@ -0,0 +1,105 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Used to test the checks of the file filter that do not need an Autopsy file.
+ */
+public class TlshFileFilterTest {
+
+    private static TlshFileFilter createFilter(TlshModuleIngestJobSettings settings) {
+        return new TlshFileFilter(settings, new AtomicLongArray(TlshFileFilter.Stage.values().length));
+    }
+
+    /**
+     * Ensure that files smaller than what TLSH can hash are rejected even if a smaller minimum was configured.
+     */
+    @Test
+    public void testMinimumSize() {
+        System.out.println("** TlshFileFilterTest: testMinimumSize()");
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        settings.setMinFileSize(10);
+        TlshFileFilter filter = createFilter(settings);
+
+        assertFalse(filter.acceptsSize(0));
+        assertFalse(filter.acceptsSize(TlshDigestCreator.MIN_DATA_LENGTH - 1));
+        assertTrue(filter.acceptsSize(TlshDigestCreator.MIN_DATA_LENGTH));
+    }
+
+    /**
+     * Ensure that a maximum size of 0 means no limit and that a set maximum is inclusive.
+     */
+    @Test
+    public void testMaximumSize() {
+        System.out.println("** TlshFileFilterTest: testMaximumSize()");
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        assertTrue(createFilter(settings).acceptsSize(Long.MAX_VALUE));
+
+        settings.setMaxFileSize(4096);
+        TlshFileFilter filter = createFilter(settings);
+        assertTrue(filter.acceptsSize(4096));
+        assertFalse(filter.acceptsSize(4097));
+    }
+
+    /**
+     * Ensure that every extension is accepted when no lists are configured.
+     */
+    @Test
+    public void testNoExtensionLists() {
+        System.out.println("** TlshFileFilterTest: testNoExtensionLists()");
+        TlshFileFilter filter = createFilter(new TlshModuleIngestJobSettings());
+
+        assertTrue(filter.acceptsExtension("exe"));
+        assertTrue(filter.acceptsExtension(""));
+        assertTrue(filter.acceptsExtension(null));
+    }
+
+    /**
+     * Ensure that the allow list is case insensitive and ignores leading dots.
+     */
+    @Test
+    public void testAllowedExtensions() {
+        System.out.println("** TlshFileFilterTest: testAllowedExtensions()");
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        settings.setAllowedExtensions(new String[]{".EXE", "dll "});
+        TlshFileFilter filter = createFilter(settings);
+
+        assertTrue(filter.acceptsExtension("exe"));
+        assertTrue(filter.acceptsExtension("DLL"));
+        assertFalse(filter.acceptsExtension("txt"));
+        assertFalse(filter.acceptsExtension(null));
+    }
+
+    /**
+     * Ensure that the deny list wins over the allow list.
+     */
+    @Test
+    public void testDeniedExtensions() {
+        System.out.println("** TlshFileFilterTest: testDeniedExtensions()");
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        settings.setDeniedExtensions(new String[]{"pf", "sys"});
+        TlshFileFilter filter = createFilter(settings);
+        assertFalse(filter.acceptsExtension("SYS"));
+        assertTrue(filter.acceptsExtension("exe"));
+
+        settings.setAllowedExtensions(new String[]{"sys", "exe"});
+        filter = createFilter(settings);
+        assertFalse(filter.acceptsExtension("sys"));
+        assertTrue(filter.acceptsExtension("exe"));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the keys the comparison hits are recorded with and that a hit is only new once per file.
+ */
+public class TlshHitStoreTest {
+
+    /**
+     * Ensure that the key holds the threshold, the reference hash and the hash set, which is left out for the hash
+     * list.
+     */
+    @Test
+    public void testKeyOf() {
+        System.out.println("** TlshHitStoreTest: testKeyOf()");
+        assertEquals("30 T1abc", TlshHitStore.keyOf(30, "T1abc", ""));
+        assertEquals("30 T1abc known bad", TlshHitStore.keyOf(30, "T1abc", "known bad"));
+        assertNotEquals(TlshHitStore.keyOf(30, "T1abc", "set"), TlshHitStore.keyOf(50, "T1abc", "set"));
+    }
+
+    /**
+     * Ensure that a summary key does not depend on the order of its hits but changes when a hit is added, and that it
+     * keeps the hash set.
+     */
+    @Test
+    public void testSummaryKeyOf() {
+        System.out.println("** TlshHitStoreTest: testSummaryKeyOf()");
+        String a = TlshHitStore.keyOf(30, "T1abc", "set");
+        String b = TlshHitStore.keyOf(30, "T1def", "set");
+        String c = TlshHitStore.keyOf(30, "T1ghi", "set");
+        String key = TlshHitStore.summaryKeyOf(Arrays.asList(a, b), "set");
+        assertTrue(key.startsWith("summary "));
+        assertTrue(key.endsWith(" set"));
+        assertEquals(key, TlshHitStore.summaryKeyOf(Arrays.asList(b, a), "set"));
+        assertNotEquals(key, TlshHitStore.summaryKeyOf(Arrays.asList(a, b, c), "set"));
+        assertNotEquals(key, TlshHitStore.summaryKeyOf(Arrays.asList(a, b), ""));
+    }
+
+    /**
+     * Ensure that a hit is new the first time it is added for a file only, and that the same hit on another file is
+     * new.
+     */
+    @Test
+    public void testAddIfAbsent() {
+        System.out.println("** TlshHitStoreTest: testAddIfAbsent()");
+        TlshHitStore store = new TlshHitStore(null);
+        String key = TlshHitStore.keyOf(30, "T1abc", "set");
+        assertTrue(store.addIfAbsent(7, key));
+        assertFalse(store.addIfAbsent(7, key));
+        assertTrue(store.addIfAbsent(8, key));
+        assertTrue(store.addIfAbsent(7, TlshHitStore.keyOf(50, "T1abc", "set")));
+        assertEquals(3, store.size());
+        assertFalse(store.isLoaded());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the hits of a file are summarized once per category with the right best distance, count and closest hits.
+ */
+public class TlshHitSummaryTest {
+
+    /**
+     * Ensure that the hash list and every hash set get their own summary, in the order of their first hit.
+     */
+    @Test
+    public void testSummarize() {
+        System.out.println("** TlshHitSummaryTest: testSummarize()");
+        ParseTlshObj listHash1 = new ParseTlshObj("T1aa");
+        ParseTlshObj listHash2 = new ParseTlshObj("", "T1bb", "dropper");
+        ParseTlshObj setAHash = new ParseTlshObj("setA", "T1cc");
+        ParseTlshObj setBHash1 = new ParseTlshObj("setB", "T1dd");
+        ParseTlshObj setBHash2 = new ParseTlshObj("setB", "T1ee");
+        ParseTlshObj setBHash3 = new ParseTlshObj("setB", "T1ff");
+        List<TlshComparisonHit> hits = Arrays.asList(
+                new TlshComparisonHit(40, setBHash1, true),
+                new TlshComparisonHit(25, listHash1, false),
+                new TlshComparisonHit(12, setBHash2, true),
+                new TlshComparisonHit(7, listHash2, false),
+                new TlshComparisonHit(30, setAHash, true),
+                new TlshComparisonHit(12, setBHash3, true));
+
+        List<TlshHitSummary> summaries = TlshHitSummary.summarize(hits, 2);
+        assertEquals(3, summaries.size());
+
+        TlshHitSummary setB = summaries.get(0);
+        assertTrue(setB.fromHashSet);
+        assertEquals("setB", setB.hashSetName);
+        assertEquals(3, setB.count);
+        assertEquals(12, setB.bestDistance);
+        assertEquals(Arrays.asList(hits.get(0), hits.get(2), hits.get(5)), setB.hits);
+        // Hits at the same distance keep the order they were found in
+        assertEquals(Arrays.asList(hits.get(2), hits.get(5)), setB.closest);
+
+        TlshHitSummary list = summaries.get(1);
+        assertFalse(list.fromHashSet);
+        assertEquals(2, list.count);
+        assertEquals(7, list.bestDistance);
+        assertEquals("dropper: T1bb (distance 7); T1aa (distance 25)", list.describeClosest());
+
+        TlshHitSummary setA = summaries.get(2);
+        assertEquals("setA", setA.hashSetName);
+        assertEquals(1, setA.count);
+        assertEquals(30, setA.bestDistance);
+        assertEquals("T1cc (distance 30)", setA.describeClosest());
+    }
+
+    /**
+     * Ensure that a file without hits has no summaries.
+     */
+    @Test
+    public void testNoHits() {
+        System.out.println("** TlshHitSummaryTest: testNoHits()");
+        assertTrue(TlshHitSummary.summarize(Arrays.<TlshComparisonHit>asList(), 5).isEmpty());
+    }
+}
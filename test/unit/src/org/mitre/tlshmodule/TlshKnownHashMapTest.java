@@ -0,0 +1,92 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the map of known hashes behaves like a map from file ids to hashes while it grows.
+ */
+public class TlshKnownHashMapTest {
+
+    /**
+     * Ensure that every hash put is found again after the table has grown many times, and that other ids are not.
+     */
+    @Test
+    public void testGetAfterGrow() {
+        System.out.println("** TlshKnownHashMapTest: testGetAfterGrow()");
+        Random random = new Random(21);
+        Map<Long, String> expected = new HashMap<>();
+        TlshKnownHashMap map = new TlshKnownHashMap(1);
+        for (int i = 0; i < 20000; i++) {
+            // Mostly sequential ids like the object ids of a case, with some far apart
+            long fileId = i % 4 == 0 ? 1 + (random.nextLong() >>> 1) : 1 + i;
+            String hash = "T1" + Long.toHexString(fileId);
+            if (!expected.containsKey(fileId)) {
+                expected.put(fileId, hash);
+            }
+            map.putIfAbsent(fileId, hash);
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertNull(map.get(-1));
+        assertNull(map.get(20002));
+    }
+
+    /**
+     * Ensure that the first hash of a file is kept, and that the empty id and null hashes are ignored.
+     */
+    @Test
+    public void testPutIfAbsent() {
+        System.out.println("** TlshKnownHashMapTest: testPutIfAbsent()");
+        TlshKnownHashMap map = new TlshKnownHashMap(4);
+        map.putIfAbsent(7, "T1first");
+        map.putIfAbsent(7, "T1second");
+        map.putIfAbsent(0, "T1zero");
+        map.putIfAbsent(8, null);
+        assertEquals("T1first", map.get(7));
+        assertNull(map.get(0));
+        assertNull(map.get(8));
+        assertEquals(1, map.size());
+    }
+
+    /**
+     * Ensure that the hashes of a file made in different ways are kept apart, so a sampled hash is not found as the
+     * hash of the whole file.
+     */
+    @Test
+    public void testVariantsAreKeptApart() {
+        System.out.println("** TlshKnownHashMapTest: testVariantsAreKeptApart()");
+        int sampled = TlshDigestStore.variantOf("Sampled");
+        TlshKnownHashMap map = new TlshKnownHashMap(1);
+        map.putIfAbsent(7, sampled, "T1sampled");
+        assertNull(map.get(7));
+        assertEquals("T1sampled", map.get(7, sampled));
+        assertNull(map.get(7, TlshDigestStore.variantOf("Other")));
+
+        map.putIfAbsent(7, "T1whole");
+        for (long fileId = 8; fileId < 100; fileId++) {
+            map.putIfAbsent(fileId, "T1" + fileId);
+        }
+        assertEquals("T1whole", map.get(7, TlshDigestStore.variantOf("")));
+        assertEquals("T1sampled", map.get(7, sampled));
+        assertEquals(94, map.size());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.sleuthkit.datamodel.Score;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the thresholds of the reference hashes, and for applying them all in one pass over the index.
+ */
+public class TlshMatchPolicyTest {
+
+    /**
+     * Ensure that a hash uses the threshold in its comment, then the threshold of its hash set, then the threshold of
+     * the job.
+     */
+    @Test
+    public void testThresholdOf() {
+        System.out.println("** TlshMatchPolicyTest: testThresholdOf()");
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        settings.setTargetDistance(20);
+        settings.setHashSetThresholds(new String[]{"strict=5", "loose = 150", "a=b=70", "no threshold", "bad=x"});
+
+        TlshMatchPolicy policy = new TlshMatchPolicy(settings);
+        assertTrue(policy.hasCustomThresholds());
+        assertEquals(5, policy.thresholdOf(new ParseTlshObj("strict", "T1AB"), true));
+        assertEquals(150, policy.thresholdOf(new ParseTlshObj("loose", "T1AB"), true));
+        assertEquals(70, policy.thresholdOf(new ParseTlshObj("a=b", "T1AB"), true));
+        assertEquals(20, policy.thresholdOf(new ParseTlshObj("other", "T1AB"), true));
+        // The hash list is not a hash set, even if a hash set has the same name
+        assertEquals(20, policy.thresholdOf(new ParseTlshObj("strict", "T1AB"), false));
+        // Comments are ignored until per-entry thresholds are enabled
+        assertEquals(5, policy.thresholdOf(new ParseTlshObj("strict", "T1AB", "dropper threshold=60"), true));
+
+        settings.setUseEntryThresholds(true);
+        policy = new TlshMatchPolicy(settings);
+        assertEquals(60, policy.thresholdOf(new ParseTlshObj("strict", "T1AB", "dropper threshold=60"), true));
+        assertEquals(40, policy.thresholdOf(new ParseTlshObj("", "T1AB", "Threshold = 40 loader"), false));
+        assertEquals(5, policy.thresholdOf(new ParseTlshObj("strict", "T1AB", "no threshold here"), true));
+    }
+
+    /**
+     * Ensure that a policy without hash set or per-entry thresholds has no custom thresholds.
+     */
+    @Test
+    public void testNoCustomThresholds() {
+        System.out.println("** TlshMatchPolicyTest: testNoCustomThresholds()");
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        TlshMatchPolicy policy = new TlshMatchPolicy(settings);
+
+        assertFalse(policy.hasCustomThresholds());
+        assertEquals(settings.getTargetDistance(), policy.thresholdOf(new ParseTlshObj("set", "T1AB"), true));
+    }
+
+    /**
+     * Ensure that the notable tier is relative to the threshold of each reference hash, and that every hit is notable
+     * without tiers.
+     */
+    @Test
+    public void testScoreTiersFollowThresholds() {
+        System.out.println("** TlshMatchPolicyTest: testScoreTiersFollowThresholds()");
+        TlshModuleIngestJobSettings settings = new TlshModuleIngestJobSettings();
+        TlshMatchPolicy policy = new TlshMatchPolicy(settings);
+        assertEquals(Score.SCORE_NOTABLE, policy.scoreOf(200, 200));
+
+        settings.setUseScoreTiers(true);
+        settings.setNotableTierPercent(25);
+        policy = new TlshMatchPolicy(settings);
+        assertEquals(Score.SCORE_NOTABLE, policy.scoreOf(5, 20));
+        assertEquals(Score.SCORE_LIKELY_NOTABLE, policy.scoreOf(6, 20));
+        assertEquals(Score.SCORE_NOTABLE, policy.scoreOf(50, 200));
+        assertEquals(Score.SCORE_LIKELY_NOTABLE, policy.scoreOf(51, 200));
+    }
+
+    /**
+     * Ensure that searching the index once with the thresholds of every entry finds the same hits as searching it with
+     * each threshold and keeping the hits of the entries with that threshold, with and without the tree.
+     */
+    @Test
+    public void testEntryThresholdsInOnePass() {
+        System.out.println("** TlshMatchPolicyTest: testEntryThresholdsInOnePass()");
+        Random random = new Random(60);
+        byte[] center = new byte[TlshReferenceIndex.DECODED_LENGTH];
+        random.nextBytes(center);
+        int[] setThresholds = {10, 60, 200};
+
+        TlshReferenceIndex index = new TlshReferenceIndex(3000);
+        int[] thresholds = new int[3000];
+        for (int i = 0; i < 3000; i++) {
+            byte[] decoded = center.clone();
+            for (int j = random.nextInt(30); j > 0; j--) {
+                decoded[TlshReferenceIndex.BODY + random.nextInt(TlshReferenceIndex.BODY_LENGTH)] =
+                        (byte) random.nextInt(256);
+            }
+            thresholds[i] = setThresholds[i % 3];
+            index.add(decoded, new ParseTlshObj(Integer.toString(i)), true);
+        }
+
+        List<TlshComparisonHit> expected = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            List<TlshComparisonHit> hits = new ArrayList<>();
+            index.findMatches(center, setThresholds[i % 3], false, hits);
+            for (TlshComparisonHit hit : hits) {
+                if (hit.compObj.hashStr.equals(Integer.toString(i))) {
+                    expected.add(hit);
+                }
+            }
+        }
+
+        index.setEntryThresholds(thresholds);
+        for (boolean tree : new boolean[]{false, true}) {
+            if (tree) {
+                index.buildTree();
+            }
+            List<TlshComparisonHit> actual = new ArrayList<>();
+            index.findMatches(center, 0, false, actual);
+            assertTrue(expected.size() > 100);
+            assertEquals(expected.size(), actual.size());
+            for (int hit = 0; hit < expected.size(); hit++) {
+                assertEquals(expected.get(hit).compObj.hashStr, actual.get(hit).compObj.hashStr);
+                assertEquals(expected.get(hit).distance, actual.get(hit).distance);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the bounded heap keeps the same entries as sorting all of them and keeping the first K.
+ */
+public class TlshNearestHitsTest {
+
+    /**
+     * Ensure that the heap keeps the K closest entries, ties broken by the entry, whatever order they are offered in.
+     */
+    @Test
+    public void testKeepsClosest() {
+        System.out.println("** TlshNearestHitsTest: testKeepsClosest()");
+        Random random = new Random(40);
+        for (int round = 0; round < 200; round++) {
+            int k = 1 + random.nextInt(20);
+            int count = random.nextInt(100);
+            long[] all = new long[count];
+            TlshNearestHits nearest = new TlshNearestHits(k);
+            for (int entry = 0; entry < count; entry++) {
+                // Few distinct distances so there are many ties
+                int distance = random.nextInt(10);
+                all[entry] = ((long) distance << 32) | entry;
+            }
+            long[] shuffled = all.clone();
+            for (int i = count - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                long swap = shuffled[i];
+                shuffled[i] = shuffled[j];
+                shuffled[j] = swap;
+            }
+            for (long offered : shuffled) {
+                nearest.offer((int) (offered >>> 32), (int) offered);
+            }
+
+            Arrays.sort(all);
+            int expected = Math.min(k, count);
+            int[] distances = new int[k];
+            int[] entries = new int[k];
+            assertEquals(expected, nearest.drain(distances, entries));
+            for (int i = 0; i < expected; i++) {
+                assertEquals((int) (all[i] >>> 32), distances[i]);
+                assertEquals((int) all[i], entries[i]);
+            }
+            assertEquals(0, nearest.size());
+        }
+    }
+
+    /**
+     * Ensure that the bound is the threshold until the heap is full, then the furthest distance kept.
+     */
+    @Test
+    public void testBound() {
+        System.out.println("** TlshNearestHitsTest: testBound()");
+        TlshNearestHits nearest = new TlshNearestHits(2);
+        assertEquals(50, nearest.bound(50));
+        nearest.offer(30, 0);
+        assertEquals(50, nearest.bound(50));
+        nearest.offer(20, 1);
+        assertEquals(30, nearest.bound(50));
+        nearest.offer(10, 2);
+        assertEquals(20, nearest.bound(50));
+        assertEquals(15, nearest.bound(15));
+    }
+}
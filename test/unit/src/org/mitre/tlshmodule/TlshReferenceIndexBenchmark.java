@@ -0,0 +1,97 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Query time comparison of scanning the TlshReferenceIndex and searching it with the vantage point tree. This is not a
+ * unit test and is not run with them; run its main method from the IDE (Run File) with the test classpath. The hashes
+ * are generated in clusters of similar hashes, like families of related files in a threat intelligence feed, and the
+ * queries are close to a random cluster.
+ *
+ * Usage: TlshReferenceIndexBenchmark [threshold] [number of hashes]...
+ * The default sizes are 10k, 100k and 1M hashes; 10M hashes needs a heap of about 2 GB (-Xmx2g).
+ */
+public class TlshReferenceIndexBenchmark {
+
+    private static final int CLUSTER_SIZE = 20;
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        int threshold = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("Threshold %d, %d queries per size%n", threshold, QUERIES);
+        System.out.printf("%10s %12s %12s %12s %10s%n", "hashes", "build ms", "scan us", "tree us", "speedup");
+        for (int size : sizes) {
+            run(size, threshold);
+        }
+        System.out.println(TlshTestHelper.blackhole == 0 ? "" : " ");
+    }
+
+    private static void run(int size, int threshold) {
+        Random random = new Random(size);
+        ParseTlshObj reference = new ParseTlshObj("benchmark", "");
+        TlshReferenceIndex index = new TlshReferenceIndex(size);
+        List<byte[]> centers = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            byte[] decoded;
+            if (i % CLUSTER_SIZE == 0) {
+                decoded = TlshTestHelper.randomDecoded(random);
+                centers.add(decoded);
+            } else {
+                decoded = mutate(random, centers.get(centers.size() - 1));
+            }
+            index.add(decoded, reference, true);
+        }
+
+        byte[][] queries = new byte[QUERIES][];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = mutate(random, centers.get(random.nextInt(centers.size())));
+        }
+
+        // The same index is used for both, the tree is only consulted once it has been built
+        long scanNanos = TlshTestHelper.timeQueries(index, Arrays.asList(queries), threshold, null);
+        long buildStart = System.nanoTime();
+        index.buildTree();
+        long buildNanos = System.nanoTime() - buildStart;
+        long treeNanos = TlshTestHelper.timeQueries(index, Arrays.asList(queries), threshold, null);
+
+        System.out.printf("%10d %12d %12.1f %12.1f %9.1fx%n", size, buildNanos / 1000000,
+                scanNanos / 1000.0 / QUERIES, treeNanos / 1000.0 / QUERIES, (double) scanNanos / treeNanos);
+    }
+
+    /**
+     * Copy a decoded hash and change a few of its bucket codes.
+     */
+    private static byte[] mutate(Random random, byte[] decoded) {
+        byte[] mutated = decoded.clone();
+        int changes = 1 + random.nextInt(6);
+        for (int i = 0; i < changes; i++) {
+            int position = TlshReferenceIndex.BODY + random.nextInt(TlshReferenceIndex.BODY_LENGTH);
+            mutated[position] ^= (byte) (1 << random.nextInt(8));
+        }
+        return mutated;
+    }
+}
@@ -0,0 +1,392 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import com.trendmicro.tlsh.Tlsh;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Differential tests that make sure the reference index calculates the exact same distances as the official TLSH
+ * library.
+ */
+public class TlshReferenceIndexTest {
+
+    private static final String HEX = "0123456789ABCDEF";
+
+    /**
+     * Generate a random hash string in the default layout.
+     */
+    private static String randomHash(Random random) {
+        StringBuilder hash = new StringBuilder("T1");
+        for (int i = 0; i < 70; i++) {
+            hash.append(HEX.charAt(random.nextInt(16)));
+        }
+        return hash.toString();
+    }
+
+    /**
+     * Change a few characters of a hash string so the distance to the original is small.
+     */
+    private static String mutate(Random random, String hash) {
+        char[] chars = hash.toCharArray();
+        int changes = 1 + random.nextInt(4);
+        for (int i = 0; i < changes; i++) {
+            chars[2 + random.nextInt(70)] = HEX.charAt(random.nextInt(16));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Ensure that the distance matches Tlsh.totalDiff() with and without the length, for random and similar hashes.
+     */
+    @Test
+    public void testDistanceMatchesLibrary() {
+        System.out.println("** TlshReferenceIndexTest: testDistanceMatchesLibrary()");
+        Random random = new Random(10);
+
+        for (int i = 0; i < 5000; i++) {
+            String a = randomHash(random);
+            String b = random.nextBoolean() ? randomHash(random) : mutate(random, a);
+            byte[] decodedA = TlshReferenceIndex.decode(a);
+            byte[] decodedB = TlshReferenceIndex.decode(b);
+
+            for (boolean compareLength : new boolean[]{false, true}) {
+                int expected = Tlsh.fromTlshStr(a).totalDiff(Tlsh.fromTlshStr(b), compareLength);
+                assertEquals(a + " " + b, expected, TlshReferenceIndex.distance(decodedA, decodedB, compareLength));
+            }
+        }
+    }
+
+    /**
+     * Ensure that the early exit distance is exactly Tlsh.totalDiff() when it is within the threshold and above the
+     * threshold otherwise, with and without the length.
+     */
+    @Test
+    public void testBoundedDistanceMatchesLibrary() {
+        System.out.println("** TlshReferenceIndexTest: testBoundedDistanceMatchesLibrary()");
+        Random random = new Random(16);
+        TlshReferenceIndex index = new TlshReferenceIndex(5000);
+        List<String> references = new ArrayList<>();
+        String query = randomHash(random);
+        for (int i = 0; i < 5000; i++) {
+            String reference = random.nextBoolean() ? randomHash(random) : mutate(random, query);
+            references.add(reference);
+            index.add(new ParseTlshObj(reference), false);
+        }
+
+        byte[] decodedQuery = TlshReferenceIndex.decode(query);
+        Tlsh queryTlsh = Tlsh.fromTlshStr(query);
+        for (int entry = 0; entry < references.size(); entry++) {
+            Tlsh referenceTlsh = Tlsh.fromTlshStr(references.get(entry));
+            for (boolean compareLength : new boolean[]{false, true}) {
+                int expected = queryTlsh.totalDiff(referenceTlsh, compareLength);
+                int threshold = random.nextInt(400);
+                int bounded = index.boundedDistance(decodedQuery, entry, compareLength, threshold);
+                if (expected <= threshold) {
+                    assertEquals(expected, bounded);
+                } else {
+                    assertTrue(bounded > threshold);
+                    assertTrue(bounded <= expected);
+                }
+                assertEquals(expected, index.boundedDistance(decodedQuery, entry, compareLength, Integer.MAX_VALUE));
+                assertEquals(expected, index.distance(decodedQuery, entry, compareLength));
+            }
+        }
+    }
+
+    /**
+     * Ensure that the index finds the same hits as comparing every hash with the library, in the order they were
+     * added.
+     */
+    @Test
+    public void testFindMatches() {
+        System.out.println("** TlshReferenceIndexTest: testFindMatches()");
+        Random random = new Random(11);
+        String query = randomHash(random);
+
+        TlshReferenceIndex index = new TlshReferenceIndex(200);
+        List<String> references = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String reference = i % 2 == 0 ? mutate(random, query) : randomHash(random);
+            references.add(reference);
+            assertTrue(index.add(new ParseTlshObj("set", reference), i >= 100));
+        }
+
+        List<TlshComparisonHit> hits = new ArrayList<>();
+        index.findMatches(TlshReferenceIndex.decode(query), 60, true, hits);
+
+        int hit = 0;
+        for (int i = 0; i < references.size(); i++) {
+            int distance = Tlsh.fromTlshStr(references.get(i)).totalDiff(Tlsh.fromTlshStr(query), true);
+            if (distance <= 60) {
+                assertEquals(references.get(i), hits.get(hit).compObj.hashStr);
+                assertEquals(distance, hits.get(hit).distance);
+                assertEquals(i >= 100, hits.get(hit).fromHashSet);
+                hit++;
+            }
+        }
+        assertEquals(hit, hits.size());
+        assertTrue(hit > 0);
+    }
+
+    /**
+     * Ensure that the vantage point tree finds exactly the same hits, in the same order, as scanning the index.
+     */
+    @Test
+    public void testTreeMatchesScan() {
+        System.out.println("** TlshReferenceIndexTest: testTreeMatchesScan()");
+        Random random = new Random(15);
+        TlshReferenceIndex scanned = new TlshReferenceIndex(3000);
+        TlshReferenceIndex tree = new TlshReferenceIndex(3000);
+
+        // Clusters of similar hashes, like families of related files
+        List<String> centers = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String hash;
+            if (i % 10 == 0) {
+                hash = randomHash(random);
+                centers.add(hash);
+            } else {
+                hash = mutate(random, centers.get(random.nextInt(centers.size())));
+            }
+            scanned.add(new ParseTlshObj(hash), false);
+            tree.add(new ParseTlshObj(hash), false);
+        }
+        tree.buildTree();
+
+        for (int i = 0; i < 200; i++) {
+            byte[] query = TlshReferenceIndex.decode(mutate(random, centers.get(random.nextInt(centers.size()))));
+            int threshold = random.nextInt(150);
+            boolean compareLength = random.nextBoolean();
+
+            List<TlshComparisonHit> expected = new ArrayList<>();
+            List<TlshComparisonHit> actual = new ArrayList<>();
+            scanned.findMatches(query, threshold, compareLength, expected);
+            tree.findMatches(query, threshold, compareLength, actual);
+
+            assertEquals(expected.size(), actual.size());
+            for (int hit = 0; hit < expected.size(); hit++) {
+                assertSame(expected.get(hit).compObj.hashStr, actual.get(hit).compObj.hashStr);
+                assertEquals(expected.get(hit).distance, actual.get(hit).distance);
+            }
+        }
+    }
+
+    /**
+     * Ensure that comparing a batch of hashes, over more than one tile of the index, finds the same hits in the same
+     * order as comparing them one at a time, with and without the packed kernel.
+     */
+    @Test
+    public void testBatchMatchesSingle() {
+        System.out.println("** TlshReferenceIndexTest: testBatchMatchesSingle()");
+        Random random = new Random(17);
+        TlshReferenceIndex index = new TlshReferenceIndex(10000);
+        List<String> centers = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            String hash;
+            if (i % 10 == 0) {
+                hash = randomHash(random);
+                centers.add(hash);
+            } else {
+                hash = mutate(random, centers.get(random.nextInt(centers.size())));
+            }
+            index.add(new ParseTlshObj(hash), false);
+        }
+
+        List<byte[]> queries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            queries.add(TlshReferenceIndex.decode(mutate(random, centers.get(random.nextInt(centers.size())))));
+        }
+
+        for (boolean packed : new boolean[]{false, true}) {
+            if (packed) {
+                index.buildPackedBodies();
+            }
+            for (boolean compareLength : new boolean[]{false, true}) {
+                List<List<TlshComparisonHit>> actual = new ArrayList<>();
+                for (int i = 0; i < queries.size(); i++) {
+                    actual.add(new ArrayList<TlshComparisonHit>());
+                }
+                index.findMatches(queries, 60, compareLength, actual);
+
+                for (int i = 0; i < queries.size(); i++) {
+                    List<TlshComparisonHit> expected = new ArrayList<>();
+                    index.findMatches(queries.get(i), 60, compareLength, expected);
+                    assertEquals(expected.size(), actual.get(i).size());
+                    for (int hit = 0; hit < expected.size(); hit++) {
+                        assertSame(expected.get(hit).compObj, actual.get(i).get(hit).compObj);
+                        assertEquals(expected.get(hit).distance, actual.get(i).get(hit).distance);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensure that the nearest hits are the closest hits of findMatches(), in total and for every hash set, with and
+     * without the tree.
+     */
+    @Test
+    public void testFindNearest() {
+        System.out.println("** TlshReferenceIndexTest: testFindNearest()");
+        Random random = new Random(18);
+        TlshReferenceIndex index = new TlshReferenceIndex(3000);
+        List<String> centers = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String hash;
+            if (i % 10 == 0) {
+                hash = randomHash(random);
+                centers.add(hash);
+            } else {
+                hash = mutate(random, centers.get(random.nextInt(centers.size())));
+            }
+            // The hash list and three hash sets
+            int set = random.nextInt(4);
+            index.add(new ParseTlshObj("set" + set, hash), set > 0);
+        }
+
+        for (boolean tree : new boolean[]{false, true}) {
+            if (tree) {
+                index.buildTree();
+            }
+            for (int i = 0; i < 50; i++) {
+                byte[] query = TlshReferenceIndex.decode(mutate(random, centers.get(random.nextInt(centers.size()))));
+                int threshold = random.nextInt(200);
+                int k = 1 + random.nextInt(10);
+                boolean perHashSet = random.nextBoolean();
+
+                List<TlshComparisonHit> all = new ArrayList<>();
+                index.findMatches(query, threshold, false, all);
+                List<List<TlshComparisonHit>> expectedByDistance = new ArrayList<>();
+                for (int distance = 0; distance <= threshold; distance++) {
+                    expectedByDistance.add(new ArrayList<TlshComparisonHit>());
+                }
+                int[] keptPerSet = new int[4];
+                List<TlshComparisonHit> expected = new ArrayList<>();
+                for (TlshComparisonHit hit : all) {
+                    expectedByDistance.get(hit.distance).add(hit);
+                }
+                for (List<TlshComparisonHit> sameDistance : expectedByDistance) {
+                    for (TlshComparisonHit hit : sameDistance) {
+                        int set = perHashSet ? hit.compObj.listName.charAt(3) - '0' : 0;
+                        if (keptPerSet[set] < k) {
+                            keptPerSet[set]++;
+                            expected.add(hit);
+                        }
+                    }
+                }
+
+                List<TlshComparisonHit> actual = new ArrayList<>();
+                index.findNearest(query, threshold, false, k, perHashSet, actual);
+                assertEquals(expected.size(), actual.size());
+                for (int hit = 0; hit < expected.size(); hit++) {
+                    assertSame(expected.get(hit).compObj, actual.get(hit).compObj);
+                    assertEquals(expected.get(hit).distance, actual.get(hit).distance);
+                    assertEquals(expected.get(hit).fromHashSet, actual.get(hit).fromHashSet);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ensure that a parallel scan, split over several fork-join tasks, finds the same hits in the same order as a scan
+     * on one thread, with and without the packed kernel.
+     */
+    @Test
+    public void testParallelScanMatchesScan() {
+        System.out.println("** TlshReferenceIndexTest: testParallelScanMatchesScan()");
+        Random random = new Random(19);
+        byte[] center = TlshReferenceIndex.decode(randomHash(random));
+        TlshReferenceIndex index = new TlshReferenceIndex(200000);
+        for (int i = 0; i < 200000; i++) {
+            byte[] decoded = center.clone();
+            for (int j = random.nextInt(30); j > 0; j--) {
+                decoded[random.nextInt(decoded.length)] = (byte) random.nextInt(256);
+            }
+            index.add(decoded, new ParseTlshObj(Integer.toString(i)), random.nextBoolean());
+        }
+
+        for (boolean packed : new boolean[]{false, true}) {
+            if (packed) {
+                index.buildPackedBodies();
+            }
+            List<TlshComparisonHit> expected = new ArrayList<>();
+            index.setParallelScanMinEntries(0);
+            index.findMatches(center, 150, true, expected);
+
+            List<TlshComparisonHit> actual = new ArrayList<>();
+            index.setParallelScanMinEntries(1);
+            index.findMatches(center, 150, true, actual);
+
+            assertTrue(expected.size() > 1000);
+            assertEquals(expected.size(), actual.size());
+            for (int hit = 0; hit < expected.size(); hit++) {
+                assertSame(expected.get(hit).compObj, actual.get(hit).compObj);
+                assertEquals(expected.get(hit).distance, actual.get(hit).distance);
+            }
+        }
+    }
+
+    /**
+     * Ensure that hashes without the version prefix and in lower case are decoded the same way.
+     */
+    @Test
+    public void testDecodeForms() {
+        System.out.println("** TlshReferenceIndexTest: testDecodeForms()");
+        String hash = randomHash(new Random(12));
+
+        assertArrayEquals(TlshReferenceIndex.decode(hash), TlshReferenceIndex.decode(hash.substring(2)));
+        assertArrayEquals(TlshReferenceIndex.decode(hash), TlshReferenceIndex.decode(hash.toLowerCase()));
+    }
+
+    /**
+     * Ensure that the estimated size grows with the number of hashes in the index.
+     */
+    @Test
+    public void testEstimatedSize() {
+        System.out.println("** TlshReferenceIndexTest: testEstimatedSize()");
+        Random random = new Random(14);
+        TlshReferenceIndex index = new TlshReferenceIndex(10);
+        long emptySize = index.getEstimatedSize();
+
+        for (int i = 0; i < 10; i++) {
+            index.add(new ParseTlshObj(randomHash(random)), false);
+        }
+
+        assertTrue(emptySize >= 10 * TlshReferenceIndex.DECODED_LENGTH);
+        assertTrue(index.getEstimatedSize() > emptySize + 10 * 72);
+    }
+
+    /**
+     * Ensure that hashes that are not in the default layout are rejected.
+     */
+    @Test
+    public void testRejectsInvalidHashes() {
+        System.out.println("** TlshReferenceIndexTest: testRejectsInvalidHashes()");
+        String hash = randomHash(new Random(13));
+        TlshReferenceIndex index = new TlshReferenceIndex(4);
+
+        assertNull(TlshReferenceIndex.decode(null));
+        assertNull(TlshReferenceIndex.decode(""));
+        assertNull(TlshReferenceIndex.decode(hash.substring(0, 71)));
+        assertNull(TlshReferenceIndex.decode(hash + "AAAA"));
+        assertNull(TlshReferenceIndex.decode(hash.substring(0, 71) + "G"));
+        assertFalse(index.add(new ParseTlshObj("not a hash"), false));
+        assertEquals(0, index.size());
+    }
+}
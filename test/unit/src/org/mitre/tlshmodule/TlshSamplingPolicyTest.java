@@ -0,0 +1,97 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Used to test which blocks of a large file are picked for a sampled hash.
+ */
+public class TlshSamplingPolicyTest {
+
+    private static final long GIB = 1024L * 1024 * 1024;
+    private static final int MIB = 1024 * 1024;
+
+    /**
+     * Ensure that only files larger than the threshold are sampled.
+     */
+    @Test
+    public void testAppliesTo() {
+        System.out.println("** TlshSamplingPolicyTest: testAppliesTo()");
+        TlshSamplingPolicy policy = new TlshSamplingPolicy(GIB, 64L * MIB, MIB);
+
+        assertFalse(policy.appliesTo(0));
+        assertFalse(policy.appliesTo(GIB));
+        assertTrue(policy.appliesTo(GIB + 1));
+        assertEquals(64, policy.getBlockCount());
+        assertEquals(MIB, policy.getBlockSize());
+    }
+
+    /**
+     * Ensure that a threshold smaller than the budget can not make a file be sampled with overlapping blocks.
+     */
+    @Test
+    public void testThresholdAtLeastBudget() {
+        System.out.println("** TlshSamplingPolicyTest: testThresholdAtLeastBudget()");
+        TlshSamplingPolicy policy = new TlshSamplingPolicy(1, 8L * MIB, MIB);
+
+        assertFalse(policy.appliesTo(8L * MIB));
+        assertTrue(policy.appliesTo(8L * MIB + 1));
+    }
+
+    /**
+     * Ensure that the first block starts the file, the last block ends it and no blocks overlap.
+     */
+    @Test
+    public void testBlockOffsets() {
+        System.out.println("** TlshSamplingPolicyTest: testBlockOffsets()");
+        TlshSamplingPolicy policy = new TlshSamplingPolicy(GIB, 64L * MIB, MIB);
+        long[] fileSizes = {GIB + 1, 3 * GIB + 12345, 1024 * GIB + 7};
+
+        for (long fileSize : fileSizes) {
+            assertEquals(0, policy.getBlockOffset(fileSize, 0));
+            assertEquals(fileSize - MIB, policy.getBlockOffset(fileSize, policy.getBlockCount() - 1));
+            for (int block = 1; block < policy.getBlockCount(); block++) {
+                long gap = policy.getBlockOffset(fileSize, block) - policy.getBlockOffset(fileSize, block - 1);
+                assertTrue(gap >= MIB);
+            }
+        }
+    }
+
+    /**
+     * Ensure that the budget is capped to what TLSH can hash and always includes the head and tail blocks.
+     */
+    @Test
+    public void testBudgetLimits() {
+        System.out.println("** TlshSamplingPolicyTest: testBudgetLimits()");
+        TlshSamplingPolicy small = new TlshSamplingPolicy(GIB, 1, MIB);
+        assertEquals(2, small.getBlockCount());
+
+        TlshSamplingPolicy huge = new TlshSamplingPolicy(GIB, Long.MAX_VALUE, MIB);
+        assertTrue((long) huge.getBlockCount() * MIB <= TlshDigestCreator.MAX_DATA_LENGTH);
+    }
+
+    /**
+     * Ensure that the description records the layout so sampled hashes can be matched to their policy.
+     */
+    @Test
+    public void testDescription() {
+        System.out.println("** TlshSamplingPolicyTest: testDescription()");
+        TlshSamplingPolicy policy = new TlshSamplingPolicy(GIB, 64L * MIB, MIB);
+
+        assertEquals("Sampled TLSH v1: 64 blocks of 1048576 bytes (head, tail and evenly spaced)",
+                policy.getDescription());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/UnitTests/JUnit4TestClass.java to edit this template
+ */
+/*
+ * NOTICE
+ * 
+ * This software (or technical data) was produced for the U. S. Government and
+ * is subject to the Rights in Data-General Clause 52.227-14,
+ * Alt. IV (May 2014) – Alternative IV (Dec 2007)
+ *
+ * © 2023 The MITRE Corporation.
+ */
+package org.mitre.tlshmodule;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Hashes and timing shared by the tests and the benchmarks of the reference index.
+ */
+class TlshTestHelper {
+
+    // Keeps the JIT from removing the queries of the benchmarks as dead code
+    static int blackhole = 0;
+
+    private TlshTestHelper() {
+    }
+
+    /**
+     * Generate a random decoded hash.
+     */
+    static byte[] randomDecoded(Random random) {
+        byte[] decoded = new byte[TlshReferenceIndex.DECODED_LENGTH];
+        random.nextBytes(decoded);
+        return decoded;
+    }
+
+    /**
+     * Run every query once to warm up, and collect the hits if requested, then time running them again.
+     *
+     * @param results List the hits of every query are added to, or null.
+     * @return Elapsed time in nanoseconds of the timed run.
+     */
+    static long timeQueries(TlshReferenceIndex index, List<byte[]> queries, int threshold,
+            List<List<TlshComparisonHit>> results) {
+        for (byte[] query : queries) {
+            List<TlshComparisonHit> hits = new ArrayList<>();
+            index.findMatches(query, threshold, false, hits);
+            if (results != null) {
+                results.add(hits);
+            }
+        }
+
+        List<TlshComparisonHit> hits = new ArrayList<>();
+        long start = System.nanoTime();
+        for (byte[] query : queries) {
+            hits.clear();
+            index.findMatches(query, threshold, false, hits);
+            blackhole += hits.size();
+        }
+        return System.nanoTime() - start;
+    }
+}